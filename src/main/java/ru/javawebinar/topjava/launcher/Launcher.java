@@ -0,0 +1,105 @@
+package ru.javawebinar.topjava.launcher;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Tomcat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Runs the webapp (web.xml: MealServlet, UserServlet, json servlets and filters) in an embedded Tomcat.
+ * Built by {@code mvn -P launcher package} into target/launcher: {@code java -jar target/launcher/topjava-launcher.jar}.
+ * <p>
+ * Webapp classes are loaded by the application class loader from the jars of the launcher class path
+ * (the context delegates to it), so they can be stored in an AppCDS archive. With {@code -Dtopjava.training=true}
+ * it serves the first requests of a user session to itself and exits: the class-list training run of the build.
+ * <p>
+ * System properties: {@code topjava.port} (8080), {@code topjava.contextPath} (/topjava),
+ * {@code topjava.webapp} (webapp directory next to the launcher jar).
+ */
+public class Launcher {
+    private static final String[] TRAINING_GETS = {
+            "/users", "/meals", "/meals?action=filter&startDate=2020-01-30&endDate=2020-01-31",
+            "/meals?action=update&id=100002", "/meals?action=search&text=a",
+            "/rest/profile/meals", "/rest/admin/users"};
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("topjava.port", 8080);
+        String contextPath = System.getProperty("topjava.contextPath", "/topjava");
+        File webapp = new File(System.getProperty("topjava.webapp", defaultWebapp()));
+
+        Tomcat tomcat = start(port, contextPath, webapp);
+        System.out.printf("topjava started at http://localhost:%d%s in %d ms (JVM uptime)%n",
+                port, contextPath, ManagementFactory.getRuntimeMXBean().getUptime());
+        if (Boolean.getBoolean("topjava.training")) {
+            train("http://localhost:" + port + contextPath);
+            tomcat.stop();
+            tomcat.destroy();
+            return;
+        }
+        tomcat.getServer().await();
+    }
+
+    static Tomcat start(int port, String contextPath, File webapp) throws IOException, LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("topjava-tomcat").toString());
+        tomcat.setPort(port);
+        tomcat.getConnector();
+        Context context = tomcat.addWebapp(contextPath, webapp.getAbsolutePath());
+        context.setParentClassLoader(Launcher.class.getClassLoader());
+        ((StandardContext) context).setDelegate(true);
+        tomcat.start();
+        return tomcat;
+    }
+
+    // webapp directory next to the launcher jar (target/launcher/webapp)
+    private static String defaultWebapp() {
+        File jar = new File(Launcher.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        return new File(jar.getParentFile(), "webapp").getPath();
+    }
+
+    // read-only requests only, response codes are not checked: a failing request (e.g. no database)
+    // loads the classes of its path as well
+    private static void train(String root) throws IOException {
+        CookieHandler.setDefault(new CookieManager());
+        request(root + "/users", "userId=100000");
+        for (String get : TRAINING_GETS) {
+            request(root + get, null);
+        }
+    }
+
+    private static void request(String url, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        if (form != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            try (InputStream in = body) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // drain for connection reuse
+                }
+            }
+        }
+        System.out.printf("training %s %s: %d%n", form == null ? "GET" : "POST", url, status);
+    }
+}
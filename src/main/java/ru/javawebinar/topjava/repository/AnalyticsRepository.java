@@ -0,0 +1,17 @@
+package ru.javawebinar.topjava.repository;
+
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Cross-user statistics, a meal day is exceeded when its calories sum is above the user's caloriesPerDay
+public interface AnalyticsRepository {
+    // ORDERED date, only days with meals
+    List<DayExcess> getExcessByDay(LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    // ORDERED userId, only users with meals, every row is passed to consumer as soon as it is read
+    void forEachUserExcess(LocalDateTime startDateTime, LocalDateTime endDateTime, Consumer<UserExcess> consumer);
+}
@@ -1,23 +1,49 @@
 package ru.javawebinar.topjava.repository;
 
 import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealChanges;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface MealRepository {
     // null if updated meal does not belong to userId
     Meal save(Meal meal, int userId);
 
+    // the meal before the update, by the update statement itself; null if meal does not belong to userId
+    Meal replace(Meal meal, int userId);
+
     // false if meal does not belong to userId
     boolean delete(int id, int userId);
 
+    // the deleted meal, by the delete statement itself; null if meal does not belong to userId
+    Meal remove(int id, int userId);
+
+    // number of deleted meals, ids of other users are skipped
+    int delete(Collection<Integer> ids, int userId);
+
+    // the deleted meals, ids of other users are skipped
+    List<Meal> remove(Collection<Integer> ids, int userId);
+
+    // number of deleted meals
+    int deleteBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId);
+
     // null if meal does not belong to userId
     Meal get(int id, int userId);
 
+    // ORDERED dateTime desc, ids of other users are skipped
+    List<Meal> get(Collection<Integer> ids, int userId);
+
     // ORDERED dateTime desc
     List<Meal> getAll(int userId);
 
     // ORDERED dateTime desc
     List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId);
+
+    // ORDERED dateTime desc, description contains text (case insensitive), page of [offset, offset + limit)
+    List<Meal> search(String text, LocalDateTime startDateTime, LocalDateTime endDateTime, int offset, int limit, int userId);
+
+    // meals changed and ids of meals deleted after version (ORDERED by change), plus the version to sync from next time
+    MealChanges getChangedSince(long version, int userId);
 }
@@ -0,0 +1,67 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Repository;
+import ru.javawebinar.topjava.util.ConcurrencyLimiter;
+
+/**
+ * Puts every {@link Repository} call behind the shared {@link ConcurrencyLimiter}: when the database slows down,
+ * calls over the adapted limit fail fast instead of queueing on connections.
+ * The limiter is the innermost advice, so the latency it sees is the database call only.
+ * <p>
+ * Repositories of {@link #setExcludedTypes excluded types} are not limited: reports run for seconds and
+ * {@code forEachUserExcess} streams to the HTTP client inside the call, their latency says nothing about
+ * the database health and would cut the limit of the short OLTP calls.
+ */
+public class ConcurrencyLimitPostProcessor implements BeanPostProcessor {
+
+    private final ConcurrencyLimiter limiter;
+
+    private Class<?>[] excludedTypes = {};
+
+    public ConcurrencyLimitPostProcessor(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    public void setExcludedTypes(Class<?>... excludedTypes) {
+        this.excludedTypes = excludedTypes;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if (!AnnotatedElementUtils.hasAnnotation(targetClass, Repository.class)) {
+            return bean;
+        }
+        for (Class<?> excluded : excludedTypes) {
+            if (excluded.isAssignableFrom(targetClass)) {
+                return bean;
+            }
+        }
+        MethodInterceptor interceptor = invocation -> {
+            if (invocation.getMethod().getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            long start = limiter.acquire();
+            try {
+                return invocation.proceed();
+            } finally {
+                limiter.release(start);
+            }
+        };
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvisor(new DefaultPointcutAdvisor(interceptor));
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,79 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.javawebinar.topjava.repository.AnalyticsRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Set-based plan: one pass over the meals of the range (date_time index), grouped by user and day in the database,
+ * only the aggregates are transferred.
+ */
+@Repository
+public class JdbcAnalyticsRepository implements AnalyticsRepository {
+
+    static final RowMapper<DayExcess> DAY_EXCESS_MAPPER = (rs, rowNum) ->
+            new DayExcess(rs.getDate("day").toLocalDate(), rs.getInt("users"), rs.getInt("excess_users"));
+
+    static final RowMapper<UserExcess> USER_EXCESS_MAPPER = (rs, rowNum) ->
+            new UserExcess(rs.getInt("user_id"), rs.getInt("days"), rs.getInt("excess_days"));
+
+    static final String EXCESS_BY_DAY_SQL = excessByDaySql("users u");
+
+    static final String USER_EXCESS_SQL = userExcessSql("users u");
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public JdbcAnalyticsRepository(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    @Override
+    public List<DayExcess> getExcessByDay(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return namedParameterJdbcTemplate.query(EXCESS_BY_DAY_SQL, rangeParams(startDateTime, endDateTime), DAY_EXCESS_MAPPER);
+    }
+
+    @Override
+    public void forEachUserExcess(LocalDateTime startDateTime, LocalDateTime endDateTime, Consumer<UserExcess> consumer) {
+        namedParameterJdbcTemplate.query(USER_EXCESS_SQL, rangeParams(startDateTime, endDateTime),
+                rs -> {
+                    consumer.accept(USER_EXCESS_MAPPER.mapRow(rs, 0));
+                });
+    }
+
+    // calories per user and day of hot and (when the range reaches it) archived meals, joined with the norms of users
+    // (a relation aliased u with id and calories_per_day)
+    private static String userDays(String users) {
+        return "(SELECT m.user_id, m.day, m.calories > u.calories_per_day AS excess FROM " +
+                "(SELECT user_id, date_time::date AS day, sum(calories) AS calories FROM " +
+                "(SELECT user_id, date_time, calories FROM meals " +
+                "WHERE date_time >= :startDateTime AND date_time < :endDateTime " +
+                "UNION ALL SELECT user_id, date_time, calories FROM meals_archive " +
+                "WHERE date_time >= :startDateTime AND date_time < :endDateTime " +
+                "AND :startDateTime < (SELECT archived_before FROM meals_archive_watermark)) r " +
+                "GROUP BY user_id, day) m JOIN " + users + " ON u.id = m.user_id) d";
+    }
+
+    static String excessByDaySql(String users) {
+        return "SELECT day, count(*) AS users, count(*) FILTER (WHERE excess) AS excess_users FROM " + userDays(users) +
+                " GROUP BY day ORDER BY day";
+    }
+
+    static String userExcessSql(String users) {
+        return "SELECT user_id, count(*) AS days, count(*) FILTER (WHERE excess) AS excess_days FROM " + userDays(users) +
+                " GROUP BY user_id ORDER BY user_id";
+    }
+
+    static MapSqlParameterSource rangeParams(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return new MapSqlParameterSource()
+                .addValue("startDateTime", startDateTime)
+                .addValue("endDateTime", endDateTime);
+    }
+}
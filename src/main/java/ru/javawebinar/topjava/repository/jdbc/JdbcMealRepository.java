@@ -1,37 +1,263 @@
 package ru.javawebinar.topjava.repository.jdbc;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
 import ru.javawebinar.topjava.model.Meal;
 import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.to.MealChanges;
 
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class JdbcMealRepository implements MealRepository {
 
+    static final RowMapper<Meal> ROW_MAPPER = (rs, rowNum) -> new Meal(
+            rs.getInt("id"),
+            rs.getTimestamp("date_time").toLocalDateTime(),
+            rs.getString("description"),
+            rs.getInt("calories"));
+
+    static final String UPDATE_SQL = "UPDATE meals SET description=:description, calories=:calories, date_time=:dateTime, " +
+            "version=txid_current() WHERE id=:id AND user_id=:userId";
+
+    static final String INSERT_SQL = "INSERT INTO meals (id, user_id, date_time, description, calories) " +
+            "VALUES (:id, :userId, :dateTime, :description, :calories)";
+
+    // the locked row before the update joined to the updated one
+    private static final String REPLACE_SQL = "UPDATE meals m SET description=:description, calories=:calories, " +
+            "date_time=:dateTime, version=txid_current() " +
+            "FROM (SELECT * FROM meals WHERE id=:id AND user_id=:userId FOR UPDATE) former " +
+            "WHERE m.id=former.id RETURNING former.*";
+
+    private static final String REPLACE_ARCHIVED_SQL = "WITH restored AS " +
+            "(DELETE FROM meals_archive WHERE id=:id AND user_id=:userId RETURNING *), " +
+            "inserted AS (INSERT INTO meals (id, user_id, date_time, description, calories) " +
+            "SELECT id, user_id, :dateTime, :description, :calories FROM restored) " +
+            "SELECT * FROM restored";
+
+    // updated archived meal moves back to the hot table, so the archive stays below its watermark
+    static final String UPDATE_ARCHIVED_SQL = "WITH restored AS " +
+            "(DELETE FROM meals_archive WHERE id=:id AND user_id=:userId RETURNING id, user_id) " +
+            "INSERT INTO meals (id, user_id, date_time, description, calories) " +
+            "SELECT id, user_id, :dateTime, :description, :calories FROM restored";
+
+    // hot and archived meals, id and user_id conditions are pushed down into both tables
+    private static final String ALL_MEALS = "(SELECT * FROM meals UNION ALL SELECT * FROM meals_archive) m";
+
+    private static final String BETWEEN_SQL = withArchive(
+            "user_id=:userId AND date_time >= :startDateTime AND date_time < :endDateTime",
+            "ORDER BY date_time DESC");
+
+    private static final String SEARCH_SQL = withArchive(
+            "user_id=:userId AND description ILIKE :pattern AND date_time >= :startDateTime AND date_time < :endDateTime",
+            "ORDER BY date_time DESC LIMIT :limit OFFSET :offset");
+
+    // deleted meals leave tombstones for delta sync
+    private static final String DELETE_BY_ID_SQL = deleteWithTombstones("id=? AND user_id=?");
+
+    private static final String DELETE_BY_IDS_SQL = deleteWithTombstones("id = ANY(?) AND user_id=?");
+
+    private static final String DELETE_BETWEEN_SQL = deleteWithTombstones("user_id=? AND date_time >= ? AND date_time < ?");
+
+    private static final String REMOVE_BY_ID_SQL = removeWithTombstones("id=? AND user_id=?");
+
+    private static final String REMOVE_BY_IDS_SQL = removeWithTombstones("id = ANY(?) AND user_id=?");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private final SimpleJdbcInsert insertMeal;
+
+    @Autowired
+    public JdbcMealRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.insertMeal = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("meals")
+                .usingColumns("user_id", "date_time", "description", "calories")
+                .usingGeneratedKeyColumns("id");
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    /**
+     * The archive is read only when the range starts below the archive watermark:
+     * otherwise its branch is cut off by a one-time filter and only the small hot table is scanned.
+     */
+    private static String withArchive(String where, String orderBy) {
+        return "SELECT * FROM meals WHERE " + where + " UNION ALL " +
+                "SELECT * FROM meals_archive WHERE " + where +
+                " AND :startDateTime < (SELECT archived_before FROM meals_archive_watermark) " + orderBy;
+    }
+
+    private static String deleteWithTombstones(String where) {
+        return "WITH deleted AS (DELETE FROM meals WHERE " + where + " RETURNING id, user_id), " +
+                "deleted_archived AS (DELETE FROM meals_archive WHERE " + where + " RETURNING id, user_id) " +
+                "INSERT INTO meal_tombstones (id, user_id) " +
+                "SELECT id, user_id FROM deleted UNION ALL SELECT id, user_id FROM deleted_archived";
+    }
+
+    // deleteWithTombstones returning the deleted rows
+    private static String removeWithTombstones(String where) {
+        return "WITH deleted AS (DELETE FROM meals WHERE " + where + " RETURNING *), " +
+                "deleted_archived AS (DELETE FROM meals_archive WHERE " + where + " RETURNING *), " +
+                "tombstones AS (INSERT INTO meal_tombstones (id, user_id) " +
+                "SELECT id, user_id FROM deleted UNION ALL SELECT id, user_id FROM deleted_archived) " +
+                "SELECT * FROM deleted UNION ALL SELECT * FROM deleted_archived";
+    }
+
+    static MapSqlParameterSource toParams(Meal meal, int userId) {
+        return new MapSqlParameterSource()
+                .addValue("id", meal.getId())
+                .addValue("description", meal.getDescription())
+                .addValue("calories", meal.getCalories())
+                .addValue("dateTime", meal.getDateTime())
+                .addValue("userId", userId);
+    }
+
     @Override
     public Meal save(Meal meal, int userId) {
-        return null;
+        MapSqlParameterSource map = toParams(meal, userId);
+        if (meal.isNew()) {
+            Number newId = insertMeal.executeAndReturnKey(map);
+            meal.setId(newId.intValue());
+        } else if (namedParameterJdbcTemplate.update(UPDATE_SQL, map) == 0 &&
+                namedParameterJdbcTemplate.update(UPDATE_ARCHIVED_SQL, map) == 0) {
+            return null;
+        }
+        return meal;
+    }
+
+    @Override
+    public Meal replace(Meal meal, int userId) {
+        MapSqlParameterSource map = toParams(meal, userId);
+        List<Meal> former = namedParameterJdbcTemplate.query(REPLACE_SQL, map, ROW_MAPPER);
+        if (former.isEmpty()) {
+            former = namedParameterJdbcTemplate.query(REPLACE_ARCHIVED_SQL, map, ROW_MAPPER);
+        }
+        return DataAccessUtils.singleResult(former);
+    }
+
+    // new meal with an id assigned by the caller (ShardedMealRepository: ids unique across databases)
+    Meal insert(Meal meal, int id, int userId) {
+        namedParameterJdbcTemplate.update(INSERT_SQL, toParams(meal, userId).addValue("id", id));
+        meal.setId(id);
+        return meal;
     }
 
     @Override
     public boolean delete(int id, int userId) {
-        return false;
+        return jdbcTemplate.update(DELETE_BY_ID_SQL, id, userId, id, userId) != 0;
+    }
+
+    @Override
+    public Meal remove(int id, int userId) {
+        return DataAccessUtils.singleResult(jdbcTemplate.query(REMOVE_BY_ID_SQL, ROW_MAPPER, id, userId, id, userId));
+    }
+
+    @Override
+    public int delete(Collection<Integer> ids, int userId) {
+        return ids.isEmpty() ? 0 : jdbcTemplate.update(DELETE_BY_IDS_SQL, ps -> setIds(ps, ids, userId, 2));
+    }
+
+    @Override
+    public List<Meal> remove(Collection<Integer> ids, int userId) {
+        return ids.isEmpty() ? Collections.emptyList() :
+                jdbcTemplate.query(REMOVE_BY_IDS_SQL, ps -> setIds(ps, ids, userId, 2), ROW_MAPPER);
+    }
+
+    @Override
+    public int deleteBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+        return jdbcTemplate.update(DELETE_BETWEEN_SQL, userId, startDateTime, endDateTime, userId, startDateTime, endDateTime);
     }
 
     @Override
     public Meal get(int id, int userId) {
-        return null;
+        List<Meal> meals = jdbcTemplate.query(
+                "SELECT * FROM " + ALL_MEALS + " WHERE id = ? AND user_id = ?", ROW_MAPPER, id, userId);
+        return DataAccessUtils.singleResult(meals);
+    }
+
+    @Override
+    public List<Meal> get(Collection<Integer> ids, int userId) {
+        return ids.isEmpty() ? Collections.emptyList() : jdbcTemplate.query(
+                "SELECT * FROM " + ALL_MEALS + " WHERE id = ANY(?) AND user_id=? ORDER BY date_time DESC",
+                ps -> setIds(ps, ids, userId, 1), ROW_MAPPER);
     }
 
     @Override
     public List<Meal> getAll(int userId) {
-        return null;
+        return jdbcTemplate.query(
+                "SELECT * FROM " + ALL_MEALS + " WHERE user_id=? ORDER BY date_time DESC", ROW_MAPPER, userId);
     }
 
     @Override
     public List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
-        return null;
+        return namedParameterJdbcTemplate.query(BETWEEN_SQL, rangeParams(startDateTime, endDateTime, userId), ROW_MAPPER);
+    }
+
+    @Override
+    public List<Meal> search(String text, LocalDateTime startDateTime, LocalDateTime endDateTime, int offset, int limit, int userId) {
+        // served by the (user_id, description gin_trgm_ops) indexes
+        return namedParameterJdbcTemplate.query(SEARCH_SQL, rangeParams(startDateTime, endDateTime, userId)
+                .addValue("pattern", "%" + escapeLike(text) + "%")
+                .addValue("limit", limit)
+                .addValue("offset", offset), ROW_MAPPER);
+    }
+
+    /**
+     * Only versions below the oldest running transaction are returned: no transaction still in flight
+     * can commit a change at or below the returned version, so nothing is skipped by the next sync.
+     * Versions below the compacted tombstones or below the arrival of the user (moved from another shard) get a reset.
+     */
+    @Override
+    public MealChanges getChangedSince(long version, int userId) {
+        Map<String, Object> horizon = jdbcTemplate.queryForMap(
+                "SELECT txid_snapshot_xmin(txid_current_snapshot()) AS xmin, GREATEST(compacted_version, " +
+                        "(SELECT version FROM meal_user_sync_horizon WHERE user_id=?)) AS compacted_version " +
+                        "FROM meal_sync_horizon", userId);
+        long xmin = ((Number) horizon.get("xmin")).longValue();
+        boolean reset = version < ((Number) horizon.get("compacted_version")).longValue();
+        long since = reset ? Long.MIN_VALUE : version;
+        List<Meal> changed = jdbcTemplate.query(
+                "SELECT * FROM " + ALL_MEALS + " WHERE user_id=? AND version > ? AND version < ? ORDER BY version, id",
+                ROW_MAPPER, userId, since, xmin);
+        List<Integer> deleted = reset ? Collections.emptyList() : jdbcTemplate.queryForList(
+                "SELECT id FROM meal_tombstones WHERE user_id=? AND version > ? AND version < ? ORDER BY version, id",
+                Integer.class, userId, since, xmin);
+        return new MealChanges(changed, deleted, Math.max(version, xmin - 1), reset);
+    }
+
+    private static MapSqlParameterSource rangeParams(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+        return new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("startDateTime", startDateTime)
+                .addValue("endDateTime", endDateTime);
+    }
+
+    // a single array parameter: one statement (and one cached plan) for any number of ids
+    private static void setIds(PreparedStatement ps, Collection<Integer> ids, int userId, int occurrences) throws SQLException {
+        Array array = ps.getConnection().createArrayOf("integer", ids.toArray());
+        for (int i = 0; i < occurrences; i++) {
+            ps.setArray(2 * i + 1, array);
+            ps.setInt(2 * i + 2, userId);
+        }
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 }
@@ -0,0 +1,123 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job moving meals older than {@code archiveAfterDays} from {@code meals} into {@code meals_archive}
+ * and dropping delta sync tombstones older than {@code tombstoneRetentionDays} (opt-in, see spring-db.xml).
+ * <p>
+ * Every batch is a single statement, so it is atomic and an interrupted run just resumes on the next one.
+ * The watermark is raised before the first batch: {@link JdbcMealRepository} reads the archive only for ranges
+ * starting below it. Between batches the job sleeps at least as long as the batch took,
+ * keeping the archiver below half of the database time.
+ */
+public class MealArchiver implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MealArchiver.class);
+
+    private static final String RAISE_WATERMARK_SQL =
+            "UPDATE meals_archive_watermark SET archived_before=? WHERE archived_before < ?";
+
+    private static final String MOVE_BATCH_SQL = "WITH moved AS (DELETE FROM meals WHERE id IN " +
+            "(SELECT id FROM meals WHERE date_time < ? ORDER BY date_time LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, user_id, date_time, description, calories, version) " +
+            "INSERT INTO meals_archive (id, user_id, date_time, description, calories, version) SELECT * FROM moved";
+
+    // clients synced before the dropped tombstones get a full reload
+    private static final String COMPACT_TOMBSTONES_SQL = "WITH purged AS " +
+            "(DELETE FROM meal_tombstones WHERE deleted < ? RETURNING version) " +
+            "UPDATE meal_sync_horizon SET compacted_version = GREATEST(compacted_version, (SELECT max(version) FROM purged))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int archiveAfterDays;
+
+    private final int tombstoneRetentionDays;
+
+    private final int batchSize;
+
+    private final long minPauseMillis;
+
+    private final AtomicLong archivedRows = new AtomicLong();
+
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean running = true;
+
+    // periodMinutes <= 0: not scheduled, archive() is called explicitly
+    public MealArchiver(JdbcTemplate jdbcTemplate, int archiveAfterDays, int tombstoneRetentionDays,
+                        int batchSize, long minPauseMillis, long periodMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archiveAfterDays = archiveAfterDays;
+        this.tombstoneRetentionDays = tombstoneRetentionDays;
+        this.batchSize = batchSize;
+        this.minPauseMillis = minPauseMillis;
+        if (periodMinutes > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "meal-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    archive();
+                    compactTombstones();
+                } catch (RuntimeException e) {
+                    log.error("meal archiving failed", e);
+                }
+            }, periodMinutes, periodMinutes, TimeUnit.MINUTES);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Moves all meals before the start of the day {@code archiveAfterDays} ago, returns the number of moved meals.
+     */
+    public int archive() {
+        LocalDateTime archiveBefore = LocalDate.now().minusDays(archiveAfterDays).atStartOfDay();
+        jdbcTemplate.update(RAISE_WATERMARK_SQL, archiveBefore, archiveBefore);
+        int total = 0;
+        while (running) {
+            long start = System.nanoTime();
+            int moved = jdbcTemplate.update(MOVE_BATCH_SQL, archiveBefore, batchSize);
+            total += moved;
+            archivedRows.addAndGet(moved);
+            if (moved < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(Math.max(minPauseMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("{} meals before {} archived", total, archiveBefore);
+        return total;
+    }
+
+    public void compactTombstones() {
+        jdbcTemplate.update(COMPACT_TOMBSTONES_SQL, LocalDateTime.now().minusDays(tombstoneRetentionDays));
+    }
+
+    public long getArchivedRows() {
+        return archivedRows.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.javawebinar.topjava.model.Meal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind group commit for meal writes (opt-in, see spring-db.xml).
+ * <p>
+ * Writes are put into a bounded queue (callers block when it is full) and a single flusher thread
+ * commits them together in one transaction every {@code maxDelayMillis} or {@code maxBatchSize} rows.
+ * Returned futures complete only after commit, so durability is still acknowledged to the caller.
+ * <p>
+ * {@link #close()} stops accepting writes and lets the flusher commit everything queued before it,
+ * so no returned future is left incomplete.
+ */
+public class MealWriteBehindQueue implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MealWriteBehindQueue.class);
+
+    private final JdbcMealRepository repository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final Thread flusher;
+
+    private final AtomicLong flushedBatches = new AtomicLong();
+
+    private final AtomicLong flushedRows = new AtomicLong();
+
+    // save holds the read lock from the running check to the end of put, close takes the write lock to stop:
+    // no write is queued after the flusher has seen running == false
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running = true;
+
+    public MealWriteBehindQueue(JdbcMealRepository repository, JdbcTemplate jdbcTemplate,
+                                int capacity, int maxBatchSize, long maxDelayMillis) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.flusher = new Thread(this::run, "meal-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // future completes with null if updated meal does not belong to userId
+    public CompletableFuture<Meal> save(Meal meal, int userId) {
+        PendingWrite write = new PendingWrite(meal, userId);
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Meal write-behind queue is closed");
+            }
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.future.completeExceptionally(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return write.future;
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches.get();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    @Override
+    public void close() {
+        // a save blocked on a full queue keeps the read lock until the running flusher makes room
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            // the flusher still commits the queued writes
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(maxDelayNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // only close stops the flusher: a write once queued is always committed or failed
+                log.warn("meal write-behind flusher interrupted, {} writes pending", queue.size());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(batch));
+        } catch (RuntimeException e) {
+            log.warn("group commit of {} meals failed, retrying one by one", batch.size(), e);
+            batch.forEach(this::saveSingle);
+            return;
+        }
+        flushedBatches.incrementAndGet();
+        flushedRows.addAndGet(batch.size());
+        for (PendingWrite write : batch) {
+            if (write.newId != null) {
+                write.meal.setId(write.newId);
+            }
+            write.future.complete(write.found ? write.meal : null);
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        List<PendingWrite> inserts = new ArrayList<>();
+        List<PendingWrite> updates = new ArrayList<>();
+        batch.forEach(write -> (write.meal.isNew() ? inserts : updates).add(write));
+
+        if (!inserts.isEmpty()) {
+            List<Integer> ids = jdbcTemplate.queryForList(
+                    "SELECT nextval('global_seq') FROM generate_series(1, ?)", Integer.class, inserts.size());
+            SqlParameterSource[] params = new SqlParameterSource[inserts.size()];
+            for (int i = 0; i < params.length; i++) {
+                PendingWrite write = inserts.get(i);
+                write.newId = ids.get(i);
+                write.found = true;
+                params[i] = JdbcMealRepository.toParams(write.meal, write.userId).addValue("id", write.newId);
+            }
+            namedParameterJdbcTemplate.batchUpdate(JdbcMealRepository.INSERT_SQL, params);
+        }
+        if (!updates.isEmpty()) {
+            SqlParameterSource[] params = updates.stream()
+                    .map(write -> JdbcMealRepository.toParams(write.meal, write.userId))
+                    .toArray(SqlParameterSource[]::new);
+            int[] counts = namedParameterJdbcTemplate.batchUpdate(JdbcMealRepository.UPDATE_SQL, params);
+            List<PendingWrite> archived = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                updates.get(i).found = counts[i] != 0;
+                if (counts[i] == 0) {
+                    archived.add(updates.get(i));
+                }
+            }
+            if (!archived.isEmpty()) {
+                SqlParameterSource[] archivedParams = archived.stream()
+                        .map(write -> JdbcMealRepository.toParams(write.meal, write.userId))
+                        .toArray(SqlParameterSource[]::new);
+                int[] archivedCounts = namedParameterJdbcTemplate.batchUpdate(JdbcMealRepository.UPDATE_ARCHIVED_SQL, archivedParams);
+                for (int i = 0; i < archivedCounts.length; i++) {
+                    archived.get(i).found = archivedCounts[i] != 0;
+                }
+            }
+        }
+    }
+
+    private void saveSingle(PendingWrite write) {
+        write.newId = null;
+        try {
+            write.future.complete(repository.save(write.meal, write.userId));
+        } catch (RuntimeException e) {
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingWrite {
+        final Meal meal;
+        final int userId;
+        final CompletableFuture<Meal> future = new CompletableFuture<>();
+
+        // assigned by the flusher inside the transaction, applied to meal only after commit
+        Integer newId;
+        boolean found;
+
+        PendingWrite(Meal meal, int userId) {
+            this.meal = meal;
+            this.userId = userId;
+        }
+    }
+}
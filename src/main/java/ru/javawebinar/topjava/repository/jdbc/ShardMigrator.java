@@ -0,0 +1,139 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Online resharding of a {@link ShardedMealRepository} to a new {@link ShardRing}: the users whose shard changes are
+ * moved one by one, each with its own calls waiting only while it is copied. Other users are served as usual.
+ * <p>
+ * A user is moved in three steps:
+ * <ol>
+ * <li>the source rows are merged into the target by id in a target transaction: hot and archived meals land in the
+ * target {@code meals} (the target MealArchiver archives them again), target rows of other ids are stale copies
+ * of an earlier attempt and are deleted. The transaction id is the sync horizon of the user in the target: a client
+ * version of an earlier stay of the user in this shard (moved A to B to A) misses the tombstones and gets a reset</li>
+ * <li>the move is recorded in meal_shard_moves of the primary database, from then on the user is served by the target,
+ * after a restart as well</li>
+ * <li>the source rows are deleted without tombstones (clients of a moved user get a reset by the shard tag of their
+ * version)</li>
+ * </ol>
+ * An interrupted migration is resumed by running it again with the same ring: a user not recorded yet is still served
+ * by its source and is merged again, a recorded one is not copied, only its source rows left are deleted.
+ * Between users the migrator sleeps at least as long as the move took, keeping it below half of the database time.
+ */
+public class ShardMigrator {
+    private static final Logger log = LoggerFactory.getLogger(ShardMigrator.class);
+
+    private static final String USERS_SQL = "SELECT user_id FROM meals UNION SELECT user_id FROM meals_archive ORDER BY user_id";
+
+    private static final String SELECT_USER_SQL =
+            "SELECT id, user_id, date_time, description, calories FROM meals WHERE user_id=? " +
+            "UNION ALL SELECT id, user_id, date_time, description, calories FROM meals_archive WHERE user_id=?";
+
+    private static final String MERGE_SQL =
+            "INSERT INTO meals (id, user_id, date_time, description, calories) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET date_time=EXCLUDED.date_time, description=EXCLUDED.description, " +
+            "calories=EXCLUDED.calories, version=txid_current()";
+
+    private static final String DELETE_STALE_SQL = "DELETE FROM meals WHERE user_id=? AND NOT (id = ANY (CAST(? AS int[])))";
+
+    // all of them stale: archived copies would duplicate the merged ids in meals
+    private static final String DELETE_STALE_ARCHIVE_SQL = "DELETE FROM meals_archive WHERE user_id=?";
+
+    private static final String HORIZON_SQL = "INSERT INTO meal_user_sync_horizon (user_id, version) VALUES (?, txid_current()) " +
+            "ON CONFLICT (user_id) DO UPDATE SET version=EXCLUDED.version";
+
+    private static final String[] DELETE_USER_SQL = {
+            "DELETE FROM meals WHERE user_id=?",
+            "DELETE FROM meals_archive WHERE user_id=?",
+            "DELETE FROM meal_tombstones WHERE user_id=?",
+            "DELETE FROM meal_user_sync_horizon WHERE user_id=?"
+    };
+
+    private final ShardedMealRepository repository;
+
+    private final long minPauseMillis;
+
+    public ShardMigrator(ShardedMealRepository repository, long minPauseMillis) {
+        this.repository = repository;
+        this.minPauseMillis = minPauseMillis;
+    }
+
+    /**
+     * @return number of users moved
+     */
+    public int migrate(ShardRing next) throws InterruptedException {
+        ShardRing current = repository.getRing();
+        repository.beginResharding(next);
+        // userId -> shards holding its rows, other than its target
+        Map<Integer, Set<String>> users = new TreeMap<>();
+        for (String shard : repository.getShards()) {
+            for (Integer userId : repository.getTemplate(shard).queryForList(USERS_SQL, Integer.class)) {
+                if (!shard.equals(next.shardOf(userId))) {
+                    users.computeIfAbsent(userId, id -> new LinkedHashSet<>()).add(shard);
+                }
+            }
+        }
+        log.info("resharding {} -> {}: {} users to move", current.getShards(), next.getShards(), users.size());
+        int moved = 0;
+        int done = 0;
+        for (Map.Entry<Integer, Set<String>> user : users.entrySet()) {
+            int userId = user.getKey();
+            long start = System.nanoTime();
+            if (repository.move(userId, (source, target) -> copy(source, target, userId))) {
+                moved++;
+            }
+            // routed to the target now: the rows left here are not read any more
+            for (String shard : user.getValue()) {
+                JdbcTemplate source = repository.getTemplate(shard);
+                inTransaction(source, () -> deleteUser(source, userId));
+            }
+            if (++done % 1000 == 0) {
+                log.info("moved {} of {} users", done, users.size());
+            }
+            Thread.sleep(Math.max(minPauseMillis, (System.nanoTime() - start) / 1_000_000));
+        }
+        repository.finishResharding();
+        log.info("resharding to {} finished, {} users moved", next.getShards(), moved);
+        return moved;
+    }
+
+    private static void copy(JdbcTemplate source, JdbcTemplate target, int userId) {
+        List<Map<String, Object>> rows = source.queryForList(SELECT_USER_SQL, userId, userId);
+        String ids = rows.stream().map(row -> String.valueOf(row.get("id"))).collect(Collectors.joining(",", "{", "}"));
+        inTransaction(target, () -> {
+            target.update(DELETE_STALE_SQL, userId, ids);
+            target.update(DELETE_STALE_ARCHIVE_SQL, userId);
+            target.update(HORIZON_SQL, userId);
+            target.batchUpdate(MERGE_SQL, rows, rows.size(), (ps, row) -> {
+                ps.setObject(1, row.get("id"));
+                ps.setObject(2, row.get("user_id"));
+                ps.setObject(3, row.get("date_time"));
+                ps.setObject(4, row.get("description"));
+                ps.setObject(5, row.get("calories"));
+            });
+        });
+    }
+
+    private static void deleteUser(JdbcTemplate jdbcTemplate, int userId) {
+        for (String sql : DELETE_USER_SQL) {
+            jdbcTemplate.update(sql, userId);
+        }
+    }
+
+    private static void inTransaction(JdbcTemplate jdbcTemplate, Runnable work) {
+        new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()))
+                .executeWithoutResult(status -> work.run());
+    }
+}
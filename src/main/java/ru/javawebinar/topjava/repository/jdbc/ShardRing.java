@@ -0,0 +1,63 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring of shard names: every shard owns {@code virtualNodes} points, a user belongs to the shard of
+ * the first point at or after the hash of its id. Adding a shard moves only the users of the ring arcs it takes over
+ * (about 1/N of them), removing one moves only its own users.
+ * <p>
+ * Hashes are fixed 64-bit functions of the shard name and the user id: the same names give the same ring in every
+ * process and release.
+ */
+public class ShardRing {
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    private final List<String> shards;
+
+    public ShardRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("shards must not be empty and virtualNodes must be > 0");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        for (String shard : shards) {
+            for (int node = 0; node < virtualNodes; node++) {
+                String previous = ring.put(hash(shard + '#' + node), shard);
+                if (previous != null && !previous.equals(shard)) {
+                    throw new IllegalArgumentException("Hash collision of shards " + previous + " and " + shard);
+                }
+            }
+        }
+    }
+
+    public String shardOf(int userId) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(mix(userId));
+        return (point == null ? ring.firstEntry() : point).getValue();
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    // FNV-1a over UTF-8, then mixed: close names ("shard1#1", "shard1#2") land far apart
+    static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // murmur3 fmix64 finalizer
+    static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.javawebinar.topjava.repository.AnalyticsRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+import ru.javawebinar.topjava.util.AsyncExecutor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * {@link JdbcAnalyticsRepository} queries fanned out to the shards of a {@link ShardedMealRepository} in parallel.
+ * Shards have no users table: the norms are read from the primary database once per call and every shard gets
+ * the users routed to it as arrays. So a user is counted in a single shard, per-day counts are summed and per-user rows
+ * are merged by userId. The rows a {@link ShardMigrator} left in the source of a move till their deletion are skipped,
+ * a user moved while the report runs may be missed by it.
+ */
+public class ShardedAnalyticsRepository implements AnalyticsRepository {
+    private static final String USERS = "unnest(CAST(:userIds AS int[]), CAST(:norms AS int[])) AS u(id, calories_per_day)";
+
+    private static final String EXCESS_BY_DAY_SQL = JdbcAnalyticsRepository.excessByDaySql(USERS);
+
+    private static final String USER_EXCESS_SQL = JdbcAnalyticsRepository.userExcessSql(USERS);
+
+    private final JdbcTemplate primary;
+
+    private final ShardedMealRepository repository;
+
+    private final AsyncExecutor executor;
+
+    public ShardedAnalyticsRepository(JdbcTemplate primary, ShardedMealRepository repository, AsyncExecutor executor) {
+        this.primary = primary;
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    @Override
+    public List<DayExcess> getExcessByDay(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Map<LocalDate, int[]> byDay = new TreeMap<>();
+        for (List<DayExcess> days : fanOut(startDateTime, endDateTime,
+                (template, params) -> template.query(EXCESS_BY_DAY_SQL, params, JdbcAnalyticsRepository.DAY_EXCESS_MAPPER))) {
+            for (DayExcess day : days) {
+                int[] counts = byDay.computeIfAbsent(day.getDate(), date -> new int[2]);
+                counts[0] += day.getUsers();
+                counts[1] += day.getExcessUsers();
+            }
+        }
+        return byDay.entrySet().stream()
+                .map(day -> new DayExcess(day.getKey(), day.getValue()[0], day.getValue()[1]))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachUserExcess(LocalDateTime startDateTime, LocalDateTime endDateTime, Consumer<UserExcess> consumer) {
+        List<List<UserExcess>> shards = fanOut(startDateTime, endDateTime,
+                (template, params) -> template.query(USER_EXCESS_SQL, params, JdbcAnalyticsRepository.USER_EXCESS_MAPPER));
+        // k-way merge of the shard lists, each ORDERED userId
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparingInt(head -> head.current.getUserId()));
+        for (List<UserExcess> users : shards) {
+            Head.offer(heads, users.iterator());
+        }
+        while (!heads.isEmpty()) {
+            Head head = heads.poll();
+            consumer.accept(head.current);
+            Head.offer(heads, head.rest);
+        }
+    }
+
+    private <T> List<T> fanOut(LocalDateTime startDateTime, LocalDateTime endDateTime, ShardQuery<T> query) {
+        List<CompletableFuture<T>> results = new ArrayList<>();
+        for (Map.Entry<String, MapSqlParameterSource> shard : params(startDateTime, endDateTime).entrySet()) {
+            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(repository.getTemplate(shard.getKey()));
+            results.add(executor.supply(() -> query.apply(template, shard.getValue())));
+        }
+        CompletableFuture<Void> all = AsyncExecutor.failFast(
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])),
+                results.toArray(new CompletableFuture<?>[0]));
+        AsyncExecutor.await(all);
+        return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    // shard -> its query parameters with the users routed to it
+    private Map<String, MapSqlParameterSource> params(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Map<String, StringBuilder[]> users = new LinkedHashMap<>();
+        for (String shard : repository.getShards()) {
+            users.put(shard, new StringBuilder[]{new StringBuilder("{"), new StringBuilder("{")});
+        }
+        primary.query("SELECT id, calories_per_day FROM users", rs -> {
+            int userId = rs.getInt("id");
+            StringBuilder[] shardUsers = users.get(repository.shardOf(userId));
+            if (shardUsers[0].length() > 1) {
+                shardUsers[0].append(',');
+                shardUsers[1].append(',');
+            }
+            shardUsers[0].append(userId);
+            shardUsers[1].append(rs.getInt("calories_per_day"));
+        });
+        Map<String, MapSqlParameterSource> params = new LinkedHashMap<>();
+        users.forEach((shard, shardUsers) -> params.put(shard, JdbcAnalyticsRepository.rangeParams(startDateTime, endDateTime)
+                .addValue("userIds", shardUsers[0].append('}').toString())
+                .addValue("norms", shardUsers[1].append('}').toString())));
+        return params;
+    }
+
+    @FunctionalInterface
+    private interface ShardQuery<T> {
+        T apply(NamedParameterJdbcTemplate template, MapSqlParameterSource params);
+    }
+
+    private static class Head {
+        final UserExcess current;
+        final Iterator<UserExcess> rest;
+
+        Head(UserExcess current, Iterator<UserExcess> rest) {
+            this.current = current;
+            this.rest = rest;
+        }
+
+        static void offer(PriorityQueue<Head> heads, Iterator<UserExcess> users) {
+            if (users.hasNext()) {
+                heads.add(new Head(users.next(), users));
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Meals sharded by user over several databases (schema db/initShardDB.sql, the primary database may be a shard too):
+ * every call goes to the shard of its userId by the {@link ShardRing}.
+ * <p>
+ * Meal ids stay unique across shards: new ids are taken in blocks from global_seq of the primary database.
+ * Delta sync versions are transaction ids of a shard, so they are returned tagged with the shard:
+ * a version of another shard (the user was moved since) gets a reset.
+ * <p>
+ * Resharding by {@link ShardMigrator} is online: a user being moved waits on its (striped) lock,
+ * moved users are routed to their new shard, the rest by the current ring.
+ * Moves are recorded in meal_shard_moves of the primary database and loaded at start, so moved users stay routed
+ * to their shard after a restart, whichever ring is configured; the moves the configured ring agrees with are dropped.
+ * Calls are single autocommit statements of their shard, the primary transaction manager does not span shards.
+ */
+public class ShardedMealRepository implements MealRepository {
+    static final int ID_BLOCK = 100;
+    static final int LOCK_STRIPES = 256;
+    static final int VERSION_BITS = 48;
+    static final long VERSION_MASK = (1L << VERSION_BITS) - 1;
+
+    private static final String MOVE_SQL = "INSERT INTO meal_shard_moves (user_id, shard) VALUES (?, ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET shard=EXCLUDED.shard";
+
+    private final JdbcTemplate primary;
+
+    private final Map<String, JdbcTemplate> templates;
+
+    private final Map<String, JdbcMealRepository> shards = new HashMap<>();
+
+    // non-zero: untagged versions of an unsharded repository get a reset as well
+    private final Map<String, Long> tags = new HashMap<>();
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
+
+    private volatile Routing routing;
+
+    // userId -> shard of the users not routed by the ring, see meal_shard_moves
+    private final Map<Integer, String> moves = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private long nextId;
+    private long idBlockEnd;
+
+    public ShardedMealRepository(JdbcTemplate primary, Map<String, JdbcTemplate> shards, ShardRing ring) {
+        this.primary = primary;
+        this.templates = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        Map<Long, String> tagged = new HashMap<>();
+        shards.forEach((name, template) -> {
+            this.shards.put(name, new JdbcMealRepository(template, new NamedParameterJdbcTemplate(template)));
+            long tag = 1 + Math.floorMod(ShardRing.hash(name), (1L << (Long.SIZE - 1 - VERSION_BITS)) - 1);
+            String previous = tagged.put(tag, name);
+            if (previous != null) {
+                throw new IllegalArgumentException("Version tag collision of shards " + previous + " and " + name);
+            }
+            tags.put(name, tag);
+        });
+        checkShards(ring);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        routing = new Routing(ring, null);
+        loadMoves(ring);
+    }
+
+    @Override
+    public Meal save(Meal meal, int userId) {
+        if (meal.isNew()) {
+            int id = nextId();
+            return call(userId, shard -> shard.insert(meal, id, userId));
+        }
+        return call(userId, shard -> shard.save(meal, userId));
+    }
+
+    @Override
+    public Meal replace(Meal meal, int userId) {
+        return call(userId, shard -> shard.replace(meal, userId));
+    }
+
+    @Override
+    public boolean delete(int id, int userId) {
+        return call(userId, shard -> shard.delete(id, userId));
+    }
+
+    @Override
+    public Meal remove(int id, int userId) {
+        return call(userId, shard -> shard.remove(id, userId));
+    }
+
+    @Override
+    public int delete(Collection<Integer> ids, int userId) {
+        return call(userId, shard -> shard.delete(ids, userId));
+    }
+
+    @Override
+    public List<Meal> remove(Collection<Integer> ids, int userId) {
+        return call(userId, shard -> shard.remove(ids, userId));
+    }
+
+    @Override
+    public int deleteBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+        return call(userId, shard -> shard.deleteBetweenHalfOpen(startDateTime, endDateTime, userId));
+    }
+
+    @Override
+    public Meal get(int id, int userId) {
+        return call(userId, shard -> shard.get(id, userId));
+    }
+
+    @Override
+    public List<Meal> get(Collection<Integer> ids, int userId) {
+        return call(userId, shard -> shard.get(ids, userId));
+    }
+
+    @Override
+    public List<Meal> getAll(int userId) {
+        return call(userId, shard -> shard.getAll(userId));
+    }
+
+    @Override
+    public List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+        return call(userId, shard -> shard.getBetweenHalfOpen(startDateTime, endDateTime, userId));
+    }
+
+    @Override
+    public List<Meal> search(String text, LocalDateTime startDateTime, LocalDateTime endDateTime, int offset, int limit, int userId) {
+        return call(userId, shard -> shard.search(text, startDateTime, endDateTime, offset, limit, userId));
+    }
+
+    @Override
+    public MealChanges getChangedSince(long version, int userId) {
+        Lock lock = lockOf(userId).readLock();
+        lock.lock();
+        try {
+            String shard = shardOf(userId);
+            long tag = tags.get(shard);
+            boolean sameShard = version == 0 || version >>> VERSION_BITS == tag;
+            MealChanges changes = shards.get(shard).getChangedSince(sameShard ? version & VERSION_MASK : 0, userId);
+            return new MealChanges(changes.getChanged(), changes.getDeleted(),
+                    tag << VERSION_BITS | changes.getVersion(), changes.isReset() || !sameShard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ShardRing getRing() {
+        return routing.ring;
+    }
+
+    // shard names
+    public Set<String> getShards() {
+        return templates.keySet();
+    }
+
+    String shardOf(int userId) {
+        // no boxed userId while nothing was moved
+        String moved = moves.isEmpty() ? null : moves.get(userId);
+        return moved != null ? moved : routing.ring.shardOf(userId);
+    }
+
+    JdbcTemplate getTemplate(String shard) {
+        return templates.get(shard);
+    }
+
+    /**
+     * Starts routing moved users by the next ring, continues a resharding to the same ring
+     */
+    synchronized void beginResharding(ShardRing next) {
+        checkShards(next);
+        Routing routing = this.routing;
+        if (routing.next == null) {
+            this.routing = new Routing(routing.ring, next);
+        } else if (!routing.next.getShards().equals(next.getShards())) {
+            throw new IllegalStateException("Resharding to " + routing.next.getShards() + " is not finished");
+        }
+    }
+
+    /**
+     * Moves the user with all its calls waiting: {@code copy} gets the source and the target templates
+     * (only called when they differ), then the move is recorded and the user is routed to the target.
+     * The source rows are left to the caller, they are not read after the move.
+     *
+     * @return whether the user was copied, false if it is routed to the target already
+     */
+    boolean move(int userId, BiConsumer<JdbcTemplate, JdbcTemplate> copy) {
+        Routing routing = this.routing;
+        if (routing.next == null) {
+            throw new IllegalStateException("No resharding in progress");
+        }
+        Lock lock = lockOf(userId).writeLock();
+        lock.lock();
+        try {
+            String source = shardOf(userId);
+            String target = routing.next.shardOf(userId);
+            if (!source.equals(target)) {
+                copy.accept(templates.get(source), templates.get(target));
+                primary.update(MOVE_SQL, userId, target);
+                moves.put(userId, target);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    synchronized void finishResharding() {
+        Routing routing = this.routing;
+        if (routing.next != null) {
+            this.routing = new Routing(routing.next, null);
+            // the rows stay: they keep the moved users routed after a restart with the previous ring configured
+            moves.entrySet().removeIf(move -> move.getValue().equals(routing.next.shardOf(move.getKey())));
+        }
+    }
+
+    private void loadMoves(ShardRing ring) {
+        primary.query("SELECT user_id, shard FROM meal_shard_moves", rs -> {
+            moves.put(rs.getInt("user_id"), rs.getString("shard"));
+        });
+        List<Integer> routedByRing = new ArrayList<>();
+        moves.forEach((userId, shard) -> {
+            if (!templates.containsKey(shard)) {
+                throw new IllegalStateException("User " + userId + " was moved to unknown shard " + shard);
+            }
+            if (shard.equals(ring.shardOf(userId))) {
+                routedByRing.add(userId);
+            }
+        });
+        for (int userId : routedByRing) {
+            primary.update("DELETE FROM meal_shard_moves WHERE user_id=? AND shard=?", userId, moves.remove(userId));
+        }
+    }
+
+    private <T> T call(int userId, Function<JdbcMealRepository, T> call) {
+        Lock lock = lockOf(userId).readLock();
+        lock.lock();
+        try {
+            return call.apply(shards.get(shardOf(userId)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReadWriteLock lockOf(int userId) {
+        return locks[(int) (ShardRing.mix(userId) & (LOCK_STRIPES - 1))];
+    }
+
+    private synchronized int nextId() {
+        if (nextId == idBlockEnd) {
+            long last = primary.queryForObject(
+                    "SELECT setval('global_seq', nextval('global_seq') + " + (ID_BLOCK - 1) + ")", Long.class);
+            nextId = last - ID_BLOCK + 1;
+            idBlockEnd = last + 1;
+        }
+        return Math.toIntExact(nextId++);
+    }
+
+    private void checkShards(ShardRing ring) {
+        if (!templates.keySet().containsAll(ring.getShards())) {
+            throw new IllegalArgumentException("Unknown shards in " + ring.getShards() + ", configured: " + templates.keySet());
+        }
+    }
+
+    private static class Routing {
+        final ShardRing ring;
+
+        // null if not resharding
+        final ShardRing next;
+
+        Routing(ShardRing ring, ShardRing next) {
+            this.ring = ring;
+            this.next = next;
+        }
+    }
+}
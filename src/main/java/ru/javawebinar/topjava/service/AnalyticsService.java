@@ -0,0 +1,39 @@
+package ru.javawebinar.topjava.service;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.repository.AnalyticsRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfDayOrMin;
+import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfNextDayOrMax;
+
+/**
+ * Fleet-wide excess statistics: a day is exceeded when the user's calories sum is above {@link User#getCaloriesPerDay()}.
+ */
+@Service
+@Transactional(readOnly = true)
+public class AnalyticsService {
+    private final AnalyticsRepository analyticsRepository;
+
+    public AnalyticsService(AnalyticsRepository analyticsRepository) {
+        this.analyticsRepository = analyticsRepository;
+    }
+
+    // set-based, computed by the database
+    public List<DayExcess> getExcessByDay(@Nullable LocalDate startDate, @Nullable LocalDate endDate) {
+        return analyticsRepository.getExcessByDay(atStartOfDayOrMin(startDate), atStartOfNextDayOrMax(endDate));
+    }
+
+    // set-based, every user is passed to consumer as soon as it is read
+    public void forEachUserExcess(@Nullable LocalDate startDate, @Nullable LocalDate endDate, Consumer<UserExcess> consumer) {
+        analyticsRepository.forEachUserExcess(atStartOfDayOrMin(startDate), atStartOfNextDayOrMax(endDate), consumer);
+    }
+}
@@ -0,0 +1,271 @@
+package ru.javawebinar.topjava.service;
+
+import org.springframework.lang.Nullable;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.util.CalorieIndex;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CalorieIndex} per user, built from all its meals on a miss and kept current by the writes as Fenwick deltas.
+ * One cache per MealService, the servlets of a webapp share it (SpringContextHolder); writes of other JVMs are not seen.
+ * <p>
+ * Every write is bracketed: {@link #begin} before it, then exactly one completion after its commit
+ * ({@link #created}, {@link #updated}, {@link #removed}, {@link #removedDays}) or {@link #aborted}.
+ * The writes of a user are counted in its entry, started and completed:
+ * <ul>
+ * <li>a build installs its index only if no write of the user was in flight from before its read till the install,
+ * so no meal is counted both by the build read and by the completion of its write</li>
+ * <li>a write alone for its user sees every earlier write applied, so the former meals returned by the write itself
+ * match the index, {@link #begin} tells when to ask the repository for them. A completion without them drops the index.</li>
+ * </ul>
+ * Entries are chained in buckets by the int user id, so a write of a known user allocates nothing.
+ * An entry with writes in flight is not evicted. When full, a miss or a write of a new user evicts one entry:
+ * a clock hand passes the buckets, an entry read since the hand last passed it gets a second chance.
+ */
+class CalorieIndexCache {
+    private final MealRepository repository;
+
+    private final int maxUsers;
+
+    // power of two, at least maxUsers
+    private final Bucket[] buckets;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Object clock = new Object();
+
+    // next bucket of the clock, guarded by clock
+    private int hand;
+
+    CalorieIndexCache(MealRepository repository, int maxUsers) {
+        this.repository = repository;
+        this.maxUsers = maxUsers;
+        this.buckets = new Bucket[Math.max(Integer.highestOneBit(Math.max(maxUsers, 1) - 1) << 1, 1)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    CaloriesTotal getTotal(LocalDate startDate, LocalDate endDate, int userId) {
+        Entry entry = entry(userId);
+        int writes;
+        boolean quiet;
+        synchronized (entry) {
+            if (entry.index != null) {
+                entry.referenced = true;
+                return entry.index.getTotal(startDate, endDate);
+            }
+            writes = entry.started;
+            quiet = entry.completed == writes;
+        }
+        CalorieIndex index = CalorieIndex.of(repository.getAll(userId));
+        if (quiet) {
+            synchronized (entry) {
+                if (entry.started == writes && entry.index == null && !entry.evicted) {
+                    entry.index = index;
+                    entry.referenced = true;
+                }
+            }
+        }
+        return index.getTotal(startDate, endDate);
+    }
+
+    /**
+     * Before a write of the user
+     *
+     * @return whether the completion should get the former meals: the user has an index and the write is alone
+     */
+    boolean begin(int userId) {
+        while (true) {
+            Entry entry = entry(userId);
+            synchronized (entry) {
+                if (!entry.evicted) {
+                    entry.started++;
+                    return entry.index != null && entry.started - entry.completed == 1;
+                }
+            }
+        }
+    }
+
+    void created(Meal meal, int userId) {
+        Entry entry = find(userId);
+        synchronized (entry) {
+            if (entry.index != null) {
+                entry.index.add(meal.getDate(), meal.getCalories(), 1);
+            }
+            entry.completed++;
+        }
+    }
+
+    /**
+     * @param former the meal before the write, null if not returned
+     * @param meal   the meal after the write, null if deleted
+     */
+    void updated(@Nullable Meal former, @Nullable Meal meal, int userId) {
+        Entry entry = find(userId);
+        synchronized (entry) {
+            if (entry.index != null) {
+                if (former == null) {
+                    entry.index = null;
+                } else {
+                    entry.index.add(former.getDate(), former.getCalories(), -1);
+                    if (meal != null) {
+                        entry.index.add(meal.getDate(), meal.getCalories(), 1);
+                    }
+                }
+            }
+            entry.completed++;
+        }
+    }
+
+    // formers: the deleted meals, null if not returned
+    void removed(@Nullable Collection<Meal> formers, int userId) {
+        Entry entry = find(userId);
+        synchronized (entry) {
+            if (entry.index != null) {
+                if (formers == null) {
+                    entry.index = null;
+                } else {
+                    for (Meal former : formers) {
+                        entry.index.add(former.getDate(), former.getCalories(), -1);
+                    }
+                }
+            }
+            entry.completed++;
+        }
+    }
+
+    // all meals of the days deleted, null: unbounded
+    void removedDays(@Nullable LocalDate startDate, @Nullable LocalDate endDate, int userId) {
+        Entry entry = find(userId);
+        synchronized (entry) {
+            if (entry.index != null) {
+                entry.index.removeDays(startDate, endDate);
+            }
+            entry.completed++;
+        }
+    }
+
+    // rolled back or failed, nothing written
+    void aborted(int userId) {
+        Entry entry = find(userId);
+        synchronized (entry) {
+            entry.completed++;
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    // the entry of a user with a write in flight: not evicted
+    private Entry find(int userId) {
+        Bucket bucket = bucket(userId);
+        synchronized (bucket) {
+            return bucket.find(userId);
+        }
+    }
+
+    private Entry entry(int userId) {
+        Bucket bucket = bucket(userId);
+        synchronized (bucket) {
+            Entry entry = bucket.find(userId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        evictIfFull();
+        synchronized (bucket) {
+            Entry entry = bucket.find(userId);
+            if (entry == null) {
+                entry = new Entry(userId);
+                entry.next = bucket.head;
+                bucket.head = entry;
+                size.incrementAndGet();
+            }
+            return entry;
+        }
+    }
+
+    // one entry without writes in flight: the first one the hand finds not read since it last passed, in two rounds at most
+    private void evictIfFull() {
+        if (size.get() < maxUsers) {
+            return;
+        }
+        synchronized (clock) {
+            for (int passed = 0; passed < 2 * buckets.length; passed++) {
+                Bucket bucket = buckets[hand];
+                hand = (hand + 1) & (buckets.length - 1);
+                synchronized (bucket) {
+                    Entry previous = null;
+                    for (Entry entry = bucket.head; entry != null; previous = entry, entry = entry.next) {
+                        // a write that got the entry before its removal retries with a new one
+                        synchronized (entry) {
+                            if (entry.started != entry.completed) {
+                                continue;
+                            }
+                            if (entry.referenced) {
+                                entry.referenced = false;
+                                continue;
+                            }
+                            entry.evicted = true;
+                        }
+                        if (previous == null) {
+                            bucket.head = entry.next;
+                        } else {
+                            previous.next = entry.next;
+                        }
+                        size.decrementAndGet();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private Bucket bucket(int userId) {
+        return buckets[(userId ^ userId >>> 16) & (buckets.length - 1)];
+    }
+
+    // chain of entries, guarded by this
+    private static class Bucket {
+        Entry head;
+
+        Entry find(int userId) {
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                if (entry.userId == userId) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    // guarded by this, next by its bucket
+    private static class Entry {
+        final int userId;
+
+        Entry next;
+
+        // null until built or after a write it could not follow
+        CalorieIndex index;
+
+        // writes of the user: started before the write, completed after its delta is applied
+        int started;
+        int completed;
+
+        boolean evicted;
+
+        // read since the clock hand last passed it
+        boolean referenced;
+
+        Entry(int userId) {
+            this.userId = userId;
+        }
+    }
+}
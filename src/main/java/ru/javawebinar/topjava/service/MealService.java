@@ -1,32 +1,113 @@
 package ru.javawebinar.topjava.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
 import ru.javawebinar.topjava.model.Meal;
 import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.repository.jdbc.MealWriteBehindQueue;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.to.MealChanges;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfDayOrMin;
 import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfNextDayOrMax;
 import static ru.javawebinar.topjava.util.ValidationUtil.checkNotFoundWithId;
 
 @Service
+@Transactional(readOnly = true)
 public class MealService {
+    // users with a cached calorie index, 20 to 40 bytes per day with meals each
+    static final int CALORIE_INDEX_USERS = 2_000;
 
     private final MealRepository repository;
 
+    private final CalorieIndexCache calorieIndexes;
+
+    // optional: when configured, writes are group-committed by the queue
+    private MealWriteBehindQueue writeBehind;
+
     public MealService(MealRepository repository) {
         this.repository = repository;
+        this.calorieIndexes = new CalorieIndexCache(repository, CALORIE_INDEX_USERS);
+    }
+
+    @Autowired(required = false)
+    public void setWriteBehind(MealWriteBehindQueue writeBehind) {
+        this.writeBehind = writeBehind;
     }
 
     public Meal get(int id, int userId) {
         return checkNotFoundWithId(repository.get(id, userId), id);
     }
 
+    // writes are bracketed for the calorie indexes: begin, the write in try (returning the former meals when asked for),
+    // the completion in finally
+    @Transactional
     public void delete(int id, int userId) {
-        checkNotFoundWithId(repository.delete(id, userId), id);
+        boolean readFormer = calorieIndexes.begin(userId);
+        Meal former = null;
+        boolean deleted = false;
+        try {
+            if (readFormer) {
+                former = repository.remove(id, userId);
+                deleted = former != null;
+            } else {
+                deleted = repository.delete(id, userId);
+            }
+        } finally {
+            updatedAfterCommit(deleted, former, null, userId);
+        }
+        checkNotFoundWithId(deleted, id);
+    }
+
+    // number of deleted meals, ids of other users are skipped
+    @Transactional
+    public int delete(Collection<Integer> ids, int userId) {
+        Assert.notNull(ids, "ids must not be null");
+        boolean readFormers = calorieIndexes.begin(userId);
+        List<Meal> formers = null;
+        int deleted = 0;
+        try {
+            if (readFormers) {
+                formers = repository.remove(ids, userId);
+                deleted = formers.size();
+            } else {
+                deleted = repository.delete(ids, userId);
+            }
+        } finally {
+            removedAfterCommit(deleted > 0, formers, userId);
+        }
+        return deleted;
+    }
+
+    @Transactional
+    public int deleteBetweenInclusive(@Nullable LocalDate startDate, @Nullable LocalDate endDate, int userId) {
+        calorieIndexes.begin(userId);
+        int deleted = 0;
+        try {
+            deleted = repository.deleteBetweenHalfOpen(atStartOfDayOrMin(startDate), atStartOfNextDayOrMax(endDate), userId);
+        } finally {
+            removedDaysAfterCommit(deleted > 0, startDate, endDate, userId);
+        }
+        return deleted;
+    }
+
+    // ids of other users are skipped
+    public List<Meal> get(Collection<Integer> ids, int userId) {
+        Assert.notNull(ids, "ids must not be null");
+        return repository.get(ids, userId);
     }
 
     public List<Meal> getBetweenInclusive(@Nullable LocalDate startDate, @Nullable LocalDate endDate, int userId) {
@@ -37,11 +118,194 @@ public class MealService {
         return repository.getAll(userId);
     }
 
+    // total of the days from startDate to endDate inclusive, O(log days) by the user's calorie index
+    public CaloriesTotal getCaloriesTotal(LocalDate startDate, LocalDate endDate, int userId) {
+        Assert.notNull(startDate, "startDate must not be null");
+        Assert.notNull(endDate, "endDate must not be null");
+        Assert.isTrue(!startDate.isAfter(endDate), "startDate must not be after endDate");
+        return calorieIndexes.getTotal(startDate, endDate, userId);
+    }
+
+    // calories of each of the days, O(log days) per day by the user's calorie index
+    public Map<LocalDate, Long> getCaloriesByDay(Collection<LocalDate> dates, int userId) {
+        Assert.notNull(dates, "dates must not be null");
+        Map<LocalDate, Long> caloriesByDay = new HashMap<>();
+        for (LocalDate date : dates) {
+            caloriesByDay.put(date, calorieIndexes.getTotal(date, date, userId).getCalories());
+        }
+        return caloriesByDay;
+    }
+
+    // rolling total of the days ending at endDate inclusive, e.g. 7 or 30
+    public CaloriesTotal getCaloriesTotal(LocalDate endDate, int days, int userId) {
+        Assert.notNull(endDate, "endDate must not be null");
+        Assert.isTrue(days > 0, "days must be > 0");
+        return getCaloriesTotal(endDate.minusDays(days - 1), endDate, userId);
+    }
+
+    public List<Meal> search(String text, @Nullable LocalDate startDate, @Nullable LocalDate endDate,
+                             int offset, int limit, int userId) {
+        Assert.hasText(text, "search text must not be empty");
+        Assert.isTrue(offset >= 0 && limit > 0, "offset must be >= 0 and limit > 0");
+        return repository.search(text.trim(), atStartOfDayOrMin(startDate), atStartOfNextDayOrMax(endDate), offset, limit, userId);
+    }
+
+    // version 0 for the first sync
+    public MealChanges getChangedSince(long version, int userId) {
+        Assert.isTrue(version >= 0, "version must be >= 0");
+        return repository.getChangedSince(version, userId);
+    }
+
+    // whether writes should go through updateAsync/createAsync to be group-committed
+    public boolean isWriteBehind() {
+        return writeBehind != null;
+    }
+
+    // a direct write in the transaction, also with the write-behind queue configured
+    @Transactional
     public void update(Meal meal, int userId) {
-        checkNotFoundWithId(repository.save(meal, userId), meal.getId());
+        boolean readFormer = calorieIndexes.begin(userId);
+        Meal former = null;
+        Meal updated = null;
+        try {
+            if (readFormer) {
+                former = repository.replace(meal, userId);
+                updated = former == null ? null : meal;
+            } else {
+                updated = repository.save(meal, userId);
+            }
+        } finally {
+            updatedAfterCommit(updated != null, former, updated, userId);
+        }
+        checkNotFoundWithId(updated, meal.getId());
     }
 
+    @Transactional
     public Meal create(Meal meal, int userId) {
-        return repository.save(meal, userId);
+        calorieIndexes.begin(userId);
+        Meal created = null;
+        try {
+            created = repository.save(meal, userId);
+        } finally {
+            createdAfterCommit(created, userId);
+        }
+        return created;
+    }
+
+    // Entry points of the write-behind queue, to be called through the proxy (not from a @Transactional method of
+    // this class): the caller holds no transaction and connection while its write waits for the group commit.
+    // Without the queue: a single statement write.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Void> updateAsync(Meal meal, int userId) {
+        int id = meal.getId();
+        return save(meal, userId).thenAccept(updated -> checkNotFoundWithId(updated, id));
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Meal> createAsync(Meal meal, int userId) {
+        return save(meal, userId);
+    }
+
+    // a write-behind future completes after its commit, a write outside of the queue is a single statement.
+    // Batched updates return no former meals: an update through the queue drops the user's calorie index.
+    private CompletableFuture<Meal> save(Meal meal, int userId) {
+        boolean isNew = meal.isNew();
+        boolean readFormer = calorieIndexes.begin(userId) && !isNew && writeBehind == null;
+        Meal former;
+        CompletableFuture<Meal> saved;
+        try {
+            if (writeBehind != null) {
+                former = null;
+                saved = writeBehind.save(meal, userId);
+            } else if (readFormer) {
+                former = repository.replace(meal, userId);
+                saved = CompletableFuture.completedFuture(former == null ? null : meal);
+            } else {
+                former = null;
+                saved = CompletableFuture.completedFuture(repository.save(meal, userId));
+            }
+        } catch (RuntimeException e) {
+            calorieIndexes.aborted(userId);
+            if (writeBehind != null) {
+                throw e;
+            }
+            saved = new CompletableFuture<>();
+            saved.completeExceptionally(e);
+            return saved;
+        }
+        return saved.whenComplete((result, e) -> {
+            if (result == null) {
+                calorieIndexes.aborted(userId);
+            } else if (isNew) {
+                calorieIndexes.created(result, userId);
+            } else {
+                calorieIndexes.updated(former, result, userId);
+            }
+        });
+    }
+
+    // calorie indexes follow committed writes only, a write of this thread is applied when its transaction commits.
+    // No capturing lambda outside of a transaction: get/update/delete success paths stay allocation-free.
+    private void createdAfterCommit(@Nullable Meal created, int userId) {
+        if (created == null) {
+            calorieIndexes.aborted(userId);
+        } else if (inTransaction()) {
+            afterCommit(userId, () -> calorieIndexes.created(created, userId));
+        } else {
+            calorieIndexes.created(created, userId);
+        }
+    }
+
+    private void updatedAfterCommit(boolean written, @Nullable Meal former, @Nullable Meal meal, int userId) {
+        if (!written) {
+            calorieIndexes.aborted(userId);
+        } else if (inTransaction()) {
+            afterCommit(userId, () -> calorieIndexes.updated(former, meal, userId));
+        } else {
+            calorieIndexes.updated(former, meal, userId);
+        }
+    }
+
+    private void removedAfterCommit(boolean written, @Nullable List<Meal> formers, int userId) {
+        if (!written) {
+            calorieIndexes.aborted(userId);
+        } else if (inTransaction()) {
+            afterCommit(userId, () -> calorieIndexes.removed(formers, userId));
+        } else {
+            calorieIndexes.removed(formers, userId);
+        }
+    }
+
+    private void removedDaysAfterCommit(boolean written, @Nullable LocalDate startDate, @Nullable LocalDate endDate, int userId) {
+        if (!written) {
+            calorieIndexes.aborted(userId);
+        } else if (inTransaction()) {
+            afterCommit(userId, () -> calorieIndexes.removedDays(startDate, endDate, userId));
+        } else {
+            calorieIndexes.removedDays(startDate, endDate, userId);
+        }
+    }
+
+    // a rollback completes the write as aborted, an unknown outcome drops the index
+    private void afterCommit(int userId, Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    calorieIndexes.aborted(userId);
+                } else if (status == STATUS_UNKNOWN) {
+                    calorieIndexes.updated(null, null, userId);
+                }
+            }
+        });
+    }
+
+    private static boolean inTransaction() {
+        return TransactionSynchronizationManager.isSynchronizationActive() && TransactionSynchronizationManager.isActualTransactionActive();
     }
-}
\ No newline at end of file
+}
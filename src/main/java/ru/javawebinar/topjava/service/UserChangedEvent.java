@@ -0,0 +1,30 @@
+package ru.javawebinar.topjava.service;
+
+import ru.javawebinar.topjava.model.User;
+
+/**
+ * Published by {@link UserService} after a user is updated, or deleted (user is null)
+ */
+public class UserChangedEvent {
+    private final int id;
+
+    private final User user;
+
+    public UserChangedEvent(int id, User user) {
+        this.id = id;
+        this.user = user;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return "UserChangedEvent{id=" + id + ", user=" + user + '}';
+    }
+}
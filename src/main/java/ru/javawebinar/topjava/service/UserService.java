@@ -1,6 +1,8 @@
 package ru.javawebinar.topjava.service;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.javawebinar.topjava.model.User;
 import ru.javawebinar.topjava.repository.UserRepository;
 
@@ -10,20 +12,27 @@ import static ru.javawebinar.topjava.util.ValidationUtil.checkNotFound;
 import static ru.javawebinar.topjava.util.ValidationUtil.checkNotFoundWithId;
 
 @Service
+@Transactional(readOnly = true)
 public class UserService {
 
     private final UserRepository repository;
 
-    public UserService(UserRepository repository) {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public UserService(UserRepository repository, ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
+        this.eventPublisher = eventPublisher;
     }
 
+    @Transactional
     public User create(User user) {
         return repository.save(user);
     }
 
+    @Transactional
     public void delete(int id) {
         checkNotFoundWithId(repository.delete(id), id);
+        eventPublisher.publishEvent(new UserChangedEvent(id, null));
     }
 
     public User get(int id) {
@@ -38,7 +47,9 @@ public class UserService {
         return repository.getAll();
     }
 
+    @Transactional
     public void update(User user) {
         checkNotFoundWithId(repository.save(user), user.getId());
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user));
     }
 }
\ No newline at end of file
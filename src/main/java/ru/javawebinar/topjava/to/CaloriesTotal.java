@@ -0,0 +1,59 @@
+package ru.javawebinar.topjava.to;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Calories and number of meals of the days from startDate to endDate inclusive
+ */
+public class CaloriesTotal {
+    private final LocalDate startDate;
+
+    private final LocalDate endDate;
+
+    private final long calories;
+
+    private final int meals;
+
+    public CaloriesTotal(LocalDate startDate, LocalDate endDate, long calories, int meals) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.calories = calories;
+        this.meals = meals;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public long getCalories() {
+        return calories;
+    }
+
+    public int getMeals() {
+        return meals;
+    }
+
+    public int getDays() {
+        return (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+    }
+
+    // days without meals count as 0
+    public double getAveragePerDay() {
+        return (double) calories / getDays();
+    }
+
+    @Override
+    public String toString() {
+        return "CaloriesTotal{" +
+                "startDate=" + startDate +
+                ", endDate=" + endDate +
+                ", calories=" + calories +
+                ", meals=" + meals +
+                '}';
+    }
+}
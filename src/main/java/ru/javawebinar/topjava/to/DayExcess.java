@@ -0,0 +1,45 @@
+package ru.javawebinar.topjava.to;
+
+import java.time.LocalDate;
+
+/**
+ * Users with meals at the date and how many of them exceeded their caloriesPerDay
+ */
+public class DayExcess {
+    private final LocalDate date;
+
+    private final int users;
+
+    private final int excessUsers;
+
+    public DayExcess(LocalDate date, int users, int excessUsers) {
+        this.date = date;
+        this.users = users;
+        this.excessUsers = excessUsers;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getExcessUsers() {
+        return excessUsers;
+    }
+
+    public double getExcessShare() {
+        return users == 0 ? 0 : (double) excessUsers / users;
+    }
+
+    @Override
+    public String toString() {
+        return "DayExcess{" +
+                "date=" + date +
+                ", users=" + users +
+                ", excessUsers=" + excessUsers +
+                '}';
+    }
+}
@@ -0,0 +1,53 @@
+package ru.javawebinar.topjava.to;
+
+import ru.javawebinar.topjava.model.Meal;
+
+import java.util.List;
+
+/**
+ * Meals created/updated and ids of meals deleted after a client version.
+ * {@code reset}: the client version is older than the retained tombstones, {@code changed} holds all meals
+ * and the client must drop everything it has. Next sync should ask for changes since {@code version}.
+ */
+public class MealChanges {
+    private final List<Meal> changed;
+
+    private final List<Integer> deleted;
+
+    private final long version;
+
+    private final boolean reset;
+
+    public MealChanges(List<Meal> changed, List<Integer> deleted, long version, boolean reset) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.version = version;
+        this.reset = reset;
+    }
+
+    public List<Meal> getChanged() {
+        return changed;
+    }
+
+    public List<Integer> getDeleted() {
+        return deleted;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    @Override
+    public String toString() {
+        return "MealChanges{" +
+                "changed=" + changed.size() +
+                ", deleted=" + deleted.size() +
+                ", version=" + version +
+                ", reset=" + reset +
+                '}';
+    }
+}
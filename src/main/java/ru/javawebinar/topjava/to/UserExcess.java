@@ -0,0 +1,39 @@
+package ru.javawebinar.topjava.to;
+
+/**
+ * Days with meals of one user and how many of them exceeded the user's caloriesPerDay
+ */
+public class UserExcess {
+    private final int userId;
+
+    private final int days;
+
+    private final int excessDays;
+
+    public UserExcess(int userId, int days, int excessDays) {
+        this.userId = userId;
+        this.days = days;
+        this.excessDays = excessDays;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public int getExcessDays() {
+        return excessDays;
+    }
+
+    @Override
+    public String toString() {
+        return "UserExcess{" +
+                "userId=" + userId +
+                ", days=" + days +
+                ", excessDays=" + excessDays +
+                '}';
+    }
+}
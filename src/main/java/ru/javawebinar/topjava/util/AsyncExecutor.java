@@ -0,0 +1,139 @@
+package ru.javawebinar.topjava.util;
+
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool for blocking calls exposed as {@link CompletableFuture}s, so that independent reads run concurrently.
+ * <p>
+ * A future that is cancelled or misses its {@link #withDeadline deadline} cancels its call: a queued call is
+ * skipped, a running one is interrupted. A full queue fails the call with {@link ServiceUnavailableException},
+ * a missed deadline fails the future with it as well.
+ */
+public class AsyncExecutor implements AutoCloseable {
+    private static final AtomicInteger executors = new AtomicInteger();
+
+    // one timer thread for all deadlines, a deadline of a completed future is removed at once
+    private static final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "async-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    public AsyncExecutor(String name, int threads, int queueCapacity) {
+        String prefix = name + "-" + executors.incrementAndGet() + "-";
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            Future<?> task = pool.submit(() -> {
+                // cancelled or past the deadline while queued
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.whenComplete((value, e) -> {
+                if (e != null) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new ServiceUnavailableException("Overloaded: " + pool.getQueue().size() + " calls queued, try again later"));
+        }
+        return result;
+    }
+
+    /**
+     * Same future as {@link #supply}, completed in the caller thread: for callers with no executor configured
+     */
+    public static <T> CompletableFuture<T> callerRuns(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(call.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Fails the future with {@link ServiceUnavailableException} unless it completes within timeoutMillis
+     */
+    public static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, long timeoutMillis) {
+        if (!future.isDone()) {
+            ScheduledFuture<?> deadline = deadlines.schedule(() -> future.completeExceptionally(
+                    new ServiceUnavailableException("Not completed in " + timeoutMillis + " ms, try again later")),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((value, e) -> deadline.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * Fails the composite as soon as one of its parts fails (thenCombine would wait for the other part)
+     * and cancels the parts when the composite fails, e.g. misses its deadline
+     */
+    public static <T> CompletableFuture<T> failFast(CompletableFuture<T> composite, CompletableFuture<?>... parts) {
+        for (CompletableFuture<?> part : parts) {
+            part.whenComplete((value, e) -> {
+                if (e != null) {
+                    composite.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+        composite.whenComplete((value, e) -> {
+            if (e != null) {
+                for (CompletableFuture<?> part : parts) {
+                    part.cancel(true);
+                }
+            }
+        });
+        return composite;
+    }
+
+    /**
+     * Result of the future, its failure is rethrown unwrapped when it is a RuntimeException
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
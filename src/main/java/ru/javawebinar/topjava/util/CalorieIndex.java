@@ -0,0 +1,187 @@
+package ru.javawebinar.topjava.util;
+
+import org.springframework.lang.Nullable;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Calories and meal counts of one user per day: the sorted distinct days with meals and two Fenwick trees over
+ * their ranks, so the size follows the days with meals, not the span between the first and the last one.
+ * A range total and a meal added or removed on a known day or after the last one cost O(log days),
+ * a new day before the last one and removing whole days O(days). Not thread-safe.
+ */
+public class CalorieIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 1-based, ascending epoch days of ranks 1..size; a day stays after its meals are removed, till removeDays
+    private long[] days;
+    private int size;
+
+    // 1-based trees over the ranks, capacity = length - 1; empty index: no arrays
+    private long[] calories;
+    private int[] counts;
+
+    public static CalorieIndex of(Iterable<Meal> meals) {
+        long[] all = new long[INITIAL_CAPACITY];
+        int n = 0;
+        for (Meal meal : meals) {
+            if (n == all.length) {
+                all = Arrays.copyOf(all, n * 2);
+            }
+            all[n++] = meal.getDate().toEpochDay();
+        }
+        CalorieIndex index = new CalorieIndex();
+        if (n == 0) {
+            return index;
+        }
+        Arrays.sort(all, 0, n);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (all[i] != all[distinct - 1]) {
+                all[distinct++] = all[i];
+            }
+        }
+        index.allocate(capacityFor(distinct));
+        System.arraycopy(all, 0, index.days, 1, distinct);
+        index.size = distinct;
+        // linear build: point values first, then every node is added to its parent
+        for (Meal meal : meals) {
+            int rank = index.ceiling(meal.getDate().toEpochDay());
+            index.calories[rank] += meal.getCalories();
+            index.counts[rank]++;
+        }
+        build(index.calories, index.counts);
+        return index;
+    }
+
+    // count: 1 for a new meal, -1 for a removed one (with its former calories)
+    public void add(LocalDate date, int calories, int count) {
+        int rank = rank(date.toEpochDay());
+        for (int i = rank; i < this.calories.length; i += i & -i) {
+            this.calories[i] += (long) calories * count;
+            this.counts[i] += count;
+        }
+    }
+
+    // all meals of the days from startDate to endDate inclusive (null: unbounded) removed, O(days)
+    public void removeDays(@Nullable LocalDate startDate, @Nullable LocalDate endDate) {
+        if (days == null) {
+            return;
+        }
+        int from = startDate == null ? 1 : ceiling(startDate.toEpochDay());
+        int to = endDate == null ? size : ceiling(endDate.toEpochDay() + 1) - 1;
+        if (from > to) {
+            return;
+        }
+        int removed = to - from + 1;
+        unbuild(calories, counts);
+        System.arraycopy(days, to + 1, days, from, size - to);
+        System.arraycopy(calories, to + 1, calories, from, size - to);
+        System.arraycopy(counts, to + 1, counts, from, size - to);
+        Arrays.fill(calories, size - removed + 1, size + 1, 0);
+        Arrays.fill(counts, size - removed + 1, size + 1, 0);
+        size -= removed;
+        build(calories, counts);
+    }
+
+    public CaloriesTotal getTotal(LocalDate startDate, LocalDate endDate) {
+        if (days == null || startDate.isAfter(endDate)) {
+            return new CaloriesTotal(startDate, endDate, 0, 0);
+        }
+        int from = ceiling(startDate.toEpochDay()) - 1;
+        int to = ceiling(endDate.toEpochDay() + 1) - 1;
+        long sum = 0;
+        int count = 0;
+        for (int i = to; i > 0; i -= i & -i) {
+            sum += calories[i];
+            count += counts[i];
+        }
+        for (int i = from; i > 0; i -= i & -i) {
+            sum -= calories[i];
+            count -= counts[i];
+        }
+        return new CaloriesTotal(startDate, endDate, sum, count);
+    }
+
+    // number of days the arrays hold
+    public int getCapacity() {
+        return days == null ? 0 : days.length - 1;
+    }
+
+    // rank of the day, inserted if new
+    private int rank(long day) {
+        if (days == null) {
+            allocate(INITIAL_CAPACITY);
+        }
+        int rank = ceiling(day);
+        if (rank <= size && days[rank] == day) {
+            return rank;
+        }
+        if (rank == size + 1 && size < days.length - 1) {
+            // after the last day: the tree already covers the rank with zeros
+            days[++size] = day;
+            return rank;
+        }
+        unbuild(calories, counts);
+        if (size == days.length - 1) {
+            int capacity = (days.length - 1) * 2;
+            days = Arrays.copyOf(days, capacity + 1);
+            calories = Arrays.copyOf(calories, capacity + 1);
+            counts = Arrays.copyOf(counts, capacity + 1);
+        }
+        System.arraycopy(days, rank, days, rank + 1, size - rank + 1);
+        System.arraycopy(calories, rank, calories, rank + 1, size - rank + 1);
+        System.arraycopy(counts, rank, counts, rank + 1, size - rank + 1);
+        days[rank] = day;
+        calories[rank] = 0;
+        counts[rank] = 0;
+        size++;
+        build(calories, counts);
+        return rank;
+    }
+
+    // first rank with a day not before the given one, size + 1 if none
+    private int ceiling(long day) {
+        int found = Arrays.binarySearch(days, 1, size + 1, day);
+        return found > 0 ? found : -found - 1;
+    }
+
+    private void allocate(int capacity) {
+        days = new long[capacity + 1];
+        calories = new long[capacity + 1];
+        counts = new int[capacity + 1];
+    }
+
+    private static int capacityFor(int days) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < days) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    // point values -> tree in O(n)
+    private static void build(long[] calories, int[] counts) {
+        for (int i = 1; i < calories.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < calories.length) {
+                calories[parent] += calories[i];
+                counts[parent] += counts[i];
+            }
+        }
+    }
+
+    // tree -> point values in O(n), the reverse of build
+    private static void unbuild(long[] calories, int[] counts) {
+        for (int i = calories.length - 1; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent < calories.length) {
+                calories[parent] -= calories[i];
+                counts[parent] -= counts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package ru.javawebinar.topjava.util;
+
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive (AIMD) limit of concurrent calls to a shared resource, driven by the observed call latency.
+ * <p>
+ * The no-load latency baseline is the minimum latency of the previous window (a second with at least
+ * {@link #MIN_WINDOW_CALLS} calls), so it follows a database that became slower for everyone.
+ * A call slower than {@code tolerance * baseline} (and than {@code minLatencyThresholdMillis}) means queueing
+ * in the resource: the limit is cut by {@link #BACKOFF_RATIO}, at most once per round trip (only calls started
+ * after the previous cut may cut again). Faster calls completing while the limit is fully used raise it by
+ * {@code 1 / limit}, i.e. about one per round trip.
+ * <p>
+ * A call over the limit waits for a release at most {@code maxWaitMillis}, then fails with
+ * {@link ServiceUnavailableException}.
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+    static final int MIN_WINDOW_CALLS = 10;
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long minLatencyThresholdNanos;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    // guarded by lock
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos = System.nanoTime();
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowCalls;
+    private long windowStartNanos = lastDecreaseNanos;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+
+    private String name = "repositories";
+
+    private ObjectName objectName;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance,
+                              long minLatencyThresholdMillis, long maxWaitMillis) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.minLatencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(minLatencyThresholdMillis);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Takes a slot, returns the call start time to be passed to {@link #release(long)}
+     */
+    public long acquire() {
+        lock.lock();
+        try {
+            long nanos = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (nanos <= 0) {
+                    rejected.increment();
+                    throw new ServiceUnavailableException("Overloaded: " + inFlight + " calls in flight, try again later");
+                }
+                try {
+                    nanos = released.awaitNanos(nanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.increment();
+                    throw new ServiceUnavailableException("Interrupted while waiting for a slot");
+                }
+            }
+            inFlight++;
+            accepted.increment();
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(long startNanos) {
+        long now = System.nanoTime();
+        long latency = now - startNanos;
+        lock.lock();
+        try {
+            windowMinNanos = Math.min(windowMinNanos, latency);
+            if (++windowCalls >= MIN_WINDOW_CALLS && now - windowStartNanos >= WINDOW_NANOS) {
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowCalls = 0;
+                windowStartNanos = now;
+            }
+            long baseline = Math.min(baselineNanos, windowMinNanos);
+            if (latency > Math.max(minLatencyThresholdNanos, (long) (baseline * tolerance))) {
+                slow.increment();
+                if (startNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecreaseNanos = now;
+                }
+            } else if (inFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void register() {
+        objectName = MBeans.register(this, "ru.javawebinar.topjava:type=ConcurrencyLimiter,name=" + ObjectName.quote(name));
+    }
+
+    public void unregister() {
+        MBeans.unregister(objectName, this);
+    }
+
+    @Override
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getSlow() {
+        return slow.sum();
+    }
+
+    @Override
+    public long getBaselineLatencyMicros() {
+        lock.lock();
+        try {
+            long baseline = Math.min(baselineNanos, windowMinNanos);
+            return baseline == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMicros(baseline);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ru.javawebinar.topjava.util;
+
+public interface ConcurrencyLimiterMXBean {
+
+    int getLimit();
+
+    int getInFlight();
+
+    long getAccepted();
+
+    long getRejected();
+
+    // calls slower than the tolerated latency, each may have decreased the limit
+    long getSlow();
+
+    long getBaselineLatencyMicros();
+}
@@ -6,9 +6,16 @@ import org.springframework.util.StringUtils;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 
+/**
+ * Dates and times of the minute resolution ({@code yyyy-MM-dd}, {@code HH:mm}, {@code yyyy-MM-dd'T'HH:mm},
+ * {@code yyyy-MM-dd HH:mm}) are parsed and formatted by hand, digit by digit, with no intermediate objects.
+ * Any other shape (seconds, years beyond 9999) and any invalid value go to java.time, which gives the same result
+ * or the same DateTimeParseException as before.
+ */
 public class DateTimeUtil {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
@@ -16,6 +23,10 @@ public class DateTimeUtil {
     private static final LocalDateTime MIN_DATE = LocalDateTime.of(1, 1, 1, 0, 0);
     private static final LocalDateTime MAX_DATE = LocalDateTime.of(3000, 1, 1, 0, 0);
 
+    // recently formatted values by minute, direct-mapped: a table renders the same timestamps page after page
+    private static final int FORMATTED_CACHE_SIZE = 1024;
+    private static final Formatted[] formatted = new Formatted[FORMATTED_CACHE_SIZE];
+
     public static LocalDateTime atStartOfDayOrMin(LocalDate localDate) {
         return localDate != null ? localDate.atStartOfDay() : MIN_DATE;
     }
@@ -24,17 +35,139 @@ public class DateTimeUtil {
         return localDate != null ? localDate.plus(1, ChronoUnit.DAYS).atStartOfDay() : MAX_DATE;
     }
 
+    // yyyy-MM-dd HH:mm, seconds are dropped
     public static String toString(LocalDateTime ldt) {
-        return ldt == null ? "" : ldt.format(DATE_TIME_FORMATTER);
+        if (ldt == null) {
+            return "";
+        }
+        int year = ldt.getYear();
+        // yyyy is the year of era: proleptic year 0 is 0001 BC
+        if (year < 1 || year > 9999) {
+            return ldt.format(DATE_TIME_FORMATTER);
+        }
+        int month = ldt.getMonthValue();
+        int day = ldt.getDayOfMonth();
+        int hour = ldt.getHour();
+        int minute = ldt.getMinute();
+        // fields packed as is, cheaper than an epoch minute
+        long key = (((year * 16L + month) * 32 + day) * 32 + hour) * 64 + minute;
+        int slot = (int) (key ^ key >>> 10) & (FORMATTED_CACHE_SIZE - 1);
+        Formatted cached = formatted[slot];
+        if (cached != null && cached.key == key) {
+            return cached.text;
+        }
+        char[] chars = new char[16];
+        put4(chars, 0, year);
+        chars[4] = '-';
+        put2(chars, 5, month);
+        chars[7] = '-';
+        put2(chars, 8, day);
+        chars[10] = ' ';
+        put2(chars, 11, hour);
+        chars[13] = ':';
+        put2(chars, 14, minute);
+        String text = new String(chars);
+        // racy publication is fine: Formatted is immutable, a lost update is a cache miss
+        formatted[slot] = new Formatted(key, text);
+        return text;
     }
 
     public static @Nullable
     LocalDate parseLocalDate(@Nullable String str) {
-        return StringUtils.hasLength(str) ? LocalDate.parse(str) : null;
+        if (!StringUtils.hasLength(str)) {
+            return null;
+        }
+        LocalDate date = str.length() == 10 ? date(str) : null;
+        return date != null ? date : LocalDate.parse(str);
     }
 
     public static @Nullable
     LocalTime parseLocalTime(@Nullable String str) {
-        return StringUtils.hasLength(str) ? LocalTime.parse(str) : null;
+        if (!StringUtils.hasLength(str)) {
+            return null;
+        }
+        if (str.length() == 5 && str.charAt(2) == ':') {
+            int hour = digits(str, 0, 2);
+            int minute = digits(str, 3, 2);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        return LocalTime.parse(str);
+    }
+
+    // yyyy-MM-dd'T'HH:mm (ISO, as LocalDateTime.parse) or yyyy-MM-dd HH:mm (as toString)
+    public static LocalDateTime parseLocalDateTime(String str) {
+        if (str.length() == 16 && (str.charAt(10) == 'T' || str.charAt(10) == ' ') && str.charAt(13) == ':') {
+            LocalDate date = date(str);
+            int hour = digits(str, 11, 2);
+            int minute = digits(str, 14, 2);
+            if (date != null && hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalDateTime.of(date, LocalTime.of(hour, minute));
+            }
+        }
+        // ISO is strict: 2020-02-30 is an error, not 2020-02-29 as of DATE_TIME_FORMATTER
+        return LocalDateTime.parse(str.length() > 10 && str.charAt(10) == ' ' ? str.replace(' ', 'T') : str);
+    }
+
+    // yyyy-MM-dd at the start of str, null if not a valid date
+    private static LocalDate date(String str) {
+        if (str.charAt(4) != '-' || str.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(str, 0, 4);
+        int month = digits(str, 5, 2);
+        int day = digits(str, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return Year.isLeap(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // -1 if not all count chars from start are digits
+    private static int digits(String str, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = str.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void put2(char[] chars, int at, int value) {
+        chars[at] = (char) ('0' + value / 10);
+        chars[at + 1] = (char) ('0' + value % 10);
+    }
+
+    private static void put4(char[] chars, int at, int value) {
+        put2(chars, at, value / 100);
+        put2(chars, at + 2, value % 100);
+    }
+
+    private static class Formatted {
+        final long key;
+        final String text;
+
+        Formatted(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
     }
 }
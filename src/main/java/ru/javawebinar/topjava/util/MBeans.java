@@ -0,0 +1,58 @@
+package ru.javawebinar.topjava.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registration in the platform MBean server: JMX is diagnostics only, failures are logged, never thrown.
+ */
+public class MBeans {
+    private static final Logger log = LoggerFactory.getLogger(MBeans.class);
+
+    // the last registered mbean of every name: only it may unregister the name
+    private static final Map<ObjectName, Object> owners = new ConcurrentHashMap<>();
+
+    private MBeans() {
+    }
+
+    /**
+     * Registers {@code mbean} replacing a previous registration under the name (e.g. of a redeployed webapp),
+     * returns the name or null when not registered
+     */
+    public static synchronized ObjectName register(Object mbean, String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+            owners.put(objectName, mbean);
+            return objectName;
+        } catch (JMException e) {
+            log.warn("{} is not available over JMX: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters the name if {@code mbean} is still the one registered under it: a replaced mbean going away
+     * (e.g. the old webapp of a redeploy closed after the new one started) leaves its successor registered
+     */
+    public static synchronized void unregister(ObjectName objectName, Object mbean) {
+        if (objectName != null && owners.remove(objectName, mbean)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("unregister {}: {}", objectName, e.toString());
+            }
+        }
+    }
+}
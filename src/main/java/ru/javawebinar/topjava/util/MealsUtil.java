@@ -48,6 +48,13 @@ public class MealsUtil {
                 .collect(Collectors.toList());
     }
 
+    // excess by the calories of whole days, given for every date of the meals
+    public static List<MealTo> getTos(Collection<Meal> meals, Map<LocalDate, Long> caloriesSumByDate, int caloriesPerDay) {
+        return meals.stream()
+                .map(meal -> createTo(meal, caloriesSumByDate.get(meal.getDate()) > caloriesPerDay))
+                .collect(Collectors.toList());
+    }
+
     private static MealTo createTo(Meal meal, boolean excess) {
         return new MealTo(meal.getId(), meal.getDateTime(), meal.getDescription(), meal.getCalories(), excess);
     }
@@ -11,8 +11,11 @@ public class ValidationUtil {
         return object;
     }
 
+    // the message is built only on failure: the success path allocates nothing
     public static void checkNotFoundWithId(boolean found, int id) {
-        checkNotFound(found, "id=" + id);
+        if (!found) {
+            throw new NotFoundException("Not found entity with id=" + id);
+        }
     }
 
     public static <T> T checkNotFound(T object, String msg) {
@@ -0,0 +1,10 @@
+package ru.javawebinar.topjava.util.exception;
+
+/**
+ * The call was shed under overload, the client should retry later (HTTP 503)
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
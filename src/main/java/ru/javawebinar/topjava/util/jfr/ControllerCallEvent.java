@@ -0,0 +1,11 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("topjava.ControllerCall")
+@Label("Controller Call")
+@Category({"Topjava", "Controller"})
+public class ControllerCallEvent extends MethodCallEvent {
+}
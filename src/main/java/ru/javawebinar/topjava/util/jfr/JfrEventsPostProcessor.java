@@ -0,0 +1,93 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.EventType;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Controller;
+import org.springframework.stereotype.Repository;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.util.function.Supplier;
+
+/**
+ * Emits a JFR event for every call of a {@link Controller}, {@link Service} and {@link Repository} bean.
+ * <p>
+ * Already proxied beans (e.g. transactional services) get the interceptor in front of the existing advisors,
+ * so the event covers the transaction. While no recording has the event type enabled, a call costs
+ * the {@link EventType#isEnabled()} check, no event is allocated.
+ */
+public class JfrEventsPostProcessor implements BeanPostProcessor, BeanClassLoaderAware {
+
+    private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        EventInterceptor interceptor;
+        if (AnnotatedElementUtils.hasAnnotation(targetClass, Controller.class)) {
+            interceptor = new EventInterceptor(targetClass, ControllerCallEvent.class, ControllerCallEvent::new);
+        } else if (AnnotatedElementUtils.hasAnnotation(targetClass, Service.class)) {
+            interceptor = new EventInterceptor(targetClass, ServiceCallEvent.class, ServiceCallEvent::new);
+        } else if (AnnotatedElementUtils.hasAnnotation(targetClass, Repository.class)) {
+            interceptor = new EventInterceptor(targetClass, RepositoryCallEvent.class, RepositoryCallEvent::new);
+        } else {
+            return bean;
+        }
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvisor(0, new DefaultPointcutAdvisor(interceptor));
+            return bean;
+        }
+        // by class: beans are looked up by their implementation class, e.g. JdbcMealRepository
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(beanClassLoader);
+    }
+
+    private static class EventInterceptor implements MethodInterceptor {
+        private final String className;
+        private final EventType eventType;
+        private final Supplier<MethodCallEvent> events;
+
+        EventInterceptor(Class<?> targetClass, Class<? extends MethodCallEvent> eventClass, Supplier<MethodCallEvent> events) {
+            this.className = targetClass.getSimpleName();
+            this.eventType = EventType.getEventType(eventClass);
+            this.events = events;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            if (!eventType.isEnabled()) {
+                return invocation.proceed();
+            }
+            MethodCallEvent event = events.get();
+            event.begin();
+            Object result = null;
+            try {
+                result = invocation.proceed();
+                return result;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.className = className;
+                    event.method = invocation.getMethod().getName();
+                    event.setResult(result);
+                    event.commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Call of a bean method, see {@link JfrEventsPostProcessor}
+ */
+@StackTrace(false)
+public abstract class MethodCallEvent extends Event {
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    String method;
+
+    // result of the call, evaluated only for events to be committed
+    void setResult(Object result) {
+    }
+}
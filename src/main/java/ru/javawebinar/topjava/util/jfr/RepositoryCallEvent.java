@@ -0,0 +1,34 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.util.Collection;
+
+@Name("topjava.RepositoryCall")
+@Label("Repository Call")
+@Category({"Topjava", "Repository"})
+public class RepositoryCallEvent extends MethodCallEvent {
+    @Label("Rows")
+    @Description("Entities returned or rows affected, 0 for void and streaming calls")
+    int rows;
+
+    @Override
+    void setResult(Object result) {
+        if (result instanceof Collection) {
+            rows = ((Collection<?>) result).size();
+        } else if (result instanceof Number) {
+            rows = ((Number) result).intValue();
+        } else if (result instanceof Boolean) {
+            rows = (Boolean) result ? 1 : 0;
+        } else if (result instanceof MealChanges) {
+            MealChanges changes = (MealChanges) result;
+            rows = changes.getChanged().size() + changes.getDeleted().size();
+        } else if (result != null) {
+            rows = 1;
+        }
+    }
+}
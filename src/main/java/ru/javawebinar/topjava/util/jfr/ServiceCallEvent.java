@@ -0,0 +1,11 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("topjava.ServiceCall")
+@Label("Service Call")
+@Category({"Topjava", "Service"})
+public class ServiceCallEvent extends MethodCallEvent {
+}
@@ -0,0 +1,34 @@
+package ru.javawebinar.topjava.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Servlet request, see {@link ru.javawebinar.topjava.web.ActionEventFilter}
+ */
+@Name("topjava.ServletAction")
+@Label("Servlet Action")
+@Category({"Topjava", "Web"})
+@StackTrace(false)
+public class ServletActionEvent extends Event {
+    @Label("HTTP Method")
+    public String httpMethod;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Action")
+    public String action;
+
+    @Label("User Id")
+    public int userId;
+
+    @Label("Parameters")
+    public String parameters;
+
+    @Label("Status")
+    public int status;
+}
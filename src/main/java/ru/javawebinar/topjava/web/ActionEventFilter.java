@@ -0,0 +1,71 @@
+package ru.javawebinar.topjava.web;
+
+import jdk.jfr.EventType;
+import ru.javawebinar.topjava.util.jfr.ServletActionEvent;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Records every request as a {@link ServletActionEvent} while a JFR recording has it enabled.
+ * Mapped after {@link AuthorizedUserFilter} to see the authorized user.
+ */
+public class ActionEventFilter implements Filter {
+    private static final int MAX_PARAMETERS_LENGTH = 256;
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(ServletActionEvent.class);
+
+    @Override
+    public void init(FilterConfig config) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        if (!EVENT_TYPE.isEnabled()) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        HttpServletRequest request = (HttpServletRequest) req;
+        ServletActionEvent event = new ServletActionEvent();
+        event.begin();
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.httpMethod = request.getMethod();
+                event.path = request.getPathInfo() == null ? request.getServletPath() : request.getServletPath() + request.getPathInfo();
+                event.action = request.getParameter("action");
+                event.userId = SecurityUtil.authUserId();
+                // read after the servlet: form parameters are already parsed, json bodies are left to the servlet
+                event.parameters = toString(request.getParameterMap());
+                event.status = ((HttpServletResponse) resp).getStatus();
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    static String toString(Map<String, String[]> parameters) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            for (String value : parameter.getValue()) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(parameter.getKey()).append('=').append(value);
+                if (sb.length() >= MAX_PARAMETERS_LENGTH) {
+                    sb.setLength(MAX_PARAMETERS_LENGTH);
+                    return sb.append("...").toString();
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
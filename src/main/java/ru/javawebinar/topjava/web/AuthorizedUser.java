@@ -0,0 +1,37 @@
+package ru.javawebinar.topjava.web;
+
+import java.io.Serializable;
+
+/**
+ * Authenticated user context kept in the session: id and the cached calorie norm.
+ * One instance per user is shared by all his sessions, so it is refreshed in place on user update.
+ */
+public class AuthorizedUser implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+
+    private volatile int caloriesPerDay;
+
+    public AuthorizedUser(int id, int caloriesPerDay) {
+        this.id = id;
+        this.caloriesPerDay = caloriesPerDay;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getCaloriesPerDay() {
+        return caloriesPerDay;
+    }
+
+    void setCaloriesPerDay(int caloriesPerDay) {
+        this.caloriesPerDay = caloriesPerDay;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthorizedUser{id=" + id + ", caloriesPerDay=" + caloriesPerDay + '}';
+    }
+}
@@ -0,0 +1,41 @@
+package ru.javawebinar.topjava.web;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/**
+ * Binds {@link AuthorizedUser} of the session to the request thread, drops it from the session of a deleted user
+ */
+public class AuthorizedUserFilter implements Filter {
+    public static final String AUTH_USER = "authUser";
+
+    @Override
+    public void init(FilterConfig config) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpSession session = ((HttpServletRequest) request).getSession(false);
+        AuthorizedUser authUser = session == null ? null : (AuthorizedUser) session.getAttribute(AUTH_USER);
+        if (authUser == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (SecurityUtil.set(authUser) == null) {
+            session.removeAttribute(AUTH_USER);
+            chain.doFilter(request, response);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SecurityUtil.clear();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
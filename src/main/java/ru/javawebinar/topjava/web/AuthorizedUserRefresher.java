@@ -0,0 +1,22 @@
+package ru.javawebinar.topjava.web;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.javawebinar.topjava.service.UserChangedEvent;
+
+/**
+ * Keeps cached {@link AuthorizedUser} contexts in sync with user updates, no DB round trip needed.
+ * Applied after commit, a rolled back update is not seen.
+ */
+@Component
+public class AuthorizedUserRefresher {
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.getUser() == null) {
+            SecurityUtil.evict(event.getId());
+        } else {
+            SecurityUtil.refresh(event.getUser());
+        }
+    }
+}
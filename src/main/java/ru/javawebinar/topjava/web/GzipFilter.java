@@ -0,0 +1,231 @@
+package ru.javawebinar.topjava.web;
+
+import ru.javawebinar.topjava.web.json.MealsBinaryFormat;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip'es textual responses and binary meal lists larger than {@code minSize} (init-param, default 1024 bytes)
+ * for clients sending {@code Accept-Encoding: gzip}.
+ * <p>
+ * The first {@code minSize} bytes are buffered to decide; small responses go out as is with Content-Length.
+ * A flush before {@code minSize} bytes sends the response as is with no Content-Length (its size is not known yet),
+ * so does non-blocking output: a {@link WriteListener} set before any write gets the container stream directly.
+ */
+public class GzipFilter implements Filter {
+    private static final int DEFAULT_MIN_SIZE = 1024;
+
+    private int minSize = DEFAULT_MIN_SIZE;
+
+    @Override
+    public void init(FilterConfig config) {
+        String minSize = config.getInitParameter("minSize");
+        if (minSize != null) {
+            this.minSize = Integer.parseInt(minSize);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+        GzipResponse gzipResponse = new GzipResponse(response, minSize);
+        chain.doFilter(request, gzipResponse);
+        gzipResponse.finish();
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    // binary meal lists too: their description dictionary and varints still shrink by about a third
+    static boolean isCompressible(String contentType) {
+        return contentType != null && (contentType.startsWith("text/") || contentType.contains("json")
+                || contentType.contains("xml") || contentType.contains("javascript")
+                || contentType.startsWith(MealsBinaryFormat.MEDIA_TYPE));
+    }
+
+    static class GzipResponse extends HttpServletResponseWrapper {
+        private final byte[] buffer;
+        private int count;
+        private long contentLength = -1;
+
+        // null while the first bytes are buffered
+        private OutputStream target;
+        private GZIPOutputStream gzip;
+
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        // the container stream when a WriteListener is set
+        private ServletOutputStream nonBlocking;
+
+        GzipResponse(HttpServletResponse response, int minSize) {
+            super(response);
+            this.buffer = new byte[minSize];
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+            if (target != null && gzip == null) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                commit(count >= buffer.length, false);
+            }
+            target.flush();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            count = 0;
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+            contentLength = -1;
+            super.reset();
+        }
+
+        void finish() throws IOException {
+            if (stream == null) {
+                // nothing written through the wrapper (redirect, sendError)
+                return;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                commit(false, true);
+            }
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+
+        private void write(byte[] bytes, int off, int len) throws IOException {
+            if (target == null) {
+                if (count + len <= buffer.length) {
+                    System.arraycopy(bytes, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                commit(true, false);
+            }
+            target.write(bytes, off, len);
+        }
+
+        // complete: all of the response is buffered, its size is the Content-Length
+        private void commit(boolean large, boolean complete) throws IOException {
+            ServletOutputStream out = super.getOutputStream();
+            if (large && isCompressible(getContentType()) && !containsHeader("Content-Encoding")) {
+                setHeader("Content-Encoding", "gzip");
+                gzip = new GZIPOutputStream(out, 8192);
+                target = gzip;
+            } else {
+                if (contentLength < 0 && complete) {
+                    contentLength = count;
+                }
+                if (contentLength >= 0) {
+                    super.setContentLengthLong(contentLength);
+                }
+                target = out;
+            }
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+
+        private ServletOutputStream stream() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        if (target == null && count < buffer.length) {
+                            buffer[count++] = (byte) b;
+                            return;
+                        }
+                        if (target == null) {
+                            commit(true, false);
+                        }
+                        target.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        GzipResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return nonBlocking == null || nonBlocking.isReady();
+                    }
+
+                    // buffered bytes could not be written without blocking
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        if (target != null || count > 0) {
+                            throw new IllegalStateException("setWriteListener() after the first write");
+                        }
+                        try {
+                            commit(false, false);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        nonBlocking = (ServletOutputStream) target;
+                        nonBlocking.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return stream;
+        }
+    }
+}
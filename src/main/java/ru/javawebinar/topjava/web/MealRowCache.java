@@ -0,0 +1,96 @@
+package ru.javawebinar.topjava.web;
+
+import ru.javawebinar.topjava.to.MealTo;
+import ru.javawebinar.topjava.util.DateTimeUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rendered {@code <tr>} fragments of meals.jsp keyed by meal id.
+ * A cached row is reused only while the rendered state (the row version: dateTime, description, calories, excess)
+ * is unchanged, so edits and excess changes re-render the row. The cache is dropped as a whole when full.
+ */
+public class MealRowCache {
+    private final int maxSize;
+
+    private final Map<Integer, Row> rows = new ConcurrentHashMap<>();
+
+    public MealRowCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void writeRows(Iterable<MealTo> meals, Writer out) throws IOException {
+        for (MealTo meal : meals) {
+            out.write(getRow(meal));
+        }
+    }
+
+    String getRow(MealTo meal) {
+        Row row = rows.get(meal.getId());
+        if (row == null || !row.isVersionOf(meal)) {
+            row = new Row(meal, render(meal));
+            if (rows.size() >= maxSize) {
+                rows.clear();
+            }
+            if (maxSize > 0) {
+                rows.put(meal.getId(), row);
+            }
+        }
+        return row.html;
+    }
+
+    static String render(MealTo meal) {
+        return "<tr data-mealExcess=\"" + meal.isExcess() + "\">\n" +
+                "    <td>" + DateTimeUtil.toString(meal.getDateTime()) + "</td>\n" +
+                "    <td>" + escapeHtml(meal.getDescription()) + "</td>\n" +
+                "    <td>" + meal.getCalories() + "</td>\n" +
+                "    <td><a href=\"meals?action=update&id=" + meal.getId() + "\">Update</a></td>\n" +
+                "    <td><a href=\"meals?action=delete&id=" + meal.getId() + "\">Delete</a></td>\n" +
+                "</tr>\n";
+    }
+
+    static String escapeHtml(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String escaped = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : c == '"' ? "&#34;" : c == '\'' ? "&#39;" : null;
+            if (escaped != null && sb == null) {
+                sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            if (sb != null) {
+                if (escaped != null) {
+                    sb.append(escaped);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb == null ? text : sb.toString();
+    }
+
+    private static class Row {
+        final LocalDateTime dateTime;
+        final String description;
+        final int calories;
+        final boolean excess;
+        final String html;
+
+        Row(MealTo meal, String html) {
+            this.dateTime = meal.getDateTime();
+            this.description = meal.getDescription();
+            this.calories = meal.getCalories();
+            this.excess = meal.isExcess();
+            this.html = html;
+        }
+
+        boolean isVersionOf(MealTo meal) {
+            return calories == meal.getCalories() && excess == meal.isExcess()
+                    && dateTime.equals(meal.getDateTime()) && Objects.equals(description, meal.getDescription());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.javawebinar.topjava.web;
+
+import ru.javawebinar.topjava.to.MealTo;
+
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+import java.io.IOException;
+
+/**
+ * {@code <m:mealRows meals="${meals}"/>} - table rows of meals.jsp from {@link MealRowCache}
+ */
+public class MealRowsTag extends SimpleTagSupport {
+    private static final MealRowCache CACHE = new MealRowCache(100_000);
+
+    private Iterable<MealTo> meals;
+
+    public void setMeals(Iterable<MealTo> meals) {
+        this.meals = meals;
+    }
+
+    @Override
+    public void doTag() throws IOException {
+        CACHE.writeRows(meals, getJspContext().getOut());
+    }
+}
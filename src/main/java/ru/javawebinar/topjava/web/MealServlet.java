@@ -1,9 +1,8 @@
 package ru.javawebinar.topjava.web;
 
-import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.util.StringUtils;
 import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
 import ru.javawebinar.topjava.web.meal.MealRestController;
 
 import javax.servlet.ServletException;
@@ -15,33 +14,69 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalDate;
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalDateTime;
 import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalTime;
 
 public class MealServlet extends HttpServlet {
+    static final int SEARCH_PAGE_SIZE = 20;
+
+    private static final Set<String> GET_ACTIONS =
+            new HashSet<>(Arrays.asList("delete", "create", "update", "get", "filter", "search", "all"));
 
-    private ConfigurableApplicationContext springContext;
     private MealRestController mealController;
+    private RequestCosts requestCosts;
 
     @Override
     public void init() {
-        springContext = new ClassPathXmlApplicationContext("spring/spring-app.xml", "spring/spring-db.xml");
-        mealController = springContext.getBean(MealRestController.class);
+        mealController = SpringContextHolder.acquire(getServletContext()).getBean(MealRestController.class);
+        requestCosts = RequestCosts.register(getServletConfig());
     }
 
     @Override
     public void destroy() {
-        springContext.close();
+        requestCosts.unregister();
+        SpringContextHolder.release(getServletContext());
         super.destroy();
     }
 
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        long allocatedBytes = requestCosts.allocatedBytes();
+        long cpuTime = requestCosts.cpuTime();
+        try {
+            super.service(request, response);
+        } catch (ServiceUnavailableException e) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+        } finally {
+            requestCosts.record(getAction(request), allocatedBytes, cpuTime, request);
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         request.setCharacterEncoding("UTF-8");
+        String action = request.getParameter("action");
+        if ("deleteBetween".equals(action)) {
+            mealController.deleteBetween(parseLocalDate(request.getParameter("startDate")),
+                    parseLocalDate(request.getParameter("endDate")));
+            response.sendRedirect("meals");
+            return;
+        } else if ("delete".equals(action)) {
+            mealController.delete(getIds(request));
+            response.sendRedirect("meals");
+            return;
+        }
         Meal meal = new Meal(
-                LocalDateTime.parse(request.getParameter("dateTime")),
+                parseLocalDateTime(request.getParameter("dateTime")),
                 request.getParameter("description"),
                 Integer.parseInt(request.getParameter("calories")));
 
@@ -71,6 +106,10 @@ public class MealServlet extends HttpServlet {
                 request.setAttribute("meal", meal);
                 request.getRequestDispatcher("/mealForm.jsp").forward(request, response);
                 break;
+            case "get":
+                request.setAttribute("meals", mealController.get(getIds(request)));
+                request.getRequestDispatcher("/meals.jsp").forward(request, response);
+                break;
             case "filter":
                 LocalDate startDate = parseLocalDate(request.getParameter("startDate"));
                 LocalDate endDate = parseLocalDate(request.getParameter("endDate"));
@@ -79,6 +118,15 @@ public class MealServlet extends HttpServlet {
                 request.setAttribute("meals", mealController.getBetween(startDate, startTime, endDate, endTime));
                 request.getRequestDispatcher("/meals.jsp").forward(request, response);
                 break;
+            case "search":
+                int page = StringUtils.hasLength(request.getParameter("page")) ? Integer.parseInt(request.getParameter("page")) : 0;
+                request.setAttribute("meals", mealController.search(request.getParameter("text"),
+                        parseLocalDate(request.getParameter("startDate")), parseLocalDate(request.getParameter("endDate")),
+                        page * SEARCH_PAGE_SIZE, SEARCH_PAGE_SIZE));
+                request.setAttribute("page", page);
+                request.setAttribute("pageSize", SEARCH_PAGE_SIZE);
+                request.getRequestDispatcher("/meals.jsp").forward(request, response);
+                break;
             case "all":
             default:
                 request.setAttribute("meals", mealController.getAll());
@@ -87,8 +135,38 @@ public class MealServlet extends HttpServlet {
         }
     }
 
+    // called after the request is served: POST parameters are decoded as UTF-8 by then.
+    // The action served, not the raw parameter: unknown values are counted with the branch serving them
+    static String getAction(HttpServletRequest request) {
+        String method = request.getMethod();
+        String action = request.getParameter("action");
+        if ("POST".equals(method)) {
+            if (!"delete".equals(action) && !"deleteBetween".equals(action)) {
+                action = StringUtils.hasLength(request.getParameter("id")) ? "update" : "create";
+            }
+        } else if ("GET".equals(method) || "HEAD".equals(method)) {
+            if (!GET_ACTIONS.contains(action)) {
+                action = "all";
+            }
+        } else {
+            return RequestCosts.OTHER;
+        }
+        return method + " " + action;
+    }
+
     private int getId(HttpServletRequest request) {
         String paramId = Objects.requireNonNull(request.getParameter("id"));
         return Integer.parseInt(paramId);
     }
+
+    // repeated "ids" parameters and/or comma separated lists
+    private List<Integer> getIds(HttpServletRequest request) {
+        String[] paramIds = Objects.requireNonNull(request.getParameterValues("ids"));
+        return Arrays.stream(paramIds)
+                .flatMap(ids -> Arrays.stream(StringUtils.commaDelimitedListToStringArray(ids)))
+                .map(String::trim)
+                .filter(StringUtils::hasLength)
+                .map(Integer::valueOf)
+                .collect(Collectors.toList());
+    }
 }
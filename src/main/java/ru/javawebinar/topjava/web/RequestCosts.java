@@ -0,0 +1,225 @@
+package ru.javawebinar.topjava.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.javawebinar.topjava.util.LogHistogram;
+import ru.javawebinar.topjava.util.MBeans;
+
+import javax.management.ObjectName;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocated bytes and CPU time of the requests of a servlet by action, from the thread counters of
+ * {@link com.sun.management.ThreadMXBean} (the request is served by one thread, forwards to JSP included).
+ * Requests allocating more than {@code allocationThresholdBytes} are logged.
+ * Actions are keyed by the servlet from a fixed set; past {@link #MAX_ACTIONS} keys new ones are counted as {@link #OTHER}.
+ */
+public class RequestCosts implements RequestCostsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(RequestCosts.class);
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final boolean ALLOCATION_SUPPORTED = threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+
+    static final long DEFAULT_ALLOCATION_THRESHOLD_BYTES = 16 * 1024 * 1024;
+
+    private static final boolean CPU_SUPPORTED = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+
+    public static final String OTHER = "other";
+
+    static final int MAX_ACTIONS = 64;
+
+    private final String servlet;
+
+    private final ConcurrentMap<String, Histograms> actions = new ConcurrentHashMap<>();
+
+    private volatile long allocationThresholdBytes;
+
+    private ObjectName objectName;
+
+    public RequestCosts(String servlet, long allocationThresholdBytes) {
+        this.servlet = servlet;
+        this.allocationThresholdBytes = allocationThresholdBytes;
+    }
+
+    /**
+     * Costs of the servlet registered over JMX, threshold from init-param {@code allocationThresholdBytes}
+     */
+    public static RequestCosts register(ServletConfig config) {
+        String threshold = config.getInitParameter("allocationThresholdBytes");
+        RequestCosts requestCosts = new RequestCosts(config.getServletName(),
+                threshold == null ? DEFAULT_ALLOCATION_THRESHOLD_BYTES : Long.parseLong(threshold));
+        requestCosts.register();
+        return requestCosts;
+    }
+
+    public long allocatedBytes() {
+        return ALLOCATION_SUPPORTED ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    public long cpuTime() {
+        return CPU_SUPPORTED ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Records the request started at the given {@link #allocatedBytes()} and {@link #cpuTime()} of the current thread
+     */
+    public void record(String action, long allocatedBytesBefore, long cpuTimeBefore, HttpServletRequest request) {
+        long allocated = allocatedBytes() - allocatedBytesBefore;
+        long cpu = cpuTime() - cpuTimeBefore;
+        Histograms histograms = actions.get(action);
+        if (histograms == null) {
+            histograms = actions.computeIfAbsent(actions.size() < MAX_ACTIONS ? action : OTHER, a -> new Histograms());
+        }
+        histograms.allocatedBytes.record(allocated);
+        histograms.cpuNanos.record(cpu);
+        if (allocated > allocationThresholdBytes) {
+            log.warn("{} {} allocated {} KB, cpu {} ms: {}?{}", servlet, action, allocated / 1024,
+                    TimeUnit.NANOSECONDS.toMillis(cpu), request.getRequestURI(), request.getQueryString());
+        }
+    }
+
+    public void register() {
+        objectName = MBeans.register(this, "ru.javawebinar.topjava:type=RequestCosts,servlet=" + ObjectName.quote(servlet));
+    }
+
+    public void unregister() {
+        MBeans.unregister(objectName, this);
+    }
+
+    @Override
+    public List<ActionCosts> getActions() {
+        List<ActionCosts> result = new ArrayList<>();
+        new TreeMap<>(actions).forEach((action, histograms) -> result.add(new ActionCosts(action, histograms)));
+        return result;
+    }
+
+    @Override
+    public long getAllocationThresholdBytes() {
+        return allocationThresholdBytes;
+    }
+
+    @Override
+    public void setAllocationThresholdBytes(long allocationThresholdBytes) {
+        this.allocationThresholdBytes = allocationThresholdBytes;
+    }
+
+    @Override
+    public void reset() {
+        actions.values().forEach(Histograms::reset);
+    }
+
+    private static class Histograms {
+        final LogHistogram allocatedBytes = new LogHistogram();
+        final LogHistogram cpuNanos = new LogHistogram();
+
+        void reset() {
+            allocatedBytes.reset();
+            cpuNanos.reset();
+        }
+    }
+
+    /**
+     * Snapshot of an action, percentiles are within a factor of two (see {@link LogHistogram})
+     */
+    public static class ActionCosts {
+        private final String action;
+        private final long requests;
+        private final long allocatedBytesMean;
+        private final long allocatedBytesP50;
+        private final long allocatedBytesP99;
+        private final long allocatedBytesMax;
+        private final long allocatedBytesTotal;
+        private final long cpuMicrosMean;
+        private final long cpuMicrosP50;
+        private final long cpuMicrosP99;
+        private final long cpuMicrosMax;
+        private final long cpuMicrosTotal;
+
+        ActionCosts(String action, Histograms histograms) {
+            LogHistogram allocated = histograms.allocatedBytes;
+            LogHistogram cpu = histograms.cpuNanos;
+            this.action = action;
+            this.requests = allocated.getCount();
+            this.allocatedBytesMean = allocated.getMean();
+            this.allocatedBytesP50 = allocated.getPercentile(50);
+            this.allocatedBytesP99 = allocated.getPercentile(99);
+            this.allocatedBytesMax = allocated.getMax();
+            this.allocatedBytesTotal = allocated.getSum();
+            this.cpuMicrosMean = cpu.getMean() / 1000;
+            this.cpuMicrosP50 = cpu.getPercentile(50) / 1000;
+            this.cpuMicrosP99 = cpu.getPercentile(99) / 1000;
+            this.cpuMicrosMax = cpu.getMax() / 1000;
+            this.cpuMicrosTotal = cpu.getSum() / 1000;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getAllocatedBytesMean() {
+            return allocatedBytesMean;
+        }
+
+        public long getAllocatedBytesP50() {
+            return allocatedBytesP50;
+        }
+
+        public long getAllocatedBytesP99() {
+            return allocatedBytesP99;
+        }
+
+        public long getAllocatedBytesMax() {
+            return allocatedBytesMax;
+        }
+
+        public long getAllocatedBytesTotal() {
+            return allocatedBytesTotal;
+        }
+
+        public long getCpuMicrosMean() {
+            return cpuMicrosMean;
+        }
+
+        public long getCpuMicrosP50() {
+            return cpuMicrosP50;
+        }
+
+        public long getCpuMicrosP99() {
+            return cpuMicrosP99;
+        }
+
+        public long getCpuMicrosMax() {
+            return cpuMicrosMax;
+        }
+
+        public long getCpuMicrosTotal() {
+            return cpuMicrosTotal;
+        }
+
+        @Override
+        public String toString() {
+            return "ActionCosts{" +
+                    "action=" + action +
+                    ", requests=" + requests +
+                    ", allocatedBytesMean=" + allocatedBytesMean +
+                    ", allocatedBytesP99=" + allocatedBytesP99 +
+                    ", cpuMicrosMean=" + cpuMicrosMean +
+                    ", cpuMicrosP99=" + cpuMicrosP99 +
+                    '}';
+        }
+    }
+}
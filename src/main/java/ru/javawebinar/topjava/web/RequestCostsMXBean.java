@@ -0,0 +1,17 @@
+package ru.javawebinar.topjava.web;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link RequestCosts}: {@code ru.javawebinar.topjava:type=RequestCosts,servlet=<servlet name>}
+ */
+public interface RequestCostsMXBean {
+
+    List<RequestCosts.ActionCosts> getActions();
+
+    long getAllocationThresholdBytes();
+
+    void setAllocationThresholdBytes(long allocationThresholdBytes);
+
+    void reset();
+}
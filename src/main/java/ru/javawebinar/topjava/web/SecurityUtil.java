@@ -1,22 +1,77 @@
 package ru.javawebinar.topjava.web;
 
 import ru.javawebinar.topjava.model.AbstractBaseEntity;
+import ru.javawebinar.topjava.model.User;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ru.javawebinar.topjava.util.MealsUtil.DEFAULT_CALORIES_PER_DAY;
 
 public class SecurityUtil {
 
-    private static int id = AbstractBaseEntity.START_SEQ;
+    // without login (and outside of a request) everything runs as the first user with default norm
+    private static final AuthorizedUser DEFAULT = new AuthorizedUser(AbstractBaseEntity.START_SEQ, DEFAULT_CALORIES_PER_DAY);
+
+    private static final ThreadLocal<AuthorizedUser> current = new ThreadLocal<>();
+
+    // the single shared context of every logged in user, refreshed on user update
+    private static final Map<Integer, AuthorizedUser> contexts = new ConcurrentHashMap<>();
+
+    // ids of deleted users: their sessions still hold a context, it is dropped on the next request
+    private static final Set<Integer> revoked = ConcurrentHashMap.newKeySet();
 
     public static int authUserId() {
-        return id;
+        return get().getId();
     }
 
-    public static void setAuthUserId(int id) {
-        SecurityUtil.id = id;
+    public static int authUserCaloriesPerDay() {
+        return get().getCaloriesPerDay();
     }
 
-    public static int authUserCaloriesPerDay() {
-        return DEFAULT_CALORIES_PER_DAY;
+    public static AuthorizedUser get() {
+        AuthorizedUser authUser = current.get();
+        return authUser == null ? DEFAULT : authUser;
+    }
+
+    /**
+     * Context for the logged in user, to be kept in the session
+     */
+    public static AuthorizedUser login(User user) {
+        revoked.remove(user.getId());
+        AuthorizedUser authUser = contexts.computeIfAbsent(user.getId(), id -> new AuthorizedUser(id, user.getCaloriesPerDay()));
+        authUser.setCaloriesPerDay(user.getCaloriesPerDay());
+        return authUser;
+    }
+
+    /**
+     * Binds the session context to the current thread, returns the canonical instance
+     * (a deserialized session holds a copy) or null, not bound, if the user was deleted
+     */
+    public static AuthorizedUser set(AuthorizedUser authUser) {
+        if (revoked.contains(authUser.getId())) {
+            return null;
+        }
+        AuthorizedUser shared = contexts.putIfAbsent(authUser.getId(), authUser);
+        shared = shared == null ? authUser : shared;
+        current.set(shared);
+        return shared;
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+
+    public static void refresh(User user) {
+        AuthorizedUser authUser = contexts.get(user.getId());
+        if (authUser != null) {
+            authUser.setCaloriesPerDay(user.getCaloriesPerDay());
+        }
+    }
+
+    public static void evict(int id) {
+        revoked.add(id);
+        contexts.remove(id);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package ru.javawebinar.topjava.web;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The single Spring context of a webapp, shared by all its servlets: one instance of every singleton
+ * (caches, concurrency limiter, request coalescing, MBeans) instead of one per servlet.
+ * Created by the first servlet acquiring it, closed when the last one releases it.
+ */
+public class SpringContextHolder {
+    private static final String ATTRIBUTE = SpringContextHolder.class.getName();
+
+    private final ConfigurableApplicationContext context;
+
+    // guarded by SpringContextHolder.class
+    private int references;
+
+    private SpringContextHolder(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    public static synchronized ConfigurableApplicationContext acquire(ServletContext servletContext) {
+        SpringContextHolder holder = (SpringContextHolder) servletContext.getAttribute(ATTRIBUTE);
+        if (holder == null) {
+            holder = new SpringContextHolder(new ClassPathXmlApplicationContext("spring/spring-app.xml", "spring/spring-db.xml"));
+            servletContext.setAttribute(ATTRIBUTE, holder);
+        }
+        holder.references++;
+        return holder.context;
+    }
+
+    public static synchronized void release(ServletContext servletContext) {
+        SpringContextHolder holder = (SpringContextHolder) servletContext.getAttribute(ATTRIBUTE);
+        if (holder != null && --holder.references == 0) {
+            servletContext.removeAttribute(ATTRIBUTE);
+            holder.context.close();
+        }
+    }
+}
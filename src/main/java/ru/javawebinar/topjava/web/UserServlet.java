@@ -1,6 +1,9 @@
 package ru.javawebinar.topjava.web;
 
 import org.slf4j.Logger;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+import ru.javawebinar.topjava.web.user.AdminRestController;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -13,10 +16,44 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class UserServlet extends HttpServlet {
     private static final Logger log = getLogger(UserServlet.class);
 
+    private AdminRestController adminController;
+    private RequestCosts requestCosts;
+
+    @Override
+    public void init() {
+        adminController = SpringContextHolder.acquire(getServletContext()).getBean(AdminRestController.class);
+        requestCosts = RequestCosts.register(getServletConfig());
+    }
+
+    @Override
+    public void destroy() {
+        requestCosts.unregister();
+        SpringContextHolder.release(getServletContext());
+        super.destroy();
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        long allocatedBytes = requestCosts.allocatedBytes();
+        long cpuTime = requestCosts.cpuTime();
+        try {
+            super.service(request, response);
+        } catch (ServiceUnavailableException e) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+        } finally {
+            String method = request.getMethod();
+            requestCosts.record("POST".equals(method) ? "POST login" : "GET".equals(method) ? "GET users" : RequestCosts.OTHER,
+                    allocatedBytes, cpuTime, request);
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         int userId = Integer.parseInt(request.getParameter("userId"));
-        SecurityUtil.setAuthUserId(userId);
+        // the only user lookup: id and calorie norm are cached in the session from now on
+        User user = adminController.get(userId);
+        request.getSession().setAttribute(AuthorizedUserFilter.AUTH_USER, SecurityUtil.login(user));
         response.sendRedirect("meals");
     }
 
@@ -0,0 +1,65 @@
+package ru.javawebinar.topjava.web.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.javawebinar.topjava.util.exception.NotFoundException;
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+import ru.javawebinar.topjava.web.SpringContextHolder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.DateTimeException;
+
+/**
+ * JSON is written by a streaming generator straight into the response stream,
+ * nothing is built up as an intermediate String. Compression is negotiated by {@link ru.javawebinar.topjava.web.GzipFilter}.
+ */
+public abstract class AbstractJsonServlet extends HttpServlet {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected ConfigurableApplicationContext springContext;
+
+    @Override
+    public void init() {
+        springContext = SpringContextHolder.acquire(getServletContext());
+    }
+
+    @Override
+    public void destroy() {
+        SpringContextHolder.release(getServletContext());
+        super.destroy();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        try {
+            writeGet(request, response);
+        } catch (NotFoundException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+        } catch (ServiceUnavailableException e) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (IllegalArgumentException | DateTimeException e) {
+            // NumberFormatException (an IllegalArgumentException) and DateTimeParseException of request parameters
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    protected abstract void writeGet(HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    protected JsonGenerator startJson(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        return JSON_FACTORY.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+    }
+
+    // null for collection requests, id from "/{id}" otherwise
+    protected static Integer getPathId(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        return pathInfo == null || "/".equals(pathInfo) ? null : Integer.valueOf(pathInfo.substring(1));
+    }
+}
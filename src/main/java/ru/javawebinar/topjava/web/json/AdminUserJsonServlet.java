@@ -0,0 +1,131 @@
+package ru.javawebinar.topjava.web.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.util.StringUtils;
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+import ru.javawebinar.topjava.web.user.AdminRestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalDate;
+
+/**
+ * GET /rest/admin/users - list of User<br>
+ * GET /rest/admin/users?email - User<br>
+ * GET /rest/admin/users/{id} - User<br>
+ * GET /rest/admin/users?report=excessByDay[&startDate&endDate] - list of DayExcess, the last quarter by default<br>
+ * GET /rest/admin/users?report=excessByUser[&startDate&endDate] - list of UserExcess, streamed while computed
+ * <p>
+ * Password is never written.
+ */
+public class AdminUserJsonServlet extends AbstractJsonServlet {
+
+    private AdminRestController adminController;
+
+    @Override
+    public void init() {
+        super.init();
+        adminController = springContext.getBean(AdminRestController.class);
+    }
+
+    @Override
+    protected void writeGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String report = request.getParameter("report");
+        if (StringUtils.hasLength(report)) {
+            writeReport(report, request, response);
+            return;
+        }
+        Integer id = getPathId(request);
+        String email = request.getParameter("email");
+        if (id != null || StringUtils.hasLength(email)) {
+            User user = id != null ? adminController.get(id) : adminController.getByMail(email);
+            try (JsonGenerator json = startJson(request, response)) {
+                writeUser(json, user);
+            }
+            return;
+        }
+        try (JsonGenerator json = startJson(request, response)) {
+            json.writeStartArray();
+            for (User user : adminController.getAll()) {
+                writeUser(json, user);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private void writeReport(String report, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LocalDate startDate = parseLocalDate(request.getParameter("startDate"));
+        LocalDate endDate = parseLocalDate(request.getParameter("endDate"));
+        switch (report) {
+            case "excessByDay":
+                List<DayExcess> days = adminController.getExcessByDay(startDate, endDate);
+                try (JsonGenerator json = startJson(request, response)) {
+                    json.writeStartArray();
+                    for (DayExcess day : days) {
+                        writeDayExcess(json, day);
+                    }
+                    json.writeEndArray();
+                }
+                break;
+            case "excessByUser":
+                try (JsonGenerator json = startJson(request, response)) {
+                    json.writeStartArray();
+                    adminController.forEachUserExcess(startDate, endDate, user -> {
+                        try {
+                            writeUserExcess(json, user);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    json.writeEndArray();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown report " + report);
+        }
+    }
+
+    static void writeDayExcess(JsonGenerator json, DayExcess day) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("date", day.getDate().toString());
+        json.writeNumberField("users", day.getUsers());
+        json.writeNumberField("excessUsers", day.getExcessUsers());
+        json.writeNumberField("excessShare", day.getExcessShare());
+        json.writeEndObject();
+    }
+
+    static void writeUserExcess(JsonGenerator json, UserExcess user) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("userId", user.getUserId());
+        json.writeNumberField("days", user.getDays());
+        json.writeNumberField("excessDays", user.getExcessDays());
+        json.writeEndObject();
+    }
+
+    static void writeUser(JsonGenerator json, User user) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", user.getId());
+        json.writeStringField("name", user.getName());
+        json.writeStringField("email", user.getEmail());
+        json.writeBooleanField("enabled", user.isEnabled());
+        json.writeStringField("registered", Instant.ofEpochMilli(user.getRegistered().getTime()).toString());
+        json.writeArrayFieldStart("roles");
+        for (Role role : user.getRoles()) {
+            json.writeString(role.name());
+        }
+        json.writeEndArray();
+        json.writeNumberField("caloriesPerDay", user.getCaloriesPerDay());
+        json.writeEndObject();
+    }
+}
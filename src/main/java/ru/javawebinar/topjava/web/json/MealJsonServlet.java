@@ -0,0 +1,151 @@
+package ru.javawebinar.topjava.web.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.util.StringUtils;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.to.MealChanges;
+import ru.javawebinar.topjava.to.MealTo;
+import ru.javawebinar.topjava.web.meal.MealRestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalDate;
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalTime;
+
+/**
+ * GET /rest/profile/meals[?startDate&endDate&startTime&endTime] - list of MealTo<br>
+ * GET /rest/profile/meals?text&startDate&endDate&offset&limit - search page of MealTo<br>
+ * GET /rest/profile/meals?since={version} - delta sync: {version, reset, changed: [Meal], deleted: [id]}<br>
+ * GET /rest/profile/meals?total&startDate&endDate - {startDate, endDate, calories, meals, averagePerDay}<br>
+ * GET /rest/profile/meals?total&days[&endDate] - the same for the days till endDate (today by default)<br>
+ * GET /rest/profile/meals/{id} - Meal
+ * <p>
+ * Lists of MealTo are written in {@link MealsBinaryFormat} instead when the request accepts its media type.
+ */
+public class MealJsonServlet extends AbstractJsonServlet {
+    private static final int DEFAULT_LIMIT = 20;
+
+    private MealRestController mealController;
+
+    @Override
+    public void init() {
+        super.init();
+        mealController = springContext.getBean(MealRestController.class);
+    }
+
+    @Override
+    protected void writeGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Integer id = getPathId(request);
+        if (id != null) {
+            Meal meal = mealController.get(id);
+            try (JsonGenerator json = startJson(request, response)) {
+                writeMeal(json, meal);
+            }
+            return;
+        }
+        if (StringUtils.hasLength(request.getParameter("since"))) {
+            MealChanges changes = mealController.getChangedSince(Long.parseLong(request.getParameter("since")));
+            try (JsonGenerator json = startJson(request, response)) {
+                writeChanges(json, changes);
+            }
+            return;
+        }
+        if (request.getParameter("total") != null) {
+            String days = request.getParameter("days");
+            LocalDate endDate = parseLocalDate(request.getParameter("endDate"));
+            CaloriesTotal total = StringUtils.hasLength(days) ?
+                    mealController.getCaloriesTotal(endDate, Integer.parseInt(days)) :
+                    mealController.getCaloriesTotal(parseLocalDate(request.getParameter("startDate")), endDate);
+            try (JsonGenerator json = startJson(request, response)) {
+                writeCaloriesTotal(json, total);
+            }
+            return;
+        }
+        List<MealTo> meals;
+        if (StringUtils.hasLength(request.getParameter("text"))) {
+            String offset = request.getParameter("offset");
+            String limit = request.getParameter("limit");
+            meals = mealController.search(request.getParameter("text"),
+                    parseLocalDate(request.getParameter("startDate")), parseLocalDate(request.getParameter("endDate")),
+                    StringUtils.hasLength(offset) ? Integer.parseInt(offset) : 0,
+                    StringUtils.hasLength(limit) ? Integer.parseInt(limit) : DEFAULT_LIMIT);
+        } else if (request.getQueryString() != null) {
+            meals = mealController.getBetween(
+                    parseLocalDate(request.getParameter("startDate")), parseLocalTime(request.getParameter("startTime")),
+                    parseLocalDate(request.getParameter("endDate")), parseLocalTime(request.getParameter("endTime")));
+        } else {
+            meals = mealController.getAll();
+        }
+        // the same URL gives JSON or binary
+        response.addHeader("Vary", "Accept");
+        String accept = request.getHeader("Accept");
+        if (accept != null && accept.contains(MealsBinaryFormat.MEDIA_TYPE)) {
+            response.setContentType(MealsBinaryFormat.MEDIA_TYPE);
+            MealsBinaryFormat.write(meals, response.getOutputStream());
+            return;
+        }
+        try (JsonGenerator json = startJson(request, response)) {
+            json.writeStartArray();
+            for (MealTo meal : meals) {
+                writeMealTo(json, meal);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    static void writeMealTo(JsonGenerator json, MealTo meal) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", meal.getId());
+        writeDateTime(json, meal.getDateTime());
+        json.writeStringField("description", meal.getDescription());
+        json.writeNumberField("calories", meal.getCalories());
+        json.writeBooleanField("excess", meal.isExcess());
+        json.writeEndObject();
+    }
+
+    static void writeMeal(JsonGenerator json, Meal meal) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", meal.getId());
+        writeDateTime(json, meal.getDateTime());
+        json.writeStringField("description", meal.getDescription());
+        json.writeNumberField("calories", meal.getCalories());
+        json.writeEndObject();
+    }
+
+    static void writeChanges(JsonGenerator json, MealChanges changes) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("version", changes.getVersion());
+        json.writeBooleanField("reset", changes.isReset());
+        json.writeArrayFieldStart("changed");
+        for (Meal meal : changes.getChanged()) {
+            writeMeal(json, meal);
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("deleted");
+        for (int id : changes.getDeleted()) {
+            json.writeNumber(id);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    static void writeCaloriesTotal(JsonGenerator json, CaloriesTotal total) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("startDate", total.getStartDate().toString());
+        json.writeStringField("endDate", total.getEndDate().toString());
+        json.writeNumberField("calories", total.getCalories());
+        json.writeNumberField("meals", total.getMeals());
+        json.writeNumberField("averagePerDay", total.getAveragePerDay());
+        json.writeEndObject();
+    }
+
+    private static void writeDateTime(JsonGenerator json, LocalDateTime dateTime) throws IOException {
+        json.writeStringField("dateTime", dateTime.toString());
+    }
+}
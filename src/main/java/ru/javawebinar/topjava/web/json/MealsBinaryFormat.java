@@ -0,0 +1,236 @@
+package ru.javawebinar.topjava.web.json;
+
+import ru.javawebinar.topjava.to.MealTo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary list of MealTo for {@code Accept: application/vnd.topjava.meals}, columns one after another,
+ * integers as LEB128 varints (zigzag where they may be negative):
+ * <pre>
+ * byte     version (1)
+ * byte     flags: bit 0 - timestamps in seconds, otherwise minutes
+ * varint   count
+ * varint   dictionary size, then every description: varint UTF-8 length, bytes
+ * zigzag   count x timestamp (epoch minutes or seconds of the local date-time) minus the previous one, the first minus 0
+ * zigzag   count x id minus the previous one, the first minus 0
+ * zigzag   count x calories
+ * varint   count x description index in the dictionary, in the order of first use
+ * bytes    (count + 7) / 8 excess bits, meal i in bit i % 8 of byte i / 8
+ * </pre>
+ * A list ordered by dateTime gives small deltas, a listing repeats few descriptions.
+ * Nanoseconds are dropped, seconds are kept only when some meal has them.
+ */
+public class MealsBinaryFormat {
+    public static final String MEDIA_TYPE = "application/vnd.topjava.meals";
+
+    static final int VERSION = 1;
+    private static final int SECONDS = 1;
+
+    public static void write(List<MealTo> meals, OutputStream out) throws IOException {
+        boolean seconds = false;
+        for (MealTo meal : meals) {
+            seconds |= meal.getDateTime().getSecond() != 0;
+        }
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> descriptions = new ArrayList<>();
+        for (MealTo meal : meals) {
+            if (dictionary.putIfAbsent(meal.getDescription(), descriptions.size()) == null) {
+                descriptions.add(meal.getDescription());
+            }
+        }
+
+        Writer writer = new Writer(out);
+        writer.writeByte(VERSION);
+        writer.writeByte(seconds ? SECONDS : 0);
+        writer.writeVarint(meals.size());
+        writer.writeVarint(descriptions.size());
+        for (String description : descriptions) {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            writer.writeVarint(bytes.length);
+            writer.writeBytes(bytes);
+        }
+        long previous = 0;
+        for (MealTo meal : meals) {
+            long time = meal.getDateTime().toEpochSecond(ZoneOffset.UTC);
+            time = seconds ? time : Math.floorDiv(time, 60);
+            writer.writeZigzag(time - previous);
+            previous = time;
+        }
+        previous = 0;
+        for (MealTo meal : meals) {
+            writer.writeZigzag(meal.getId() - previous);
+            previous = meal.getId();
+        }
+        for (MealTo meal : meals) {
+            writer.writeZigzag(meal.getCalories());
+        }
+        for (MealTo meal : meals) {
+            writer.writeVarint(dictionary.get(meal.getDescription()));
+        }
+        int bits = 0;
+        for (int i = 0; i < meals.size(); i++) {
+            if (meals.get(i).isExcess()) {
+                bits |= 1 << (i & 7);
+            }
+            if ((i & 7) == 7 || i == meals.size() - 1) {
+                writer.writeByte(bits);
+                bits = 0;
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reference decoder, in should be buffered
+     */
+    public static List<MealTo> read(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        boolean seconds = (reader.readByte() & SECONDS) != 0;
+        int count = Math.toIntExact(reader.readVarint());
+        String[] descriptions = new String[Math.toIntExact(reader.readVarint())];
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = new String(reader.readBytes(Math.toIntExact(reader.readVarint())), StandardCharsets.UTF_8);
+        }
+        LocalDateTime[] dateTimes = new LocalDateTime[count];
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            time += reader.readZigzag();
+            dateTimes[i] = LocalDateTime.ofEpochSecond(seconds ? time : time * 60, 0, ZoneOffset.UTC);
+        }
+        int[] ids = new int[count];
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            id += reader.readZigzag();
+            ids[i] = (int) id;
+        }
+        int[] calories = new int[count];
+        for (int i = 0; i < count; i++) {
+            calories[i] = (int) reader.readZigzag();
+        }
+        int[] descriptionIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            descriptionIndexes[i] = Math.toIntExact(reader.readVarint());
+        }
+        List<MealTo> meals = new ArrayList<>(count);
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i & 7) == 0) {
+                bits = reader.readByte();
+            }
+            meals.add(new MealTo(ids[i], dateTimes[i], descriptions[descriptionIndexes[i]], calories[i], (bits & 1 << (i & 7)) != 0));
+        }
+        return meals;
+    }
+
+    // buffered: a varint is a few byte stores, not a few stream calls
+    private static class Writer {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeByte(int value) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeZigzag(long value) throws IOException {
+            writeVarint(value << 1 ^ value >> 63);
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.length - position) {
+                flushBuffer();
+                if (bytes.length > buffer.length) {
+                    out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static class Reader {
+        private final InputStream in;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        int readByte() throws IOException {
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException();
+            }
+            return value;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readZigzag() throws IOException {
+            long value = readVarint();
+            return value >>> 1 ^ -(value & 1);
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            for (int read = 0; read < length; ) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            return bytes;
+        }
+    }
+}
@@ -6,14 +6,23 @@ import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Controller;
 import ru.javawebinar.topjava.model.Meal;
 import ru.javawebinar.topjava.service.MealService;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.to.MealChanges;
 import ru.javawebinar.topjava.to.MealTo;
 import ru.javawebinar.topjava.util.MealsUtil;
+import ru.javawebinar.topjava.util.SingleFlight;
 import ru.javawebinar.topjava.web.SecurityUtil;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static ru.javawebinar.topjava.util.AsyncExecutor.await;
 import static ru.javawebinar.topjava.util.ValidationUtil.assureIdConsistent;
 import static ru.javawebinar.topjava.util.ValidationUtil.checkNew;
 
@@ -23,40 +32,123 @@ public class MealRestController {
 
     private final MealService service;
 
+    // identical concurrent reads, key: [userId, caloriesPerDay, method, parameters...]; the norm of the session
+    // decides excess, so a read after a norm change never joins one computed with the former norm
+    // One instance per webapp (servlets share the Spring context, see SpringContextHolder): writes through this
+    // controller invalidate the reads in flight of all of them. Writes bypassing it (another JVM, MealArchiver)
+    // are not seen, a read already running then returns what it read, as an uncoalesced read would.
+    private final SingleFlight<List<Object>, List<MealTo>> reads = new SingleFlight<>();
+
     public MealRestController(MealService service) {
         this.service = service;
     }
 
+    public long getReadCalls() {
+        return reads.getCalls();
+    }
+
+    public long getCoalescedReadCalls() {
+        return reads.getCoalesced();
+    }
+
     public Meal get(int id) {
         int userId = SecurityUtil.authUserId();
-        log.info("get meal {} for user {}", id, userId);
+        // guarded on the hot single-meal paths: no boxed ids when INFO is off
+        if (log.isInfoEnabled()) {
+            log.info("get meal {} for user {}", id, userId);
+        }
         return service.get(id, userId);
     }
 
     public void delete(int id) {
         int userId = SecurityUtil.authUserId();
-        log.info("delete meal {} for user {}", id, userId);
+        if (log.isInfoEnabled()) {
+            log.info("delete meal {} for user {}", id, userId);
+        }
         service.delete(id, userId);
+        invalidateReads(userId);
+    }
+
+    public int delete(Collection<Integer> ids) {
+        int userId = SecurityUtil.authUserId();
+        log.info("delete meals {} for user {}", ids, userId);
+        int deleted = service.delete(ids, userId);
+        invalidateReads(userId);
+        return deleted;
+    }
+
+    public int deleteBetween(@Nullable LocalDate startDate, @Nullable LocalDate endDate) {
+        int userId = SecurityUtil.authUserId();
+        log.info("delete meals between dates({} - {}) for user {}", startDate, endDate, userId);
+        int deleted = service.deleteBetweenInclusive(startDate, endDate, userId);
+        invalidateReads(userId);
+        return deleted;
+    }
+
+    /**
+     * Meals with the given ids, excess is calculated by the whole days of the found meals
+     */
+    public List<MealTo> get(Collection<Integer> ids) {
+        int userId = SecurityUtil.authUserId();
+        log.info("get meals {} for user {}", ids, userId);
+        return getTosByDays(service.get(ids, userId), userId);
     }
 
     public List<MealTo> getAll() {
         int userId = SecurityUtil.authUserId();
         log.info("getAll for user {}", userId);
-        return MealsUtil.getTos(service.getAll(userId), SecurityUtil.authUserCaloriesPerDay());
+        int caloriesPerDay = SecurityUtil.authUserCaloriesPerDay();
+        return reads.execute(Arrays.asList(userId, caloriesPerDay, "getAll"), () -> MealsUtil.getTos(service.getAll(userId), caloriesPerDay));
+    }
+
+    /**
+     * Delta sync: meals changed and ids of meals deleted after the client version
+     */
+    public MealChanges getChangedSince(long version) {
+        int userId = SecurityUtil.authUserId();
+        log.info("getChangedSince {} for user {}", version, userId);
+        return service.getChangedSince(version, userId);
+    }
+
+    /**
+     * Calories of the days from startDate to endDate inclusive, without reading the meals
+     */
+    public CaloriesTotal getCaloriesTotal(LocalDate startDate, LocalDate endDate) {
+        int userId = SecurityUtil.authUserId();
+        log.info("getCaloriesTotal dates({} - {}) for user {}", startDate, endDate, userId);
+        return service.getCaloriesTotal(startDate, endDate, userId);
+    }
+
+    /**
+     * Rolling total: calories of the given number of days ending at endDate (today by default) inclusive
+     */
+    public CaloriesTotal getCaloriesTotal(@Nullable LocalDate endDate, int days) {
+        int userId = SecurityUtil.authUserId();
+        log.info("getCaloriesTotal {} days till {} for user {}", days, endDate, userId);
+        return service.getCaloriesTotal(endDate == null ? LocalDate.now() : endDate, days, userId);
     }
 
     public Meal create(Meal meal) {
         int userId = SecurityUtil.authUserId();
         checkNew(meal);
         log.info("create {} for user {}", meal, userId);
-        return service.create(meal, userId);
+        Meal created = service.isWriteBehind() ? await(service.createAsync(meal, userId)) : service.create(meal, userId);
+        invalidateReads(userId);
+        return created;
     }
 
     public void update(Meal meal, int id) {
         int userId = SecurityUtil.authUserId();
         assureIdConsistent(meal, id);
-        log.info("update {} for user {}", meal, userId);
-        service.update(meal, userId);
+        if (log.isInfoEnabled()) {
+            log.info("update {} for user {}", meal, userId);
+        }
+        if (service.isWriteBehind()) {
+            await(service.updateAsync(meal, userId));
+        } else {
+            service.update(meal, userId);
+        }
+        invalidateReads(userId);
     }
 
     /**
@@ -70,7 +162,34 @@ public class MealRestController {
         int userId = SecurityUtil.authUserId();
         log.info("getBetween dates({} - {}) time({} - {}) for user {}", startDate, endDate, startTime, endTime, userId);
 
-        List<Meal> mealsDateFiltered = service.getBetweenInclusive(startDate, endDate, userId);
-        return MealsUtil.getFilteredTos(mealsDateFiltered, SecurityUtil.authUserCaloriesPerDay(), startTime, endTime);
+        int caloriesPerDay = SecurityUtil.authUserCaloriesPerDay();
+        return reads.execute(Arrays.asList(userId, caloriesPerDay, "getBetween", startDate, startTime, endDate, endTime),
+                () -> MealsUtil.getFilteredTos(service.getBetweenInclusive(startDate, endDate, userId), caloriesPerDay, startTime, endTime));
+    }
+
+    /**
+     * Page of meals with description containing text, excess is calculated by the whole days of the found meals
+     */
+    public List<MealTo> search(String text, @Nullable LocalDate startDate, @Nullable LocalDate endDate, int offset, int limit) {
+        int userId = SecurityUtil.authUserId();
+        log.info("search '{}' dates({} - {}) page({}, {}) for user {}", text, startDate, endDate, offset, limit, userId);
+
+        return getTosByDays(service.search(text, startDate, endDate, offset, limit, userId), userId);
+    }
+
+    // day sums of the found dates only, not the meals between the oldest and the newest one
+    private List<MealTo> getTosByDays(List<Meal> found, int userId) {
+        if (found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<LocalDate> foundDays = found.stream().map(Meal::getDate).collect(Collectors.toSet());
+        return MealsUtil.getTos(found, service.getCaloriesByDay(foundDays, userId), SecurityUtil.authUserCaloriesPerDay());
+    }
+
+    // the capturing filter (and its boxed userId) is created only when some read is in flight
+    private void invalidateReads(int userId) {
+        if (reads.hasInFlight()) {
+            reads.invalidate(key -> key.get(0).equals(userId));
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,23 @@
 package ru.javawebinar.topjava.web.user;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Controller;
 import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.service.AnalyticsService;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Controller
 public class AdminRestController extends AbstractUserController {
+    static final int DEFAULT_REPORT_MONTHS = 3;
+
+    @Autowired
+    private AnalyticsService analyticsService;
 
     @Override
     public List<User> getAll() {
@@ -37,4 +48,22 @@ public class AdminRestController extends AbstractUserController {
     public User getByMail(String email) {
         return super.getByMail(email);
     }
-}
\ No newline at end of file
+
+    /**
+     * Share of users exceeded their norm per day, the last quarter by default
+     */
+    public List<DayExcess> getExcessByDay(@Nullable LocalDate startDate, @Nullable LocalDate endDate) {
+        log.info("getExcessByDay dates({} - {})", startDate, endDate);
+        return analyticsService.getExcessByDay(reportStart(startDate, endDate), endDate);
+    }
+
+    public void forEachUserExcess(@Nullable LocalDate startDate, @Nullable LocalDate endDate, Consumer<UserExcess> consumer) {
+        log.info("forEachUserExcess dates({} - {})", startDate, endDate);
+        analyticsService.forEachUserExcess(reportStart(startDate, endDate), endDate, consumer);
+    }
+
+    private static LocalDate reportStart(@Nullable LocalDate startDate, @Nullable LocalDate endDate) {
+        return startDate != null ? startDate :
+                (endDate != null ? endDate : LocalDate.now()).minusMonths(DEFAULT_REPORT_MONTHS);
+    }
+}
@@ -1,7 +1,19 @@
+DROP TABLE IF EXISTS meal_shard_moves;
+DROP TABLE IF EXISTS meal_user_sync_horizon;
+DROP TABLE IF EXISTS meal_sync_horizon;
+DROP TABLE IF EXISTS meal_tombstones;
+DROP TABLE IF EXISTS meals_archive_watermark;
+DROP TABLE IF EXISTS meals_archive;
+DROP TABLE IF EXISTS meals;
+DROP FUNCTION IF EXISTS meals_check_user_datetime();
 DROP TABLE IF EXISTS user_roles;
 DROP TABLE IF EXISTS users;
 DROP SEQUENCE IF EXISTS global_seq;
 
+-- description search: trigram index combined with user_id
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
 CREATE SEQUENCE global_seq START WITH 100000;
 
 CREATE TABLE users
@@ -22,4 +34,105 @@ CREATE TABLE user_roles
     role    VARCHAR,
     CONSTRAINT user_roles_idx UNIQUE (user_id, role),
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+CREATE TABLE meals
+(
+    id          INTEGER PRIMARY KEY DEFAULT nextval('global_seq'),
+    user_id     INTEGER   NOT NULL,
+    date_time   TIMESTAMP NOT NULL,
+    description TEXT      NOT NULL,
+    calories    INT       NOT NULL,
+    version     BIGINT    NOT NULL DEFAULT txid_current(),
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
+CREATE UNIQUE INDEX meals_unique_user_datetime_idx ON meals (user_id, date_time);
+-- delta sync: version is the id of the last changing transaction
+CREATE INDEX meals_user_version_idx ON meals (user_id, version);
+CREATE INDEX meals_description_trgm_idx ON meals USING gin (user_id, description gin_trgm_ops);
+-- MealArchiver: batch selection of old meals
+CREATE INDEX meals_date_time_idx ON meals (date_time);
+
+-- cold meals, moved by MealArchiver, same columns as meals
+CREATE TABLE meals_archive
+(
+    id          INTEGER PRIMARY KEY,
+    user_id     INTEGER   NOT NULL,
+    date_time   TIMESTAMP NOT NULL,
+    description TEXT      NOT NULL,
+    calories    INT       NOT NULL,
+    version     BIGINT    NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
+CREATE UNIQUE INDEX meals_archive_unique_user_datetime_idx ON meals_archive (user_id, date_time);
+CREATE INDEX meals_archive_user_version_idx ON meals_archive (user_id, version);
+CREATE INDEX meals_archive_description_trgm_idx ON meals_archive USING gin (user_id, description gin_trgm_ops);
+
+-- every archived meal has date_time < archived_before
+CREATE TABLE meals_archive_watermark
+(
+    id              BOOL PRIMARY KEY DEFAULT TRUE CHECK (id),
+    archived_before TIMESTAMP NOT NULL
+);
+INSERT INTO meals_archive_watermark (archived_before)
+VALUES ('-infinity');
+
+-- (user_id, date_time) is unique across meals and meals_archive, the unique indexes cover each table only.
+-- Only a row below the archive watermark may clash with the other table: it is checked after it is written
+-- (after waiting on the unique index for a concurrent move of the same minute), writers of the same user and minute
+-- are serialized by a transaction advisory lock, so the later one sees the row of the earlier one.
+-- The body is a quoted string: ResourceDatabasePopulator splits scripts on semicolons outside quotes only.
+CREATE FUNCTION meals_check_user_datetime() RETURNS TRIGGER LANGUAGE plpgsql AS '
+BEGIN
+    IF NEW.date_time < (SELECT archived_before FROM meals_archive_watermark) THEN
+        PERFORM pg_advisory_xact_lock(NEW.user_id, hashtext(NEW.date_time::text));
+        IF EXISTS(SELECT 1 FROM meals WHERE user_id = NEW.user_id AND date_time = NEW.date_time AND id <> NEW.id) OR
+           EXISTS(SELECT 1 FROM meals_archive WHERE user_id = NEW.user_id AND date_time = NEW.date_time AND id <> NEW.id) THEN
+            RAISE unique_violation USING MESSAGE =
+                ''meal of user '' || NEW.user_id || '' at '' || NEW.date_time || '' already exists'';
+        END IF;
+    END IF;
+    RETURN NULL;
+END';
+CREATE TRIGGER meals_check_user_datetime
+    AFTER INSERT OR UPDATE OF user_id, date_time ON meals
+    FOR EACH ROW EXECUTE PROCEDURE meals_check_user_datetime();
+CREATE TRIGGER meals_archive_check_user_datetime
+    AFTER INSERT OR UPDATE OF user_id, date_time ON meals_archive
+    FOR EACH ROW EXECUTE PROCEDURE meals_check_user_datetime();
+
+-- deleted meals for delta sync, compacted by MealArchiver after the retention window
+CREATE TABLE meal_tombstones
+(
+    id      INTEGER PRIMARY KEY,
+    user_id INTEGER   NOT NULL,
+    version BIGINT    NOT NULL DEFAULT txid_current(),
+    deleted TIMESTAMP NOT NULL DEFAULT now(),
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
+CREATE INDEX meal_tombstones_user_version_idx ON meal_tombstones (user_id, version);
+CREATE INDEX meal_tombstones_deleted_idx ON meal_tombstones (deleted);
+
+-- tombstones up to compacted_version are gone: older clients must reload everything
+CREATE TABLE meal_sync_horizon
+(
+    id                BOOL PRIMARY KEY DEFAULT TRUE CHECK (id),
+    compacted_version BIGINT NOT NULL
+);
+INSERT INTO meal_sync_horizon (compacted_version)
+VALUES (0);
+
+-- ShardMigrator: the tombstones of a user before it moved here are gone, older clients of the user must reload everything
+CREATE TABLE meal_user_sync_horizon
+(
+    user_id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
+
+-- ShardedMealRepository: users moved by ShardMigrator, routed to their shard here rather than by the configured ring
+CREATE TABLE meal_shard_moves
+(
+    user_id INTEGER PRIMARY KEY,
+    shard   VARCHAR NOT NULL
+);
@@ -1,7 +1,7 @@
-<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ page contentType="text/html;charset=UTF-8" language="java" buffer="32kb" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
-<%@ taglib prefix="fn" uri="http://topjava.javawebinar.ru/functions" %>
+<%@ taglib prefix="m" uri="http://topjava.javawebinar.ru/meals" %>
 <html>
 <head>
     <title>Meals</title>
@@ -32,6 +32,34 @@
         </dl>
         <button type="submit">Filter</button>
     </form>
+    <form method="get" action="meals">
+        <input type="hidden" name="action" value="search">
+        <dl>
+            <dt>Description contains:</dt>
+            <dd><input type="search" name="text" value="<c:out value='${param.text}'/>" required></dd>
+        </dl>
+        <dl>
+            <dt>From Date (inclusive):</dt>
+            <dd><input type="date" name="startDate" value="${param.startDate}"></dd>
+        </dl>
+        <dl>
+            <dt>To Date (inclusive):</dt>
+            <dd><input type="date" name="endDate" value="${param.endDate}"></dd>
+        </dl>
+        <button type="submit">Search</button>
+    </form>
+    <form method="post" action="meals" onsubmit="return confirm('Delete all meals in this date range?')">
+        <input type="hidden" name="action" value="deleteBetween">
+        <dl>
+            <dt>From Date (inclusive):</dt>
+            <dd><input type="date" name="startDate" required></dd>
+        </dl>
+        <dl>
+            <dt>To Date (inclusive):</dt>
+            <dd><input type="date" name="endDate" required></dd>
+        </dl>
+        <button type="submit">Delete</button>
+    </form>
     <hr/>
     <a href="meals?action=create">Add Meal</a>
     <br><br>
@@ -45,22 +73,18 @@
             <th></th>
         </tr>
         </thead>
-        <c:forEach items="${meals}" var="meal">
-            <jsp:useBean id="meal" type="ru.javawebinar.topjava.to.MealTo"/>
-            <tr data-mealExcess="${meal.excess}">
-                <td>
-                        <%--${meal.dateTime.toLocalDate()} ${meal.dateTime.toLocalTime()}--%>
-                        <%--<%=TimeUtil.toString(meal.getDateTime())%>--%>
-                        <%--${fn:replace(meal.dateTime, 'T', ' ')}--%>
-                        ${fn:formatDateTime(meal.dateTime)}
-                </td>
-                <td>${meal.description}</td>
-                <td>${meal.calories}</td>
-                <td><a href="meals?action=update&id=${meal.id}">Update</a></td>
-                <td><a href="meals?action=delete&id=${meal.id}">Delete</a></td>
-            </tr>
-        </c:forEach>
+        <m:mealRows meals="${meals}"/>
     </table>
+    <c:if test="${not empty page}">
+        <c:url var="searchUrl" value="meals">
+            <c:param name="action" value="search"/>
+            <c:param name="text" value="${param.text}"/>
+            <c:param name="startDate" value="${param.startDate}"/>
+            <c:param name="endDate" value="${param.endDate}"/>
+        </c:url>
+        <c:if test="${page > 0}"><a href="${searchUrl}&page=${page - 1}">Previous</a></c:if>
+        <c:if test="${meals.size() == pageSize}"><a href="${searchUrl}&page=${page + 1}">Next</a></c:if>
+    </c:if>
 </section>
 </body>
 </html>
\ No newline at end of file
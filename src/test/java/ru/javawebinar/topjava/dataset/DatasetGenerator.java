@@ -0,0 +1,155 @@
+package ru.javawebinar.topjava.dataset;
+
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic dataset: users with meal histories adding up to exactly {@code totalMeals}.
+ * <p>
+ * History lengths are log-normal (median {@link #MEDIAN_HISTORY_DAYS} days, from a week up to
+ * {@link #MAX_HISTORY_DAYS}), so a few heavy users have tens of times more meals than the median one;
+ * users are added until the total is reached (the last one is cut). Every day has 3 to 6 meals: breakfast,
+ * lunch and dinner plus up to 3 snacks, at jittered times of non-overlapping slots, so (user, dateTime) is unique.
+ * Histories end at {@link #LAST_DAY}.
+ * <p>
+ * The same seed and total give the same data: every user's meals come from a random seeded by the seed and
+ * the user index, so they are generated again on each {@link #forEachMeal} call without being kept in memory.
+ */
+public class DatasetGenerator {
+    public static final LocalDate LAST_DAY = LocalDate.of(2020, Month.DECEMBER, 31);
+    static final int MEDIAN_HISTORY_DAYS = 365;
+    static final int MIN_HISTORY_DAYS = 7;
+    static final int MAX_HISTORY_DAYS = 20 * 365;
+    static final double HISTORY_SIGMA = 1.0;
+    static final double MEALS_PER_DAY = 4.5;
+
+    private static final Slot BREAKFAST = new Slot(6 * 60 + 30, 180, 300, 700, "Завтрак", "Каша", "Омлет", "Сырники", "Бутерброды");
+    private static final Slot SECOND_BREAKFAST = new Slot(10 * 60, 90, 100, 350, "Второй завтрак", "Йогурт", "Фрукты");
+    private static final Slot LUNCH = new Slot(12 * 60, 150, 500, 1100, "Обед", "Суп", "Борщ", "Плов", "Бизнес-ланч");
+    private static final Slot SNACK = new Slot(15 * 60, 120, 100, 400, "Полдник", "Печенье", "Орехи", "Кофе с булочкой");
+    private static final Slot DINNER = new Slot(18 * 60, 150, 400, 1000, "Ужин", "Паста", "Рыба с овощами", "Пицца", "Котлеты");
+    private static final Slot LATE = new Slot(21 * 60, 150, 100, 500, "Поздний перекус", "Кефир", "Бутерброд", "Еда на граничное значение");
+
+    private final long seed;
+    private final long totalMeals;
+    private final List<SyntheticUser> users;
+
+    public DatasetGenerator(long seed, long totalMeals) {
+        this.seed = seed;
+        this.totalMeals = totalMeals;
+        List<SyntheticUser> users = new ArrayList<>();
+        Random random = new Random(seed);
+        long remaining = totalMeals;
+        for (int index = 0; remaining > 0; index++) {
+            double days = MEDIAN_HISTORY_DAYS * Math.exp(HISTORY_SIGMA * random.nextGaussian());
+            days = Math.max(MIN_HISTORY_DAYS, Math.min(MAX_HISTORY_DAYS, days));
+            int meals = (int) Math.min(remaining, Math.round(days * MEALS_PER_DAY));
+            int caloriesPerDay = 1500 + 100 * random.nextInt(16);
+            users.add(new SyntheticUser(index, caloriesPerDay, meals,
+                    LAST_DAY.minusDays((long) Math.ceil(meals / MEALS_PER_DAY) - 1)));
+            remaining -= meals;
+        }
+        this.users = Collections.unmodifiableList(users);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTotalMeals() {
+        return totalMeals;
+    }
+
+    // ORDERED by index
+    public List<SyntheticUser> getUsers() {
+        return users;
+    }
+
+    /**
+     * Generates the meals of the user ORDERED by dateTime, the same on every call
+     */
+    public void forEachMeal(SyntheticUser user, MealSink sink) {
+        Random random = new Random(seed * 1_000_003 + user.index);
+        // some users eat more than others, so some of their days are excess
+        double appetite = 0.7 + 0.6 * random.nextDouble();
+        Slot[] daySlots = new Slot[6];
+        int left = user.meals;
+        for (LocalDate day = user.firstDay; left > 0; day = day.plusDays(1)) {
+            int count = 0;
+            daySlots[count++] = BREAKFAST;
+            int snacks = random.nextInt(4);
+            int snackMask = snacks == 0 ? 0 : snacks == 3 ? 0b111 : snacks == 1 ? 1 << random.nextInt(3) : 0b111 & ~(1 << random.nextInt(3));
+            if ((snackMask & 1) != 0) {
+                daySlots[count++] = SECOND_BREAKFAST;
+            }
+            daySlots[count++] = LUNCH;
+            if ((snackMask & 2) != 0) {
+                daySlots[count++] = SNACK;
+            }
+            daySlots[count++] = DINNER;
+            if ((snackMask & 4) != 0) {
+                daySlots[count++] = LATE;
+            }
+            for (int i = 0; i < count && left > 0; i++, left--) {
+                Slot slot = daySlots[i];
+                int minute = slot.startMinute + random.nextInt(slot.spanMinutes);
+                String description = slot.descriptions[random.nextInt(slot.descriptions.length)];
+                int calories = (int) ((slot.minCalories + random.nextInt(slot.maxCalories - slot.minCalories + 1)) * appetite);
+                sink.accept(day.atTime(minute / 60, minute % 60), description, calories);
+            }
+        }
+    }
+
+    public interface MealSink {
+        void accept(LocalDateTime dateTime, String description, int calories);
+    }
+
+    public static class SyntheticUser {
+        public final int index;
+        public final String name;
+        public final String email;
+        public final int caloriesPerDay;
+        public final int meals;
+        public final LocalDate firstDay;
+
+        SyntheticUser(int index, int caloriesPerDay, int meals, LocalDate firstDay) {
+            this.index = index;
+            this.name = "Synthetic" + index;
+            this.email = "synthetic" + index + "@topjava.ru";
+            this.caloriesPerDay = caloriesPerDay;
+            this.meals = meals;
+            this.firstDay = firstDay;
+        }
+
+        public User toUser() {
+            return new User(null, name, email, "password", caloriesPerDay, true,
+                    Date.from(firstDay.atStartOfDay().toInstant(ZoneOffset.UTC)), Collections.singleton(Role.USER));
+        }
+    }
+
+    private static class Slot {
+        final int startMinute;
+        final int spanMinutes;
+        final int minCalories;
+        final int maxCalories;
+        final String[] descriptions;
+
+        Slot(int startMinute, int spanMinutes, int minCalories, int maxCalories, String... descriptions) {
+            this.startMinute = startMinute;
+            this.spanMinutes = spanMinutes;
+            this.minCalories = minCalories;
+            this.maxCalories = maxCalories;
+            this.descriptions = descriptions;
+        }
+    }
+}
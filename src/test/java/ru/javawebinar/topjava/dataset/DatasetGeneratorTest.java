@@ -0,0 +1,69 @@
+package ru.javawebinar.topjava.dataset;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.dataset.DatasetGenerator.SyntheticUser;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DatasetGeneratorTest {
+
+    @Test
+    public void totalMeals() {
+        DatasetGenerator generator = new DatasetGenerator(42, 100_000);
+        long total = 0;
+        for (SyntheticUser user : generator.getUsers()) {
+            int[] count = {0};
+            generator.forEachMeal(user, (dateTime, description, calories) -> count[0]++);
+            assertThat(count[0]).isEqualTo(user.meals);
+            total += count[0];
+        }
+        assertThat(total).isEqualTo(100_000);
+    }
+
+    @Test
+    public void sameSeedSameData() {
+        assertThat(meals(new DatasetGenerator(7, 20_000))).isEqualTo(meals(new DatasetGenerator(7, 20_000)));
+        assertThat(meals(new DatasetGenerator(7, 20_000))).isNotEqualTo(meals(new DatasetGenerator(8, 20_000)));
+    }
+
+    @Test
+    public void mealsPerDay() {
+        DatasetGenerator generator = new DatasetGenerator(42, 50_000);
+        for (SyntheticUser user : generator.getUsers()) {
+            Map<LocalDate, Integer> perDay = new TreeMap<>();
+            LocalDateTime[] previous = {null};
+            generator.forEachMeal(user, (dateTime, description, calories) -> {
+                // ORDERED and unique per user
+                assertThat(previous[0] == null || dateTime.isAfter(previous[0])).isTrue();
+                previous[0] = dateTime;
+                perDay.merge(dateTime.toLocalDate(), 1, Integer::sum);
+            });
+            // the last day of a history may be cut by the user's meal count
+            List<Integer> counts = new ArrayList<>(perDay.values());
+            counts.subList(0, counts.size() - 1).forEach(count -> assertThat(count).isBetween(3, 6));
+        }
+    }
+
+    @Test
+    public void skewedSizes() {
+        List<SyntheticUser> users = new DatasetGenerator(42, 1_000_000).getUsers();
+        int[] sizes = users.stream().limit(users.size() - 1).mapToInt(user -> user.meals).sorted().toArray();
+        assertThat(sizes[sizes.length - 1]).isGreaterThan(10 * sizes[sizes.length / 2]);
+    }
+
+    private static List<String> meals(DatasetGenerator generator) {
+        List<String> meals = new ArrayList<>();
+        for (SyntheticUser user : generator.getUsers()) {
+            generator.forEachMeal(user, (dateTime, description, calories) ->
+                    meals.add(user.email + ' ' + dateTime + ' ' + description + ' ' + calories));
+        }
+        return meals;
+    }
+}
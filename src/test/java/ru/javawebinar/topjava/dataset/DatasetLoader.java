@@ -0,0 +1,115 @@
+package ru.javawebinar.topjava.dataset;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import ru.javawebinar.topjava.dataset.DatasetGenerator.SyntheticUser;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.repository.UserRepository;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Bulk loads of a {@link DatasetGenerator} dataset, both return the ids of the users ORDERED by index.
+ */
+public class DatasetLoader {
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private DatasetLoader() {
+    }
+
+    /**
+     * Saves through the repositories, e.g. the in-memory ones (no database round trips to save)
+     */
+    public static int[] load(DatasetGenerator generator, UserRepository userRepository, MealRepository mealRepository) {
+        List<SyntheticUser> users = generator.getUsers();
+        int[] userIds = new int[users.size()];
+        for (SyntheticUser user : users) {
+            int userId = userRepository.save(user.toUser()).getId();
+            userIds[user.index] = userId;
+            generator.forEachMeal(user, (dateTime, description, calories) ->
+                    mealRepository.save(new Meal(dateTime, description, calories), userId));
+        }
+        return userIds;
+    }
+
+    /**
+     * Streams the dataset into users, user_roles and meals with COPY in one transaction, then analyzes the tables.
+     * Ids are reserved from global_seq in one step, so no other writes should run meanwhile.
+     * For 10^7 meals and more most of the time goes to the meals indexes of initDB.sql (the trigram one first of all).
+     */
+    public static int[] copy(DatasetGenerator generator, DataSource dataSource) throws SQLException, IOException {
+        List<SyntheticUser> users = generator.getUsers();
+        int[] userIds = new int[users.size()];
+        try (Connection connection = dataSource.getConnection()) {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            connection.setAutoCommit(false);
+            try {
+                int id = reserveIds(connection, users.size() + generator.getTotalMeals());
+                try (Writer out = copyIn(pgConnection, "COPY users (id, name, email, password, registered, enabled, calories_per_day) FROM STDIN")) {
+                    for (SyntheticUser user : users) {
+                        userIds[user.index] = id;
+                        out.append(Integer.toString(id++)).append('\t').append(user.name).append('\t').append(user.email)
+                                .append("\tpassword\t").append(user.firstDay.toString()).append("\tt\t")
+                                .append(Integer.toString(user.caloriesPerDay)).append('\n');
+                    }
+                }
+                try (Writer out = copyIn(pgConnection, "COPY user_roles (user_id, role) FROM STDIN")) {
+                    for (int userId : userIds) {
+                        out.append(Integer.toString(userId)).append("\tUSER\n");
+                    }
+                }
+                int[] mealId = {id};
+                try (Writer out = copyIn(pgConnection, "COPY meals (id, user_id, date_time, description, calories) FROM STDIN")) {
+                    for (SyntheticUser user : users) {
+                        String userId = Integer.toString(userIds[user.index]);
+                        generator.forEachMeal(user, (dateTime, description, calories) -> {
+                            // generated descriptions have no tabs, newlines or backslashes to escape
+                            try {
+                                out.append(Integer.toString(mealId[0]++)).append('\t').append(userId).append('\t')
+                                        .append(dateTime.toLocalDate().toString()).append(' ').append(dateTime.toLocalTime().toString())
+                                        .append('\t').append(description).append('\t').append(Integer.toString(calories)).append('\n');
+                            } catch (IOException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        });
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE users, user_roles, meals");
+            }
+        }
+        return userIds;
+    }
+
+    // first of count ids taken from global_seq
+    private static int reserveIds(Connection connection, long count) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet last = statement.executeQuery("SELECT setval('global_seq', nextval('global_seq') + " + (count - 1) + ")")) {
+            last.next();
+            return Math.toIntExact(last.getLong(1) - count + 1);
+        }
+    }
+
+    private static Writer copyIn(PGConnection connection, String sql) throws SQLException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(connection, sql, COPY_BUFFER_SIZE), StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+    }
+}
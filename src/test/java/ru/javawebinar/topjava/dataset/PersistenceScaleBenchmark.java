@@ -0,0 +1,157 @@
+package ru.javawebinar.topjava.dataset;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.javawebinar.topjava.dataset.DatasetGenerator.SyntheticUser;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryColumnarMealRepository;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryMealRepository;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryUserRepository;
+import ru.javawebinar.topjava.service.UserService;
+import ru.javawebinar.topjava.util.LogHistogram;
+import ru.javawebinar.topjava.util.MealsUtil;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * getAll, getBetweenHalfOpen, UserService.getByEmail and MealsUtil latency over {@link DatasetGenerator} datasets
+ * of growing size, loaded by {@link DatasetLoader}. Percentiles are {@link LogHistogram} bucket bounds (within 2x).
+ * <p>
+ * Meal reads are measured for the heaviest and the median user: their cost follows the user's own history,
+ * while getByEmail (emails of random users) shows what grows with the number of users.
+ * getBetweenHalfOpen reads the last week of the history, MealsUtil works on the heavy user's getAll result.
+ * <p>
+ * Usage: {@code PersistenceScaleBenchmark [key=value...]}, defaults:
+ * {@code backend=memory scales=1000,10000,100000,1000000 seed=42 seconds=2}.
+ * Backends: {@code memory} (InMemoryMealRepository), {@code columnar} (InMemoryColumnarMealRepository),
+ * {@code jdbc} (database of postgres.properties, reset by populateDB.sql before every scale).
+ * 10^7 and 10^8 meals need a columnar/jdbc backend and a large heap ({@code -Xmx}) or a database:
+ * a scale that does not fit the heap is reported as skipped.
+ */
+public class PersistenceScaleBenchmark {
+    // keeps results alive, so reads are not optimized out
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("backend", "memory");
+        options.put("scales", "1000,10000,100000,1000000");
+        options.put("seed", "42");
+        options.put("seconds", "2");
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (!options.containsKey(keyValue[0]) || keyValue.length < 2) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", options: " + options.keySet());
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+        String backend = options.get("backend");
+        long seed = Long.parseLong(options.get("seed"));
+        long measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("seconds")));
+
+        System.out.printf("%-10s %12s %8s  %-28s %10s %10s %10s %10s %10s%n",
+                "backend", "meals", "users", "operation", "ops", "mean us", "p50 us", "p99 us", "max us");
+        for (String scale : options.get("scales").split(",")) {
+            DatasetGenerator generator = new DatasetGenerator(seed, Long.parseLong(scale.trim().replace("_", "")));
+            try {
+                run(backend, generator, measureNanos);
+            } catch (OutOfMemoryError e) {
+                System.out.printf("%-10s %,12d %8d  skipped: does not fit the heap of %,d MB%n", backend,
+                        generator.getTotalMeals(), generator.getUsers().size(), Runtime.getRuntime().maxMemory() >> 20);
+            }
+        }
+    }
+
+    private static void run(String backend, DatasetGenerator generator, long measureNanos) throws Exception {
+        long start = System.nanoTime();
+        switch (backend) {
+            case "memory":
+            case "columnar":
+                InMemoryUserRepository userRepository = new InMemoryUserRepository();
+                MealRepository mealRepository = backend.equals("memory") ? new InMemoryMealRepository() : new InMemoryColumnarMealRepository();
+                int[] userIds = DatasetLoader.load(generator, userRepository, mealRepository);
+                loaded(backend, generator, start);
+                measure(backend, generator, userIds, mealRepository, new UserService(userRepository, event -> {
+                }), measureNanos);
+                break;
+            case "jdbc":
+                try (ConfigurableApplicationContext context =
+                             new ClassPathXmlApplicationContext("spring/spring-app.xml", "spring/spring-db.xml")) {
+                    DataSource dataSource = context.getBean(DataSource.class);
+                    new ResourceDatabasePopulator(false, false, "UTF-8", new ClassPathResource("db/populateDB.sql")).execute(dataSource);
+                    start = System.nanoTime();
+                    userIds = DatasetLoader.copy(generator, dataSource);
+                    loaded(backend, generator, start);
+                    measure(backend, generator, userIds, context.getBean(MealRepository.class), context.getBean(UserService.class), measureNanos);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend + ", backends: memory, columnar, jdbc");
+        }
+    }
+
+    private static void loaded(String backend, DatasetGenerator generator, long start) {
+        System.out.printf("%-10s %,12d %8d  %-28s %,d ms%n", backend, generator.getTotalMeals(), generator.getUsers().size(),
+                "load", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static void measure(String backend, DatasetGenerator generator, int[] userIds, MealRepository meals,
+                                UserService userService, long measureNanos) {
+        List<SyntheticUser> bySize = new ArrayList<>(generator.getUsers());
+        bySize.sort(Comparator.comparingInt((SyntheticUser user) -> user.meals).reversed());
+        SyntheticUser heavy = bySize.get(0);
+        SyntheticUser median = bySize.get(bySize.size() / 2);
+        int heavyId = userIds[heavy.index];
+        int medianId = userIds[median.index];
+        List<Meal> heavyMeals = meals.getAll(heavyId);
+        LocalDateTime weekEnd = heavyMeals.get(0).getDateTime().plusMinutes(1);
+        LocalDateTime weekStart = weekEnd.minusDays(7);
+        Random random = new Random(generator.getSeed());
+
+        Map<String, IntSupplier> operations = new LinkedHashMap<>();
+        operations.put("getAll heavy (" + heavy.meals + ")", () -> meals.getAll(heavyId).size());
+        operations.put("getAll median (" + median.meals + ")", () -> meals.getAll(medianId).size());
+        operations.put("getBetweenHalfOpen week", () -> meals.getBetweenHalfOpen(weekStart, weekEnd, heavyId).size());
+        operations.put("getByEmail", () -> userService.getByEmail(bySize.get(random.nextInt(bySize.size())).email).getId());
+        operations.put("MealsUtil.getTos heavy", () -> MealsUtil.getTos(heavyMeals, heavy.caloriesPerDay).size());
+        operations.put("MealsUtil.getFilteredTos", () -> MealsUtil.getFilteredTos(heavyMeals, heavy.caloriesPerDay,
+                LocalTime.of(7, 0), LocalTime.of(20, 0)).size());
+
+        for (Map.Entry<String, IntSupplier> operation : operations.entrySet()) {
+            // warm-up for half of the measured time, then measure
+            time(operation.getValue(), measureNanos / 2);
+            LogHistogram histogram = time(operation.getValue(), measureNanos);
+            System.out.printf("%-10s %,12d %8d  %-28s %,10d %,10.1f %,10.1f %,10.1f %,10.1f%n", backend,
+                    generator.getTotalMeals(), generator.getUsers().size(), operation.getKey(), histogram.getCount(),
+                    histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                    histogram.getMax() / 1e3);
+        }
+    }
+
+    private static LogHistogram time(IntSupplier operation, long durationNanos) {
+        LogHistogram histogram = new LogHistogram();
+        long end = System.nanoTime() + durationNanos;
+        long start;
+        long result = 0;
+        do {
+            start = System.nanoTime();
+            result += operation.getAsInt();
+            histogram.record(System.nanoTime() - start);
+        } while (end - start > 0);
+        sink = result;
+        return histogram;
+    }
+}
@@ -0,0 +1,84 @@
+package ru.javawebinar.topjava.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first served request of the launcher built by {@code mvn -P launcher package}, from process start
+ * until {@code GET /topjava/users} answers 200: without and with the AppCDS archive, runs interleaved.
+ * Run with the same java as the archive was dumped with (other JVMs ignore the archive with a warning).
+ * <p>
+ * Usage: {@code LauncherStartupBenchmark [launcherDir=target/launcher] [runs=5]}
+ */
+public class LauncherStartupBenchmark {
+    private static final int PORT = 18081;
+
+    public static void main(String[] args) throws Exception {
+        File launcherDir = new File(args.length > 0 ? args[0] : "target/launcher");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File jar = new File(launcherDir, "topjava-launcher.jar");
+        File archive = new File(launcherDir, "topjava.jsa");
+        if (!jar.exists() || !archive.exists()) {
+            throw new IllegalStateException(jar + " or " + archive + " not found, build with mvn -P launcher package");
+        }
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        List<Long> plain = new ArrayList<>();
+        List<Long> cds = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            plain.add(timeToFirstRequest(launcherDir, java, "-Xshare:auto", "-jar", jar.getPath()));
+            cds.add(timeToFirstRequest(launcherDir, java, "-XX:SharedArchiveFile=" + archive.getPath(), "-jar", jar.getPath()));
+        }
+        print("no AppCDS", plain);
+        print("AppCDS", cds);
+    }
+
+    private static long timeToFirstRequest(File dir, String... command) throws IOException, InterruptedException {
+        List<String> commandLine = new ArrayList<>(Arrays.asList(command));
+        commandLine.add(1, "-Dtopjava.port=" + PORT);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(commandLine).directory(dir).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(dir, "startup-benchmark.log"))).start();
+        try {
+            while (!isUp()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("launcher exited with " + process.exitValue() + ", see startup-benchmark.log");
+                }
+                if (System.nanoTime() - start > TimeUnit.MINUTES.toNanos(2)) {
+                    throw new IllegalStateException("launcher not up in 2 minutes");
+                }
+                Thread.sleep(10);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static boolean isUp() {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/topjava/users").openConnection();
+            connection.setConnectTimeout(100);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void print(String name, List<Long> millis) {
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        System.out.printf("%-10s median %5d ms, min %5d ms, runs %s%n", name, sorted.get(sorted.size() / 2), sorted.get(0), millis);
+    }
+}
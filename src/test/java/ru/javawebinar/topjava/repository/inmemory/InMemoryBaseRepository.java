@@ -24,14 +24,30 @@ public class InMemoryBaseRepository<T extends AbstractBaseEntity> {
         return map.computeIfPresent(entry.getId(), (id, oldT) -> entry);
     }
 
+    // former entry, null if absent
+    public T replace(T entry) {
+        return map.replace(entry.getId(), entry);
+    }
+
     public boolean delete(int id) {
         return map.remove(id) != null;
     }
 
+    // removed entry, null if absent
+    public T remove(int id) {
+        return map.remove(id);
+    }
+
     public T get(int id) {
         return map.get(id);
     }
 
+    // put entry with its own id (journal replay), keeps the id counter ahead of it
+    void restore(T entry) {
+        map.put(entry.getId(), entry);
+        counter.accumulateAndGet(entry.getId(), Math::max);
+    }
+
     Collection<T> getCollection() {
         return map.values();
     }
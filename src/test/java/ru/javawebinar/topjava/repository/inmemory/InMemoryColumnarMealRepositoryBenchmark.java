@@ -0,0 +1,61 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import ru.javawebinar.topjava.model.Meal;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Retained heap of {@link InMemoryColumnarMealRepository} vs the plain map layout of meals per user
+ * ({@link InMemoryBaseRepository} per user id, the layout of {@link InMemoryMealRepository} without its search index
+ * and delta sync log).
+ * <p>
+ * Usage: {@code InMemoryColumnarMealRepositoryBenchmark [meals=1_000_000] [users=1_000]}
+ */
+public class InMemoryColumnarMealRepositoryBenchmark {
+    private static final LocalDateTime START = LocalDateTime.of(2015, Month.JANUARY, 1, 8, 0);
+    private static final String[] DESCRIPTIONS = {"Завтрак", "Обед", "Ужин"};
+
+    // keeps the measured repository reachable during the heap snapshot
+    private static Object retained;
+
+    public static void main(String[] args) {
+        int meals = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        long map = retainedBytes(ConcurrentHashMap<Integer, InMemoryBaseRepository<Meal>>::new,
+                (repository, meal, userId) -> repository.computeIfAbsent(userId, id -> new InMemoryBaseRepository<>()).save(meal),
+                meals, users);
+        long columnar = retainedBytes(InMemoryColumnarMealRepository::new, InMemoryColumnarMealRepository::save, meals, users);
+        System.out.printf("map-based: %.1f bytes/meal%ncolumnar:  %.1f bytes/meal%nratio:     %.2fx%n",
+                (double) map / meals, (double) columnar / meals, (double) map / columnar);
+    }
+
+    private static <R> long retainedBytes(Supplier<R> factory, Saver<R> saver, int meals, int users) {
+        long before = usedHeap();
+        R repository = factory.get();
+        for (int i = 0; i < meals; i++) {
+            // descriptions are usually read from a request, not interned literals
+            String description = new String(DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            saver.save(repository, new Meal(START.plusMinutes(i / users * 240L), description, 300 + i % 700), i % users);
+        }
+        retained = repository;
+        long after = usedHeap();
+        retained = null;
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Saver<R> {
+        void save(R repository, Meal meal, int userId);
+    }
+}
@@ -0,0 +1,190 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static ru.javawebinar.topjava.MealTestData.assertMatch;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+public class InMemoryColumnarMealRepositoryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2020, Month.JANUARY, 30, 0, 0);
+
+    private InMemoryColumnarMealRepository repository;
+    private Meal breakfast;
+    private Meal lunch;
+    private Meal dinner;
+
+    @Before
+    public void setUp() {
+        repository = new InMemoryColumnarMealRepository();
+        // saved out of order on purpose
+        dinner = repository.save(new Meal(DAY.withHour(20), "Ужин", 500), USER_ID);
+        breakfast = repository.save(new Meal(DAY.withHour(10), "Завтрак", 500), USER_ID);
+        lunch = repository.save(new Meal(DAY.withHour(13), "Обед", 1000), USER_ID);
+        repository.save(new Meal(DAY.withHour(14), "Админ ланч", 510), ADMIN_ID);
+    }
+
+    @Test
+    public void getAll() {
+        assertMatch(repository.getAll(USER_ID), dinner, lunch, breakfast);
+    }
+
+    @Test
+    public void getBetweenHalfOpen() {
+        assertMatch(repository.getBetweenHalfOpen(DAY.withHour(10), DAY.withHour(20), USER_ID), lunch, breakfast);
+        assertMatch(repository.getBetweenHalfOpen(DAY.withHour(10).plusSeconds(1), DAY.withHour(20).plusSeconds(1), USER_ID), dinner, lunch);
+    }
+
+    @Test
+    public void get() {
+        assertMatch(repository.get(lunch.getId(), USER_ID), lunch);
+        assertNull(repository.get(lunch.getId(), ADMIN_ID));
+    }
+
+    @Test
+    public void update() {
+        Meal updated = new Meal(breakfast.getId(), DAY.withHour(22), "Поздний ужин", 300);
+        assertNotNull(repository.save(updated, USER_ID));
+        assertMatch(repository.getAll(USER_ID), updated, dinner, lunch);
+    }
+
+    @Test
+    public void updateNotOwn() {
+        assertNull(repository.save(new Meal(breakfast.getId(), DAY, "Чужой", 1), ADMIN_ID));
+        assertMatch(repository.get(breakfast.getId(), USER_ID), breakfast);
+    }
+
+    @Test
+    public void delete() {
+        assertTrue(repository.delete(lunch.getId(), USER_ID));
+        assertFalse(repository.delete(lunch.getId(), USER_ID));
+        assertMatch(repository.getAll(USER_ID), dinner, breakfast);
+    }
+
+    @Test
+    public void deleteByIds() {
+        assertEquals(2, repository.delete(Arrays.asList(lunch.getId(), dinner.getId(), Integer.MAX_VALUE), USER_ID));
+        assertEquals(0, repository.delete(Collections.singletonList(breakfast.getId()), ADMIN_ID));
+        assertMatch(repository.getAll(USER_ID), breakfast);
+    }
+
+    @Test
+    public void deleteBetweenHalfOpen() {
+        assertEquals(2, repository.deleteBetweenHalfOpen(DAY.withHour(10), DAY.withHour(20), USER_ID));
+        assertMatch(repository.getAll(USER_ID), dinner);
+        assertEquals(1, repository.getAll(ADMIN_ID).size());
+    }
+
+    @Test
+    public void getByIds() {
+        assertMatch(repository.get(Arrays.asList(breakfast.getId(), dinner.getId()), USER_ID), dinner, breakfast);
+        assertMatch(repository.get(Arrays.asList(breakfast.getId(), dinner.getId()), ADMIN_ID));
+    }
+
+    @Test
+    public void changedSince() {
+        MealChanges initial = repository.getChangedSince(0, USER_ID);
+        assertMatch(initial.getChanged(), dinner, breakfast, lunch);
+        assertTrue(initial.getDeleted().isEmpty());
+
+        Meal updated = new Meal(breakfast.getId(), DAY.withHour(9), "Ранний завтрак", 400);
+        repository.save(updated, USER_ID);
+        repository.delete(lunch.getId(), USER_ID);
+        repository.save(new Meal(DAY.withHour(15), "Чужой", 1), ADMIN_ID);
+        MealChanges delta = repository.getChangedSince(initial.getVersion(), USER_ID);
+        assertMatch(delta.getChanged(), updated);
+        assertEquals(Collections.singletonList(lunch.getId()), delta.getDeleted());
+
+        MealChanges none = repository.getChangedSince(delta.getVersion(), USER_ID);
+        assertTrue(none.getChanged().isEmpty() && none.getDeleted().isEmpty());
+    }
+
+    @Test
+    public void compactTombstones() {
+        MealChanges initial = repository.getChangedSince(0, USER_ID);
+        repository.delete(lunch.getId(), USER_ID);
+        MealChanges deleted = repository.getChangedSince(initial.getVersion(), USER_ID);
+        repository.delete(dinner.getId(), USER_ID);
+
+        repository.compactTombstones(deleted.getVersion());
+        MealChanges reset = repository.getChangedSince(initial.getVersion(), USER_ID);
+        assertTrue(reset.isReset());
+        assertMatch(reset.getChanged(), breakfast);
+        assertTrue(reset.getDeleted().isEmpty());
+        // synced after the dropped tombstone: a plain delta
+        MealChanges delta = repository.getChangedSince(deleted.getVersion(), USER_ID);
+        assertFalse(delta.isReset());
+        assertEquals(Collections.singletonList(dinner.getId()), delta.getDeleted());
+    }
+
+    @Test
+    public void growAndDictionary() {
+        for (int i = 0; i < 100; i++) {
+            repository.save(new Meal(DAY.minusDays(i + 1), i % 2 == 0 ? "Завтрак" : "Обед", i), ADMIN_ID);
+        }
+        assertEquals(101, repository.getAll(ADMIN_ID).size());
+        assertEquals("Обед", repository.getAll(ADMIN_ID).get(2).getDescription());
+    }
+
+    @Test
+    public void dictionaryShrinks() {
+        Meal snack = repository.save(new Meal(DAY.withHour(16), "Перекус", 100), USER_ID);
+        assertEquals(4, repository.dictionarySize(USER_ID));
+        assertEquals(1, repository.dictionarySize(ADMIN_ID));
+        repository.save(new Meal(snack.getId(), DAY.withHour(16), "Полдник", 100), USER_ID);
+        repository.delete(breakfast.getId(), USER_ID);
+        repository.deleteBetweenHalfOpen(DAY.withHour(13), DAY.withHour(14), USER_ID);
+        assertEquals(2, repository.dictionarySize(USER_ID));
+        // a freed code is reused by another description
+        Meal late = repository.save(new Meal(DAY.withHour(23), "Поздний ужин", 300), USER_ID);
+        assertEquals(3, repository.dictionarySize(USER_ID));
+        assertMatch(repository.getAll(USER_ID), late, dinner, new Meal(snack.getId(), DAY.withHour(16), "Полдник", 100));
+        assertMatch(repository.search("ужин", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID), late, dinner);
+    }
+
+    @Test
+    public void wideCalories() {
+        Meal huge = repository.save(new Meal(DAY.withHour(11), "Пир", 70_000), USER_ID);
+        Meal negative = repository.save(new Meal(DAY.withHour(12), "Коррекция", -100), USER_ID);
+        repository.save(new Meal(DAY.withHour(9), "Кофе", 5), USER_ID);
+        repository.delete(breakfast.getId(), USER_ID);
+        assertMatch(repository.getBetweenHalfOpen(DAY.withHour(11), DAY.withHour(21), USER_ID), dinner, lunch, negative, huge);
+    }
+
+    @Test
+    public void idIndex() {
+        // meals of the same minute: the index leads to the minute, the id picks the row
+        Meal[] meals = new Meal[40];
+        for (int i = 0; i < meals.length; i++) {
+            meals[i] = repository.save(new Meal(DAY.minusDays(i % 4), "Еда " + i, i), ADMIN_ID);
+        }
+        repository.delete(Arrays.asList(meals[1].getId(), meals[2].getId()), ADMIN_ID);
+        repository.delete(meals[3].getId(), ADMIN_ID);
+        repository.deleteBetweenHalfOpen(DAY.minusDays(3), DAY.minusDays(2), ADMIN_ID);
+        Meal moved = new Meal(meals[4].getId(), DAY.minusDays(10), "Перенесена", 1);
+        assertMatch(repository.save(moved, ADMIN_ID), moved);
+        for (int i = 0; i < meals.length; i++) {
+            Meal expected = i == 4 ? moved : i == 1 || i == 2 || i == 3 || i % 4 == 3 ? null : meals[i];
+            assertMatch(repository.get(meals[i].getId(), ADMIN_ID), expected);
+        }
+    }
+
+    @Test
+    public void search() {
+        assertMatch(repository.search("ужин", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID), dinner);
+        assertMatch(repository.search("О", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID), lunch);
+        assertMatch(repository.search("а", DAY, DAY.withHour(20), 0, 10, USER_ID), breakfast);
+        repository.save(new Meal(DAY.withHour(11), "Второй завтрак", 200), USER_ID);
+        assertMatch(repository.search("завтрак", DAY, DAY.withHour(20), 1, 10, USER_ID), breakfast);
+        assertMatch(repository.search("пицца", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID));
+    }
+}
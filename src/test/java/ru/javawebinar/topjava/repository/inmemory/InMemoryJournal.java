@@ -0,0 +1,334 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.javawebinar.topjava.model.AbstractBaseEntity;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of save/delete operations plus compact snapshots
+ * for the in-memory repositories.
+ * <p>
+ * Directory layout: {@code snapshot-<gen>.dat} holds the full state as of the start of {@code journal-<gen>.log};
+ * journals are fixed-size mapped segments, a full segment rolls over to the next generation.
+ * Every record is {@code [int length][int crc32][byte op][int ownerId][int id][payload]}, a zero length marks
+ * the end of a segment, a bad crc marks a torn write and stops the replay.
+ * A mark record carries a long of the owner (e.g. a version high-water mark) in its ownerId and id,
+ * the last one is repeated at the start of every snapshot.
+ * <p>
+ * Mapped writes survive a process crash (they live in the OS page cache), with {@code syncEachWrite}
+ * every record is also forced to disk.
+ * Callers must hold the journal monitor around "mutate + log" to keep journal and map order the same.
+ */
+public class InMemoryJournal<T extends AbstractBaseEntity> implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryJournal.class);
+
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte MARK = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final Pattern FILE_NAME = Pattern.compile("(journal|snapshot)-(\\d+)\\.(log|dat)");
+
+    public interface Codec<T> {
+        void write(T entity, ByteBuffer out);
+
+        T read(int id, ByteBuffer in);
+    }
+
+    public interface Replay<T> {
+        void save(int ownerId, T entity);
+
+        void delete(int ownerId, int id);
+
+        default void mark(long mark) {
+        }
+    }
+
+    private final Path dir;
+    private final Codec<T> codec;
+    private final int segmentSize;
+    private final boolean syncEachWrite;
+    private final CRC32 crc = new CRC32();
+
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private int generation;
+    // the last mark logged or replayed
+    private long mark;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private ScheduledExecutorService snapshotExecutor;
+
+    public InMemoryJournal(Path dir, Codec<T> codec, int segmentSize, boolean syncEachWrite) {
+        this.dir = dir;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.syncEachWrite = syncEachWrite;
+    }
+
+    /**
+     * Replays the latest snapshot and all later journals, then opens a fresh journal generation for appends.
+     */
+    public synchronized void recover(Replay<T> replay) throws IOException {
+        Files.createDirectories(dir);
+        int snapshotGen = -1;
+        SortedSet<Integer> journals = new TreeSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    int gen = Integer.parseInt(m.group(2));
+                    if ("snapshot".equals(m.group(1))) {
+                        snapshotGen = Math.max(snapshotGen, gen);
+                    } else {
+                        journals.add(gen);
+                    }
+                }
+            }
+        }
+        if (snapshotGen >= 0) {
+            replay(snapshotPath(snapshotGen), replay);
+        }
+        int lastGen = Math.max(snapshotGen, 0);
+        for (int gen : journals) {
+            if (gen >= snapshotGen) {
+                replay(journalPath(gen), replay);
+                lastGen = gen;
+            }
+        }
+        openSegment(lastGen + 1);
+    }
+
+    public synchronized void logSave(int ownerId, T entity) {
+        append(SAVE, ownerId, entity.getId(), entity);
+    }
+
+    public synchronized void logDelete(int ownerId, int id) {
+        append(DELETE, ownerId, id, null);
+    }
+
+    public synchronized void logMark(long mark) {
+        append(MARK, (int) (mark >>> 32), (int) mark, null);
+        this.mark = mark;
+    }
+
+    /**
+     * Rolls the journal and writes a compact snapshot of {@code state} (ownerId -> entities).
+     * {@code state} is called under the journal monitor and must return a copy.
+     */
+    public void snapshot(Supplier<Map<Integer, List<T>>> state) throws IOException {
+        int gen;
+        long lastMark;
+        Map<Integer, List<T>> copy;
+        synchronized (this) {
+            gen = generation + 1;
+            openSegment(gen);
+            lastMark = mark;
+            copy = state.get();
+        }
+        Path tmp = dir.resolve("snapshot-" + gen + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            CRC32 snapshotCrc = new CRC32();
+            if (lastMark != 0) {
+                buffer = encode(buffer, MARK, (int) (lastMark >>> 32), (int) lastMark, null);
+                writeRecord(out, buffer, snapshotCrc);
+            }
+            for (Map.Entry<Integer, List<T>> entry : copy.entrySet()) {
+                for (T entity : entry.getValue()) {
+                    buffer = encode(buffer, SAVE, entry.getKey(), entity.getId(), entity);
+                    writeRecord(out, buffer, snapshotCrc);
+                }
+            }
+            out.writeInt(0);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, snapshotPath(gen), StandardCopyOption.ATOMIC_MOVE);
+        deleteBefore(gen);
+        log.info("snapshot {} written to {}", gen, dir);
+    }
+
+    public synchronized void scheduleSnapshots(long periodMillis, Supplier<Map<Integer, List<T>>> state) {
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "in-memory-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        snapshotExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(state);
+            } catch (IOException | RuntimeException e) {
+                log.error("snapshot failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+        }
+        closeSegment();
+    }
+
+    private static void writeRecord(DataOutputStream out, ByteBuffer buffer, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+        out.writeInt(buffer.limit() - HEADER_SIZE);
+        out.writeInt((int) crc.getValue());
+        out.write(buffer.array(), HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+    }
+
+    private void append(byte op, int ownerId, int id, T entity) {
+        scratch = encode(scratch, op, ownerId, id, entity);
+        int bodySize = scratch.limit() - HEADER_SIZE;
+        crc.reset();
+        crc.update(scratch.array(), HEADER_SIZE, bodySize);
+        scratch.putInt(0, bodySize).putInt(4, (int) crc.getValue());
+        // keep room for the terminating zero length
+        if (segment.remaining() < scratch.limit() + 4) {
+            if (scratch.limit() + 4 > segmentSize) {
+                throw new IllegalArgumentException("journal record of " + scratch.limit() + " bytes exceeds segment size");
+            }
+            openSegment(generation + 1);
+        }
+        segment.put(scratch);
+        if (syncEachWrite) {
+            segment.force();
+        }
+    }
+
+    private ByteBuffer encode(ByteBuffer buffer, byte op, int ownerId, int id, T entity) {
+        while (true) {
+            try {
+                buffer.clear();
+                buffer.position(HEADER_SIZE);
+                buffer.put(op).putInt(ownerId).putInt(id);
+                if (entity != null) {
+                    codec.write(entity, buffer);
+                }
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private void replay(Path file, Replay<T> replay) throws IOException {
+        CRC32 replayCrc = new CRC32();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                int storedCrc = in.readInt();
+                in.readFully(body);
+                replayCrc.reset();
+                replayCrc.update(body, 0, length);
+                if ((int) replayCrc.getValue() != storedCrc) {
+                    log.warn("torn record at #{} in {}, replay of this file stopped", count, file);
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte op = record.get();
+                int ownerId = record.getInt();
+                int id = record.getInt();
+                if (op == SAVE) {
+                    replay.save(ownerId, codec.read(id, record));
+                } else if (op == MARK) {
+                    mark = (long) ownerId << 32 | id & 0xFFFFFFFFL;
+                    replay.mark(mark);
+                } else {
+                    replay.delete(ownerId, id);
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            log.warn("truncated record at #{} in {}", count, file);
+        }
+        log.info("replayed {} records from {}", count, file);
+    }
+
+    private void openSegment(int gen) {
+        closeSegment();
+        try {
+            channel = FileChannel.open(journalPath(gen), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            generation = gen;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeSegment() {
+        if (channel != null) {
+            try {
+                segment.force();
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            channel = null;
+            segment = null;
+        }
+    }
+
+    private void deleteBefore(int gen) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && Integer.parseInt(m.group(2)) < gen) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path journalPath(int gen) {
+        return dir.resolve("journal-" + gen + ".log");
+    }
+
+    private Path snapshotPath(int gen) {
+        return dir.resolve("snapshot-" + gen + ".dat");
+    }
+
+    static void putString(ByteBuffer out, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
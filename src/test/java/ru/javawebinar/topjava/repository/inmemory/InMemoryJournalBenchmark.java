@@ -0,0 +1,68 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import ru.javawebinar.topjava.model.Meal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.Month;
+
+/**
+ * Write overhead per operation and recovery time of {@link InMemoryJournal}.
+ * <p>
+ * Usage: {@code InMemoryJournalBenchmark [meals=10_000_000] [users=10_000]}, run with a large heap (-Xmx6g for 10M meals).
+ */
+public class InMemoryJournalBenchmark {
+    private static final int SEGMENT_SIZE = 256 << 20;
+    private static final LocalDateTime START = LocalDateTime.of(2015, Month.JANUARY, 1, 8, 0);
+    private static final String[] DESCRIPTIONS = {"Завтрак", "Обед", "Ужин", "Перекус"};
+
+    public static void main(String[] args) throws IOException {
+        int meals = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Path dir = Files.createTempDirectory("journal-benchmark");
+
+        long plain = fill(new InMemoryMealRepository(), meals, users);
+        System.out.printf("in-memory save:        %,d ns/op%n", plain / meals);
+
+        InMemoryMealRepository repository = new InMemoryMealRepository();
+        InMemoryJournal<Meal> journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false);
+        repository.attach(journal, 0);
+        long journaled = fill(repository, meals, users);
+        System.out.printf("journaled save:        %,d ns/op%n", journaled / meals);
+        journal.close();
+        repository = null;
+
+        System.out.printf("journal recovery:      %,d ms%n", recover(dir) / 1_000_000);
+
+        InMemoryMealRepository snapshotted = new InMemoryMealRepository();
+        journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false);
+        snapshotted.attach(journal, 0);
+        long start = System.nanoTime();
+        journal.snapshot(snapshotted::copyState);
+        System.out.printf("snapshot:              %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+        journal.close();
+        snapshotted = null;
+
+        System.out.printf("snapshot recovery:     %,d ms%n", recover(dir) / 1_000_000);
+    }
+
+    private static long fill(InMemoryMealRepository repository, int meals, int users) {
+        long start = System.nanoTime();
+        for (int i = 0; i < meals; i++) {
+            repository.save(new Meal(START.plusMinutes(i / users * 240L), DESCRIPTIONS[i % DESCRIPTIONS.length], 300 + i % 700), i % users);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long recover(Path dir) throws IOException {
+        System.gc();
+        long start = System.nanoTime();
+        InMemoryJournal<Meal> journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false);
+        new InMemoryMealRepository().attach(journal, 0);
+        long time = System.nanoTime() - start;
+        journal.close();
+        return time;
+    }
+}
@@ -0,0 +1,146 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.javawebinar.topjava.UserTestData;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertNull;
+import static ru.javawebinar.topjava.MealTestData.*;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+public class InMemoryJournalTest {
+    private static final int SEGMENT_SIZE = 1 << 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoverMeals() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryMealRepository repository = openMeals(dir);
+        Meal created = repository.save(getNew(), USER_ID);
+        Meal deleted = repository.save(copyNew(meal2), USER_ID);
+        Meal updated = repository.save(copyNew(meal1), USER_ID);
+        updated = repository.save(new Meal(updated.getId(), updated.getDateTime(), "Обновленный завтрак", 200), USER_ID);
+        repository.delete(deleted.getId(), USER_ID);
+
+        InMemoryMealRepository recovered = openMeals(dir);
+        assertMatch(recovered.getAll(USER_ID), created, updated);
+        assertNull(recovered.get(deleted.getId(), USER_ID));
+    }
+
+    @Test
+    public void recoverFromSnapshotAndJournal() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryJournal<Meal> journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false);
+        InMemoryMealRepository repository = new InMemoryMealRepository();
+        repository.attach(journal, 0);
+        for (int i = 0; i < 1000; i++) {
+            repository.save(new Meal(meal1.getDateTime().plusMinutes(i), "Еда " + i, i), ADMIN_ID);
+        }
+        journal.snapshot(repository::copyState);
+        Meal created = repository.save(copyNew(meal3), USER_ID);
+
+        assertThat(listFiles(dir)).contains("snapshot-2.dat", "journal-2.log").doesNotContain("journal-1.log");
+        InMemoryMealRepository recovered = openMeals(dir);
+        assertThat(recovered.getAll(ADMIN_ID)).hasSize(1000);
+        assertMatch(recovered.getAll(USER_ID), created);
+    }
+
+    @Test
+    public void syncResetAfterRestart() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryJournal<Meal> journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false);
+        InMemoryMealRepository repository = new InMemoryMealRepository();
+        repository.attach(journal, 0);
+        Meal kept = repository.save(copyNew(meal1), USER_ID);
+        Meal deleted = repository.save(copyNew(meal2), USER_ID);
+        // the high-water mark survives the journal it was logged in
+        journal.snapshot(repository::copyState);
+        repository.delete(deleted.getId(), USER_ID);
+        long synced = repository.getChangedSince(0, USER_ID).getVersion();
+
+        InMemoryMealRepository recovered = openMeals(dir);
+        MealChanges changes = recovered.getChangedSince(synced, USER_ID);
+        assertThat(changes.isReset()).isTrue();
+        assertMatch(changes.getChanged(), kept);
+
+        Meal created = recovered.save(copyNew(meal3), USER_ID);
+        changes = recovered.getChangedSince(changes.getVersion(), USER_ID);
+        assertThat(changes.isReset()).isFalse();
+        assertMatch(changes.getChanged(), created);
+        assertThat(changes.getVersion()).isGreaterThan(synced);
+    }
+
+    @Test
+    public void tornWriteStopsReplay() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryJournal<Meal> journal = new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, true);
+        InMemoryMealRepository repository = new InMemoryMealRepository();
+        repository.attach(journal, 0);
+        Meal first = repository.save(copyNew(meal1), USER_ID);
+        repository.save(copyNew(meal2), USER_ID);
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("journal-1.log").toFile(), "rw")) {
+            // corrupt the last byte of the second meal record body, after the version mark of attach
+            int markLength = file.readInt();
+            file.seek(8 + markLength);
+            int firstLength = file.readInt();
+            int second = 8 + markLength + 8 + firstLength;
+            file.seek(second);
+            int secondLength = file.readInt();
+            file.seek(second + 8 + secondLength - 1);
+            file.write(0xFF);
+        }
+        assertMatch(openMeals(dir).getAll(USER_ID), first);
+    }
+
+    @Test
+    public void recoverUsers() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        repository.attach(new InMemoryJournal<>(dir, InMemoryUserRepository.JOURNAL_CODEC, SEGMENT_SIZE, false), 0);
+        User created = repository.save(UserTestData.getNew());
+        User deleted = repository.save(new User(null, "Deleted", "deleted@gmail.com", "password", Role.USER));
+        User updated = repository.save(new User(null, "Updated", "updated@gmail.com", "password", Role.ADMIN));
+        updated.setCaloriesPerDay(1800);
+        repository.save(updated);
+        repository.delete(deleted.getId());
+
+        InMemoryUserRepository recovered = new InMemoryUserRepository();
+        recovered.attach(new InMemoryJournal<>(dir, InMemoryUserRepository.JOURNAL_CODEC, SEGMENT_SIZE, false), 0);
+        UserTestData.assertMatch(recovered.getAll(), created, updated);
+        assertThat(recovered.get(created.getId()).getRoles()).isEqualTo(created.getRoles());
+    }
+
+    private static Meal copyNew(Meal meal) {
+        return new Meal(meal.getDateTime(), meal.getDescription(), meal.getCalories());
+    }
+
+    private static InMemoryMealRepository openMeals(Path dir) throws IOException {
+        InMemoryMealRepository repository = new InMemoryMealRepository();
+        repository.attach(new InMemoryJournal<>(dir, InMemoryMealRepository.JOURNAL_CODEC, SEGMENT_SIZE, false), 0);
+        return repository;
+    }
+
+    private static List<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}
@@ -5,20 +5,32 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Repository;
 import ru.javawebinar.topjava.model.Meal;
 import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.to.MealChanges;
 import ru.javawebinar.topjava.util.MealsUtil;
 import ru.javawebinar.topjava.util.Util;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
 import static ru.javawebinar.topjava.UserTestData.USER_ID;
@@ -27,9 +39,44 @@ import static ru.javawebinar.topjava.UserTestData.USER_ID;
 public class InMemoryMealRepository implements MealRepository {
     private static final Logger log = LoggerFactory.getLogger(InMemoryMealRepository.class);
 
+    // versions reserved by one journal mark
+    private static final long VERSION_BLOCK = 1 << 20;
+
+    static final InMemoryJournal.Codec<Meal> JOURNAL_CODEC = new InMemoryJournal.Codec<Meal>() {
+        @Override
+        public void write(Meal meal, ByteBuffer out) {
+            out.putLong(meal.getDateTime().toEpochSecond(ZoneOffset.UTC)).putInt(meal.getCalories());
+            InMemoryJournal.putString(out, meal.getDescription());
+        }
+
+        @Override
+        public Meal read(int id, ByteBuffer in) {
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(in.getLong(), 0, ZoneOffset.UTC);
+            int calories = in.getInt();
+            return new Meal(id, dateTime, InMemoryJournal.getString(in), calories);
+        }
+    };
+
     // Map  userId -> mealRepository
     private final Map<Integer, InMemoryBaseRepository<Meal>> usersMealsMap = new ConcurrentHashMap<>();
 
+    // Map  userId -> description index
+    private final Map<Integer, TrigramIndex> usersIndexMap = new ConcurrentHashMap<>();
+
+    // Map  userId -> delta sync versions
+    private final Map<Integer, MealChangeLog> usersChangesMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong versions = new AtomicLong();
+
+    // journaled: versions up to it may have been handed out, after a restart the versions continue above it
+    private volatile long reservedVersions;
+
+    // tombstones up to it are dropped: older clients must reload everything (meal_sync_horizon of the JDBC path)
+    private final AtomicLong compactedVersion = new AtomicLong();
+
+    // null if not persisted
+    private volatile InMemoryJournal<Meal> journal;
+
     {
         MealsUtil.meals.forEach(meal -> save(meal, USER_ID));
         save(new Meal(LocalDateTime.of(2015, Month.JUNE, 1, 14, 0), "Админ ланч", 510), ADMIN_ID);
@@ -37,10 +84,123 @@ public class InMemoryMealRepository implements MealRepository {
     }
 
 
+    /**
+     * Replaces the current content with the journal state and persists all further changes into it.
+     * The recovered meals are versioned above the journaled high-water mark and the tombstones are gone,
+     * so clients synced before the restart get a reset.
+     */
+    public void attach(InMemoryJournal<Meal> journal, long snapshotPeriodMillis) throws IOException {
+        usersMealsMap.clear();
+        AtomicLong highWater = new AtomicLong();
+        journal.recover(new InMemoryJournal.Replay<Meal>() {
+            @Override
+            public void save(int userId, Meal meal) {
+                usersMealsMap.computeIfAbsent(userId, uid -> new InMemoryBaseRepository<>()).restore(meal);
+            }
+
+            @Override
+            public void delete(int userId, int id) {
+                InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
+                if (meals != null) {
+                    meals.delete(id);
+                }
+            }
+
+            @Override
+            public void mark(long mark) {
+                highWater.accumulateAndGet(mark, Math::max);
+            }
+        });
+        versions.accumulateAndGet(highWater.get(), Math::max);
+        usersIndexMap.clear();
+        usersChangesMap.clear();
+        usersMealsMap.forEach((userId, meals) -> {
+            TrigramIndex index = indexOf(userId);
+            MealChangeLog changes = changesOf(userId);
+            meals.getCollection().forEach(meal -> {
+                index.add(meal.getId(), meal.getDescription());
+                changes.saved(meal.getId());
+            });
+        });
+        compactedVersion.accumulateAndGet(versions.get(), Math::max);
+        synchronized (journal) {
+            reserveVersions(journal);
+        }
+        this.journal = journal;
+        if (snapshotPeriodMillis > 0) {
+            journal.scheduleSnapshots(snapshotPeriodMillis, this::copyState);
+        }
+    }
+
+    Map<Integer, List<Meal>> copyState() {
+        Map<Integer, List<Meal>> copy = new HashMap<>();
+        usersMealsMap.forEach((userId, meals) -> copy.put(userId, new ArrayList<>(meals.getCollection())));
+        return copy;
+    }
+
     @Override
     public Meal save(Meal meal, int userId) {
+        if (!meal.isNew()) {
+            return replace(meal, userId) == null ? null : meal;
+        }
         InMemoryBaseRepository<Meal> meals = usersMealsMap.computeIfAbsent(userId, uid -> new InMemoryBaseRepository<>());
-        return meals.save(meal);
+        InMemoryJournal<Meal> journal = this.journal;
+        if (journal == null) {
+            meals.save(meal);
+        } else {
+            synchronized (journal) {
+                reserveVersions(journal);
+                meals.save(meal);
+                journal.logSave(userId, meal);
+            }
+        }
+        indexOf(userId).add(meal.getId(), meal.getDescription());
+        changesOf(userId).saved(meal.getId());
+        return meal;
+    }
+
+    @Override
+    public Meal replace(Meal meal, int userId) {
+        InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
+        if (meals == null) {
+            return null;
+        }
+        Meal former;
+        InMemoryJournal<Meal> journal = this.journal;
+        if (journal == null) {
+            former = meals.replace(meal);
+        } else {
+            synchronized (journal) {
+                reserveVersions(journal);
+                former = meals.replace(meal);
+                if (former != null) {
+                    journal.logSave(userId, meal);
+                }
+            }
+        }
+        if (former != null) {
+            TrigramIndex index = indexOf(userId);
+            index.remove(former.getId(), former.getDescription());
+            index.add(meal.getId(), meal.getDescription());
+            changesOf(userId).saved(meal.getId());
+        }
+        return former;
+    }
+
+    // under the journal monitor, before the change: half a block of slack for the versions taken after it
+    private void reserveVersions(InMemoryJournal<Meal> journal) {
+        if (versions.get() + VERSION_BLOCK / 2 >= reservedVersions) {
+            reservedVersions = versions.get() + VERSION_BLOCK;
+            journal.logMark(reservedVersions);
+        }
+    }
+
+    private TrigramIndex indexOf(int userId) {
+        return usersIndexMap.computeIfAbsent(userId, uid -> new TrigramIndex());
+    }
+
+    private MealChangeLog changesOf(int userId) {
+        return usersChangesMap.computeIfAbsent(userId, uid -> new MealChangeLog(versions));
     }
 
     @PostConstruct
@@ -55,8 +215,53 @@ public class InMemoryMealRepository implements MealRepository {
 
     @Override
     public boolean delete(int id, int userId) {
+        return remove(id, userId) != null;
+    }
+
+    @Override
+    public Meal remove(int id, int userId) {
         InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
-        return meals != null && meals.delete(id);
+        if (meals == null) {
+            return null;
+        }
+        Meal former;
+        InMemoryJournal<Meal> journal = this.journal;
+        if (journal == null) {
+            former = meals.remove(id);
+        } else {
+            synchronized (journal) {
+                reserveVersions(journal);
+                former = meals.remove(id);
+                if (former != null) {
+                    journal.logDelete(userId, id);
+                }
+            }
+        }
+        if (former != null) {
+            indexOf(userId).remove(id, former.getDescription());
+            changesOf(userId).deleted(id);
+        }
+        return former;
+    }
+
+    @Override
+    public int delete(Collection<Integer> ids, int userId) {
+        return remove(ids, userId).size();
+    }
+
+    @Override
+    public List<Meal> remove(Collection<Integer> ids, int userId) {
+        return ids.stream()
+                .map(id -> remove(id, userId))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int deleteBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+        return delete(getBetweenHalfOpen(startDateTime, endDateTime, userId).stream()
+                .map(Meal::getId)
+                .collect(Collectors.toList()), userId);
     }
 
     @Override
@@ -65,6 +270,18 @@ public class InMemoryMealRepository implements MealRepository {
         return meals == null ? null : meals.get(id);
     }
 
+    @Override
+    public List<Meal> get(Collection<Integer> ids, int userId) {
+        InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
+        return meals == null ? Collections.emptyList() :
+                ids.stream()
+                        .distinct()
+                        .map(meals::get)
+                        .filter(Objects::nonNull)
+                        .sorted(Comparator.comparing(Meal::getDateTime).reversed())
+                        .collect(Collectors.toList());
+    }
+
     @Override
     public List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
         return filterByPredicate(userId, meal -> Util.isBetweenHalfOpen(meal.getDateTime(), startDateTime, endDateTime));
@@ -75,6 +292,41 @@ public class InMemoryMealRepository implements MealRepository {
         return filterByPredicate(userId, meal -> true);
     }
 
+    @Override
+    public List<Meal> search(String text, LocalDateTime startDateTime, LocalDateTime endDateTime, int offset, int limit, int userId) {
+        InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
+        if (meals == null) {
+            return Collections.emptyList();
+        }
+        Set<Integer> candidates = indexOf(userId).candidates(text);
+        Stream<Meal> found = candidates == null ?
+                meals.getCollection().stream() :
+                candidates.stream().map(meals::get).filter(Objects::nonNull);
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        return found
+                .filter(meal -> Util.isBetweenHalfOpen(meal.getDateTime(), startDateTime, endDateTime))
+                .filter(meal -> meal.getDescription().toLowerCase(Locale.ROOT).contains(lowerText))
+                .sorted(Comparator.comparing(Meal::getDateTime).reversed())
+                .skip(offset)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public MealChanges getChangedSince(long version, int userId) {
+        // above the counter: a version of another repository instance (e.g. not journaled before a restart)
+        boolean reset = version < compactedVersion.get() || version > versions.get();
+        return changesOf(userId).changedSince(version, reset, id -> get(id, userId));
+    }
+
+    /**
+     * Drops the delta sync tombstones up to version (e.g. of a sync older than the retention window),
+     * clients synced before the last dropped one get a reset
+     */
+    public void compactTombstones(long version) {
+        usersChangesMap.values().forEach(changes -> compactedVersion.accumulateAndGet(changes.compact(version), Math::max));
+    }
+
     private List<Meal> filterByPredicate(int userId, Predicate<Meal> filter) {
         InMemoryBaseRepository<Meal> meals = usersMealsMap.get(userId);
         return meals == null ? Collections.emptyList() :
@@ -0,0 +1,88 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static ru.javawebinar.topjava.MealTestData.assertMatch;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+public class InMemoryMealRepositoryTest {
+    private final InMemoryMealRepository repository = new InMemoryMealRepository();
+
+    @Test
+    public void search() {
+        Meal pizza = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 19, 0), "Пицца Маргарита", 900), USER_ID);
+        assertMatch(repository.search("пицц", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID), pizza);
+        assertMatch(repository.search("пицц", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, ADMIN_ID));
+        assertMatch(repository.search("пицц", LocalDateTime.MIN, pizza.getDateTime(), 0, 10, USER_ID));
+    }
+
+    @Test
+    public void searchAfterUpdateAndDelete() {
+        Meal meal = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 19, 0), "Пицца", 900), USER_ID);
+        Meal updated = repository.save(new Meal(meal.getId(), meal.getDateTime(), "Суши", 700), USER_ID);
+        assertMatch(repository.search("пицц", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID));
+        assertMatch(repository.search("суши", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID), updated);
+        repository.delete(meal.getId(), USER_ID);
+        assertMatch(repository.search("суши", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID));
+    }
+
+    @Test
+    public void searchShortText() {
+        assertMatch(repository.search("обе", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID),
+                repository.search("Об", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID));
+    }
+
+    @Test
+    public void bulkOperations() {
+        Meal first = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 10, 0), "Импорт 1", 100), USER_ID);
+        Meal second = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 11, 0), "Импорт 2", 100), USER_ID);
+        Meal third = repository.save(new Meal(LocalDateTime.of(2021, 2, 2, 10, 0), "Импорт 3", 100), USER_ID);
+        assertMatch(repository.get(Arrays.asList(first.getId(), third.getId()), USER_ID), third, first);
+        assertEquals(0, repository.delete(Collections.singletonList(first.getId()), ADMIN_ID));
+        assertEquals(2, repository.deleteBetweenHalfOpen(first.getDateTime(), third.getDateTime(), USER_ID));
+        assertEquals(1, repository.delete(Arrays.asList(first.getId(), third.getId()), USER_ID));
+        assertMatch(repository.search("импорт", LocalDateTime.MIN, LocalDateTime.MAX, 0, 10, USER_ID));
+        assertMatch(repository.get(Collections.singletonList(second.getId()), USER_ID));
+    }
+
+    @Test
+    public void changedSince() {
+        long version = repository.getChangedSince(0, USER_ID).getVersion();
+        Meal created = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 10, 0), "Новая", 100), USER_ID);
+        Meal deleted = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 11, 0), "Удаленная", 100), USER_ID);
+        repository.delete(deleted.getId(), USER_ID);
+        MealChanges changes = repository.getChangedSince(version, USER_ID);
+        assertMatch(changes.getChanged(), created);
+        assertEquals(Collections.singletonList(deleted.getId()), changes.getDeleted());
+        assertMatch(repository.getChangedSince(changes.getVersion(), USER_ID).getChanged());
+    }
+
+    @Test
+    public void compactTombstones() {
+        long version = repository.getChangedSince(0, USER_ID).getVersion();
+        Meal first = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 10, 0), "Первая", 100), USER_ID);
+        Meal second = repository.save(new Meal(LocalDateTime.of(2021, 2, 1, 11, 0), "Вторая", 100), USER_ID);
+        repository.delete(first.getId(), USER_ID);
+        long afterFirst = repository.getChangedSince(version, USER_ID).getVersion();
+        repository.delete(second.getId(), USER_ID);
+
+        repository.compactTombstones(afterFirst);
+        MealChanges reset = repository.getChangedSince(version, USER_ID);
+        assertTrue(reset.isReset());
+        assertEquals(repository.getAll(USER_ID).size(), reset.getChanged().size());
+        assertTrue(reset.getDeleted().isEmpty());
+        MealChanges delta = repository.getChangedSince(afterFirst, USER_ID);
+        assertFalse(delta.isReset());
+        assertEquals(Collections.singletonList(second.getId()), delta.getDeleted());
+    }
+}
@@ -2,11 +2,13 @@ package ru.javawebinar.topjava.repository.inmemory;
 
 import org.springframework.stereotype.Repository;
 import ru.javawebinar.topjava.UserTestData;
+import ru.javawebinar.topjava.model.Role;
 import ru.javawebinar.topjava.model.User;
 import ru.javawebinar.topjava.repository.UserRepository;
 
-import java.util.Comparator;
-import java.util.List;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static ru.javawebinar.topjava.UserTestData.admin;
@@ -16,12 +18,103 @@ import static ru.javawebinar.topjava.UserTestData.user;
 @Repository
 public class InMemoryUserRepository extends InMemoryBaseRepository<User> implements UserRepository {
 
+    static final InMemoryJournal.Codec<User> JOURNAL_CODEC = new InMemoryJournal.Codec<User>() {
+        @Override
+        public void write(User user, ByteBuffer out) {
+            InMemoryJournal.putString(out, user.getName());
+            InMemoryJournal.putString(out, user.getEmail());
+            InMemoryJournal.putString(out, user.getPassword());
+            out.putLong(user.getRegistered().getTime())
+                    .putInt(user.getCaloriesPerDay())
+                    .put((byte) (user.isEnabled() ? 1 : 0));
+            int roles = 0;
+            for (Role role : user.getRoles()) {
+                roles |= 1 << role.ordinal();
+            }
+            out.putInt(roles);
+        }
+
+        @Override
+        public User read(int id, ByteBuffer in) {
+            String name = InMemoryJournal.getString(in);
+            String email = InMemoryJournal.getString(in);
+            String password = InMemoryJournal.getString(in);
+            Date registered = new Date(in.getLong());
+            int caloriesPerDay = in.getInt();
+            boolean enabled = in.get() != 0;
+            int roleBits = in.getInt();
+            EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+            for (Role role : Role.values()) {
+                if ((roleBits & 1 << role.ordinal()) != 0) {
+                    roles.add(role);
+                }
+            }
+            return new User(id, name, email, password, caloriesPerDay, enabled, registered, roles);
+        }
+    };
+
+    // null if not persisted
+    private volatile InMemoryJournal<User> journal;
+
     public void init() {
         map.clear();
         map.put(UserTestData.USER_ID, user);
         map.put(UserTestData.ADMIN_ID, admin);
     }
 
+    /**
+     * Replaces the current content with the journal state and persists all further changes into it.
+     */
+    public void attach(InMemoryJournal<User> journal, long snapshotPeriodMillis) throws IOException {
+        map.clear();
+        journal.recover(new InMemoryJournal.Replay<User>() {
+            @Override
+            public void save(int ownerId, User user) {
+                restore(user);
+            }
+
+            @Override
+            public void delete(int ownerId, int id) {
+                map.remove(id);
+            }
+        });
+        this.journal = journal;
+        if (snapshotPeriodMillis > 0) {
+            journal.scheduleSnapshots(snapshotPeriodMillis,
+                    () -> Collections.singletonMap(0, new ArrayList<>(getCollection())));
+        }
+    }
+
+    @Override
+    public User save(User user) {
+        InMemoryJournal<User> journal = this.journal;
+        if (journal == null) {
+            return super.save(user);
+        }
+        synchronized (journal) {
+            User saved = super.save(user);
+            if (saved != null) {
+                journal.logSave(0, saved);
+            }
+            return saved;
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        InMemoryJournal<User> journal = this.journal;
+        if (journal == null) {
+            return super.delete(id);
+        }
+        synchronized (journal) {
+            boolean deleted = super.delete(id);
+            if (deleted) {
+                journal.logDelete(0, id);
+            }
+            return deleted;
+        }
+    }
+
     @Override
     public List<User> getAll() {
         return getCollection().stream()
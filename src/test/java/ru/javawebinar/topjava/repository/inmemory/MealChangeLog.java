@@ -0,0 +1,72 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Change versions and tombstones of one user's meals for delta sync.
+ * A change is recorded after it is applied to the repository, so a meal read for a recorded version
+ * is at least at that version.
+ */
+class MealChangeLog {
+    // shared by all users of the repository
+    private final AtomicLong versions;
+
+    // version -> id, the last change of every existing meal
+    private final NavigableMap<Long, Integer> saved = new TreeMap<>();
+    private final Map<Integer, Long> savedVersions = new HashMap<>();
+
+    // version -> id
+    private final NavigableMap<Long, Integer> deleted = new TreeMap<>();
+
+    MealChangeLog(AtomicLong versions) {
+        this.versions = versions;
+    }
+
+    synchronized void saved(int id) {
+        long version = versions.incrementAndGet();
+        Long old = savedVersions.put(id, version);
+        if (old != null) {
+            saved.remove(old);
+        }
+        saved.put(version, id);
+    }
+
+    synchronized void deleted(int id) {
+        long version = versions.incrementAndGet();
+        Long old = savedVersions.remove(id);
+        if (old != null) {
+            saved.remove(old);
+        }
+        deleted.put(version, id);
+    }
+
+    /**
+     * Drops the tombstones up to version, returns the last dropped version or 0 if none
+     */
+    synchronized long compact(long version) {
+        NavigableMap<Long, Integer> dropped = deleted.headMap(version, true);
+        long last = dropped.isEmpty() ? 0 : dropped.lastKey();
+        dropped.clear();
+        return last;
+    }
+
+    // reset: the version is below the compacted tombstones, all meals are returned
+    synchronized MealChanges changedSince(long version, boolean reset, IntFunction<Meal> meals) {
+        // versions of this user are taken under this monitor, so all of them up to now are already recorded
+        long current = versions.get();
+        List<Meal> changed = new ArrayList<>();
+        for (int id : (reset ? saved : saved.tailMap(version, false)).values()) {
+            Meal meal = meals.apply(id);
+            if (meal != null) {
+                changed.add(meal);
+            }
+        }
+        List<Integer> deletedIds = reset ? new ArrayList<>() : new ArrayList<>(deleted.tailMap(version, false).values());
+        return new MealChanges(changed, deletedIds, current, reset);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.javawebinar.topjava.repository.inmemory;
+
+import java.util.*;
+
+/**
+ * Inverted index of one user's meal descriptions: lower-cased trigram -> meal ids.
+ * Candidates are a superset of matches, callers still check the substring.
+ */
+class TrigramIndex {
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+
+    synchronized void add(int id, String text) {
+        for (String trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(id);
+        }
+    }
+
+    synchronized void remove(int id, String text) {
+        for (String trigram : trigrams(text)) {
+            Set<Integer> ids = postings.get(trigram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    // null if text is shorter than a trigram and can't be narrowed by the index
+    synchronized Set<Integer> candidates(String text) {
+        Set<String> trigrams = trigrams(text);
+        if (trigrams.isEmpty()) {
+            return null;
+        }
+        List<Set<Integer>> lists = new ArrayList<>(trigrams.size());
+        for (String trigram : trigrams) {
+            Set<Integer> ids = postings.get(trigram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    static Set<String> trigrams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            trigrams.add(lower.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.junit.Test;
+import org.springframework.stereotype.Repository;
+import ru.javawebinar.topjava.repository.AnalyticsRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+import ru.javawebinar.topjava.util.ConcurrencyLimiter;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimitPostProcessorTest {
+
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2.0, 1000, 10);
+
+    private final ConcurrencyLimitPostProcessor postProcessor = new ConcurrencyLimitPostProcessor(limiter);
+
+    @Test
+    public void repositoryLimited() {
+        StubRepository repository = (StubRepository) postProcessor.postProcessAfterInitialization(new StubRepository(), "stub");
+        repository.call();
+        assertEquals(1, limiter.getAccepted());
+    }
+
+    @Test
+    public void excludedNotLimited() {
+        postProcessor.setExcludedTypes(AnalyticsRepository.class);
+        AnalyticsRepository analytics = new StubAnalyticsRepository();
+        assertSame(analytics, postProcessor.postProcessAfterInitialization(analytics, "analytics"));
+        assertNotSame(StubRepository.class, postProcessor.postProcessAfterInitialization(new StubRepository(), "stub").getClass());
+    }
+
+    @Repository
+    static class StubRepository {
+        void call() {
+        }
+    }
+
+    @Repository
+    static class StubAnalyticsRepository implements AnalyticsRepository {
+        @Override
+        public List<DayExcess> getExcessByDay(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void forEachUserExcess(LocalDateTime startDateTime, LocalDateTime endDateTime, Consumer<UserExcess> consumer) {
+        }
+    }
+}
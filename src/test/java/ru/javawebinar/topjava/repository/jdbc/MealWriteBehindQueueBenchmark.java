@@ -0,0 +1,90 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.util.LogHistogram;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+/**
+ * Meal inserts of concurrent writers: throughput and latency of synchronous {@link JdbcMealRepository#save}
+ * (one autocommit insert per meal) vs {@link MealWriteBehindQueue} group commits.
+ * Needs the database of {@code -Ddatabase.url} (topjava of localhost by default), populateDB.sql is run before each mode.
+ * <p>
+ * Usage: {@code MealWriteBehindQueueBenchmark [writers=32] [mealsPerWriter=500] [maxBatchSize=500] [maxDelayMillis=5]}
+ */
+public class MealWriteBehindQueueBenchmark {
+    private static final String URL = System.getProperty("database.url", "jdbc:postgresql://localhost:5432/topjava");
+    private static final String USERNAME = System.getProperty("database.username", "user");
+    private static final String PASSWORD = System.getProperty("database.password", "password");
+
+    private static final LocalDateTime START = LocalDateTime.of(2021, Month.JANUARY, 1, 0, 0);
+
+    public static void main(String[] args) throws InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int mealsPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int maxDelayMillis = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        JdbcMealRepository repository = new JdbcMealRepository(jdbcTemplate, new NamedParameterJdbcTemplate(jdbcTemplate));
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("db/populateDB.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+
+        System.out.printf("%d writers x %d meals%n", writers, mealsPerWriter);
+        System.out.printf("%-14s %10s %10s %10s %10s%n", "mode", "meals/s", "p50 us", "p99 us", "max us");
+        populator.execute(dataSource);
+        run("synchronous", writers, mealsPerWriter, meal -> repository.save(meal, USER_ID));
+        populator.execute(dataSource);
+        try (MealWriteBehindQueue queue = new MealWriteBehindQueue(repository, jdbcTemplate,
+                writers * 2, maxBatchSize, maxDelayMillis)) {
+            run("write-behind", writers, mealsPerWriter, meal -> queue.save(meal, USER_ID).join());
+            System.out.printf("write-behind: %d rows in %d batches%n", queue.getFlushedRows(), queue.getFlushedBatches());
+        }
+    }
+
+    private static void run(String mode, int writers, int mealsPerWriter, Save save) throws InterruptedException {
+        LogHistogram latencies = new LogHistogram();
+        AtomicInteger minutes = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(writers);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < mealsPerWriter; i++) {
+                    // a distinct dateTime per meal: (user_id, date_time) is unique
+                    Meal meal = new Meal(null, START.plusMinutes(minutes.getAndIncrement()), "Benchmark", 500);
+                    long start = System.nanoTime();
+                    save.save(meal);
+                    latencies.record(System.nanoTime() - start);
+                }
+                done.countDown();
+            }));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        done.await();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-14s %,10.0f %,10d %,10d %,10d%n", mode, writers * mealsPerWriter * 1e9 / nanos,
+                TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(latencies.getMax()));
+    }
+
+    @FunctionalInterface
+    private interface Save {
+        void save(Meal meal);
+    }
+}
@@ -0,0 +1,128 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.javawebinar.topjava.model.Meal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static ru.javawebinar.topjava.MealTestData.*;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+/**
+ * Needs the database of {@code -Ddatabase.url}, by default topjava of localhost
+ */
+public class MealWriteBehindQueueTest {
+    private static final String URL = System.getProperty("database.url", "jdbc:postgresql://localhost:5432/topjava");
+    private static final String USERNAME = System.getProperty("database.username", "user");
+    private static final String PASSWORD = System.getProperty("database.password", "password");
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcMealRepository repository;
+    private MealWriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("db/populateDB.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        repository = new JdbcMealRepository(jdbcTemplate, new NamedParameterJdbcTemplate(jdbcTemplate));
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void batches() throws Exception {
+        queue = new MealWriteBehindQueue(repository, jdbcTemplate, 100, 10, 200);
+        List<CompletableFuture<Meal>> saved = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            saved.add(queue.save(new Meal(null, getNew().getDateTime().plusMinutes(i), "Batched " + i, 100 + i), USER_ID));
+        }
+        saved.add(queue.save(getUpdated(), USER_ID));
+        saved.add(queue.save(getUpdated(), ADMIN_ID));
+        for (int i = 0; i < 50; i++) {
+            Meal meal = saved.get(i).get();
+            assertMatch(repository.get(meal.getId(), USER_ID), meal);
+        }
+        assertMatch(repository.get(MEAL1_ID, USER_ID), saved.get(50).get());
+        // a meal of another user is not found
+        assertThat(saved.get(51).get()).isNull();
+        assertThat(queue.getFlushedRows()).isEqualTo(52);
+        assertThat(queue.getFlushedBatches()).isBetween(6L, 51L);
+    }
+
+    @Test
+    public void retriesOneByOne() throws Exception {
+        queue = new MealWriteBehindQueue(repository, jdbcTemplate, 100, 10, 200);
+        CompletableFuture<Meal> created = queue.save(getNew(), USER_ID);
+        // the same dateTime as meal1: the group commit fails on the unique index, then only this write fails
+        CompletableFuture<Meal> duplicate = queue.save(new Meal(null, meal1.getDateTime(), "Дубль", 100), USER_ID);
+        CompletableFuture<Meal> updated = queue.save(getUpdated(), USER_ID);
+
+        assertMatch(repository.get(created.get().getId(), USER_ID), created.get());
+        assertMatch(repository.get(MEAL1_ID, USER_ID), updated.get());
+        assertThatThrownBy(duplicate::get).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(DataIntegrityViolationException.class);
+        assertThat(queue.getFlushedBatches()).isZero();
+    }
+
+    @Test
+    public void closeCommitsQueued() throws Exception {
+        // nothing is flushed by size or delay before close
+        queue = new MealWriteBehindQueue(repository, jdbcTemplate, 100, 100, 60_000);
+        List<CompletableFuture<Meal>> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(queue.save(new Meal(null, getNew().getDateTime().plusMinutes(i), "Queued " + i, 100), USER_ID));
+        }
+        queue.close();
+        for (CompletableFuture<Meal> future : saved) {
+            assertThat(future).isDone();
+            assertThat(repository.get(future.get().getId(), USER_ID)).isNotNull();
+        }
+        assertThatThrownBy(() -> queue.save(getNew(), USER_ID)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void closeWhileSaving() throws Exception {
+        queue = new MealWriteBehindQueue(repository, jdbcTemplate, 4, 2, 1);
+        List<CompletableFuture<Meal>> saved = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; ; i++) {
+                try {
+                    saved.add(queue.save(new Meal(null, getNew().getDateTime().plusMinutes(i), "Racing " + i, 100), USER_ID));
+                } catch (IllegalStateException e) {
+                    return;
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+        queue.close();
+        writer.join();
+        // every accepted write is committed, none is left hanging
+        for (CompletableFuture<Meal> future : saved) {
+            assertThat(future).isDone();
+            assertThat(future.get()).isNotNull();
+        }
+    }
+}
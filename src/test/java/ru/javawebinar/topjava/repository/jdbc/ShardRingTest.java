@@ -0,0 +1,56 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardRingTest {
+    private static final int USERS = 100_000;
+
+    private final ShardRing three = new ShardRing(Arrays.asList("shard1", "shard2", "shard3"), 128);
+
+    @Test
+    public void stable() {
+        ShardRing same = new ShardRing(Arrays.asList("shard3", "shard1", "shard2"), 128);
+        for (int userId = 0; userId < USERS; userId++) {
+            assertThat(same.shardOf(userId)).isEqualTo(three.shardOf(userId));
+        }
+        // fixed hashes: the placement must not change between releases
+        assertThat(three.shardOf(100000)).isEqualTo("shard1");
+        assertThat(three.shardOf(100001)).isEqualTo("shard2");
+        assertThat(three.shardOf(100002)).isEqualTo("shard3");
+    }
+
+    @Test
+    public void balanced() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int userId = 0; userId < USERS; userId++) {
+            counts.merge(three.shardOf(userId), 1, Integer::sum);
+        }
+        assertThat(counts).hasSize(3);
+        counts.values().forEach(count -> assertThat(count).isBetween(USERS / 3 * 8 / 10, USERS / 3 * 12 / 10));
+    }
+
+    @Test
+    public void addingShardMovesOnlyItsShare() {
+        ShardRing four = new ShardRing(Arrays.asList("shard1", "shard2", "shard3", "shard4"), 128);
+        int moved = 0;
+        for (int userId = 0; userId < USERS; userId++) {
+            String next = four.shardOf(userId);
+            if (!next.equals(three.shardOf(userId))) {
+                assertThat(next).isEqualTo("shard4");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(USERS / 4 * 8 / 10, USERS / 4 * 12 / 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void empty() {
+        new ShardRing(Arrays.asList(), 128);
+    }
+}
@@ -0,0 +1,155 @@
+package ru.javawebinar.topjava.repository.jdbc;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Needs the primary database and two shard databases of the same server:
+ * {@code -Dshard1.url=... -Dshard2.url=...}, by default topjava_shard1 and topjava_shard2 next to topjava
+ */
+public class ShardedMealRepositoryTest {
+    private static final String URL = System.getProperty("database.url", "jdbc:postgresql://localhost:5432/topjava");
+    private static final String USERNAME = System.getProperty("database.username", "user");
+    private static final String PASSWORD = System.getProperty("database.password", "password");
+
+    private static final int USERS = 40;
+    private static final LocalDateTime DATE_TIME = LocalDateTime.of(2020, Month.JANUARY, 30, 10, 0);
+
+    private final Map<String, JdbcTemplate> shards = new LinkedHashMap<>();
+    private JdbcTemplate primary;
+    private ShardedMealRepository repository;
+
+    @Before
+    public void setUp() {
+        primary = template(URL, "db/initDB.sql", "db/populateDB.sql");
+        shards.put("shard1", template(System.getProperty("shard1.url", URL + "_shard1"), "db/initShardDB.sql"));
+        shards.put("shard2", template(System.getProperty("shard2.url", URL + "_shard2"), "db/initShardDB.sql"));
+        repository = new ShardedMealRepository(primary, shards, new ShardRing(Arrays.asList("shard1"), 128));
+    }
+
+    @Test
+    public void routesByUser() {
+        for (int userId = 1; userId <= USERS; userId++) {
+            Meal saved = repository.save(new Meal(null, DATE_TIME, "Завтрак " + userId, 500), userId);
+            assertThat(repository.get(saved.getId(), userId)).isNotNull();
+            assertThat(repository.get(saved.getId(), userId + 1)).isNull();
+        }
+        assertThat(count("shard1")).isEqualTo(USERS);
+        assertThat(count("shard2")).isZero();
+    }
+
+    @Test
+    public void migrate() throws InterruptedException {
+        Meal[] meals = new Meal[USERS + 1];
+        for (int userId = 1; userId <= USERS; userId++) {
+            meals[userId] = repository.save(new Meal(null, DATE_TIME, "Завтрак " + userId, 500), userId);
+        }
+        MealChanges before = repository.getChangedSince(0, 1);
+
+        ShardRing next = new ShardRing(Arrays.asList("shard1", "shard2"), 128);
+        int moved = new ShardMigrator(repository, 0).migrate(next);
+        assertThat(moved).isPositive().isLessThan(USERS);
+        assertThat(count("shard2")).isEqualTo(moved);
+        assertThat(count("shard1")).isEqualTo(USERS - moved);
+        assertThat(repository.getRing()).isSameAs(next);
+        for (int userId = 1; userId <= USERS; userId++) {
+            assertThat(repository.get(meals[userId].getId(), userId).getDescription()).isEqualTo("Завтрак " + userId);
+        }
+        // the version of the old shard gets a full reload after the move
+        MealChanges after = repository.getChangedSince(before.getVersion(), 1);
+        assertThat(after.isReset()).isEqualTo(!next.shardOf(1).equals("shard1"));
+        // nothing left to move
+        assertThat(new ShardMigrator(repository, 0).migrate(next)).isZero();
+    }
+
+    @Test
+    public void movesSurviveRestart() throws InterruptedException {
+        Meal[] meals = new Meal[USERS + 1];
+        for (int userId = 1; userId <= USERS; userId++) {
+            meals[userId] = repository.save(new Meal(null, DATE_TIME, "Завтрак " + userId, 500), userId);
+        }
+        ShardRing next = new ShardRing(Arrays.asList("shard1", "shard2"), 128);
+        int moved = new ShardMigrator(repository, 0).migrate(next);
+
+        // restarted with the previous ring still configured
+        ShardedMealRepository restarted = new ShardedMealRepository(primary, shards, new ShardRing(Arrays.asList("shard1"), 128));
+        for (int userId = 1; userId <= USERS; userId++) {
+            assertThat(restarted.get(meals[userId].getId(), userId)).isNotNull();
+            restarted.save(new Meal(null, DATE_TIME.plusHours(1), "Обед " + userId, 1000), userId);
+        }
+        assertThat(count("shard2")).isEqualTo(2 * moved);
+        assertThat(new ShardMigrator(restarted, 0).migrate(next)).isZero();
+        assertThat(count("shard2")).isEqualTo(2 * moved);
+    }
+
+    @Test
+    public void movedBackGetsReset() throws InterruptedException {
+        ShardRing one = new ShardRing(Arrays.asList("shard1"), 128);
+        ShardRing two = new ShardRing(Arrays.asList("shard1", "shard2"), 128);
+        int userId = 1;
+        while (!two.shardOf(userId).equals("shard2")) {
+            userId++;
+        }
+        Meal kept = repository.save(new Meal(null, DATE_TIME, "Завтрак", 500), userId);
+        Meal deleted = repository.save(new Meal(null, DATE_TIME.plusHours(1), "Обед", 1000), userId);
+        MealChanges synced = repository.getChangedSince(0, userId);
+
+        new ShardMigrator(repository, 0).migrate(two);
+        repository.delete(deleted.getId(), userId);
+        new ShardMigrator(repository, 0).migrate(one);
+
+        // back in shard1 under the same tag, the tombstone was left in shard2
+        MealChanges changes = repository.getChangedSince(synced.getVersion(), userId);
+        assertThat(changes.isReset()).isTrue();
+        assertThat(changes.getChanged()).extracting(Meal::getId).containsExactly(kept.getId());
+        assertThat(repository.getChangedSince(changes.getVersion(), userId).isReset()).isFalse();
+    }
+
+    @Test
+    public void mergeReplacesStaleCopy() throws InterruptedException {
+        ShardRing next = new ShardRing(Arrays.asList("shard1", "shard2"), 128);
+        int userId = 1;
+        while (!next.shardOf(userId).equals("shard2")) {
+            userId++;
+        }
+        Meal meal = repository.save(new Meal(null, DATE_TIME, "Завтрак", 500), userId);
+        // left by an interrupted attempt: a copy of the meal and a meal deleted in the source since
+        JdbcTemplate target = shards.get("shard2");
+        target.update("INSERT INTO meals (id, user_id, date_time, description, calories) VALUES (?, ?, ?, 'Старый', 1)",
+                meal.getId(), userId, DATE_TIME);
+        target.update("INSERT INTO meals (id, user_id, date_time, description, calories) VALUES (?, ?, ?, 'Удалённый', 1)",
+                meal.getId() + 1_000_000, userId, DATE_TIME.plusHours(1));
+
+        assertThat(new ShardMigrator(repository, 0).migrate(next)).isPositive();
+        assertThat(repository.getAll(userId)).extracting(Meal::getDescription).containsExactly("Завтрак");
+    }
+
+    private int count(String shard) {
+        return shards.get(shard).queryForObject("SELECT count(*) FROM meals", Integer.class);
+    }
+
+    private static JdbcTemplate template(String url, String... scripts) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, USERNAME, PASSWORD);
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.setSqlScriptEncoding("UTF-8");
+        for (String script : scripts) {
+            populator.addScript(new ClassPathResource(script));
+        }
+        populator.execute(dataSource);
+        return new JdbcTemplate(dataSource);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.javawebinar.topjava.service;
+
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryMealRepository;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryUserRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scaling of {@link ForkJoinExcessCalculator#computeExcessByDay} over a quarter of meals with 1..N fork-join workers.
+ * <p>
+ * Usage: {@code AnalyticsServiceBenchmark [users=5_000] [days=90] [maxParallelism=availableProcessors]}
+ */
+public class AnalyticsServiceBenchmark {
+    private static final int MEALS_PER_DAY = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        int maxParallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        InMemoryMealRepository mealRepository = new InMemoryMealRepository();
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusDays(days - 1);
+        for (int u = 0; u < users; u++) {
+            User user = userRepository.save(new User(null, "User" + u, "user" + u + "@mail.ru", "password",
+                    1800 + u % 5 * 100, true, new Date(), Collections.singleton(Role.USER)));
+            for (int d = 0; d < days; d++) {
+                LocalDateTime day = start.plusDays(d).atStartOfDay();
+                for (int m = 0; m < MEALS_PER_DAY; m++) {
+                    mealRepository.save(new Meal(day.plusHours(8 + m * 5), "Еда", 400 + (u * 31 + d * 17 + m * 7) % 500), user.getId());
+                }
+            }
+        }
+        ForkJoinExcessCalculator calculator = new ForkJoinExcessCalculator(userRepository, mealRepository);
+        System.out.printf("%,d users, %,d meals, JVM processors: %d%n",
+                users, (long) users * days * MEALS_PER_DAY, Runtime.getRuntime().availableProcessors());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            calculator.computeExcessByDay(start, end, ForkJoinPool.commonPool(), user -> {
+            });
+        }
+        double single = 0;
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            long best = Long.MAX_VALUE;
+            List<DayExcess> result = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                LongAdder partials = new LongAdder();
+                long startNanos = System.nanoTime();
+                result = calculator.computeExcessByDay(start, end, pool, user -> partials.increment());
+                best = Math.min(best, System.nanoTime() - startNanos);
+            }
+            pool.shutdown();
+            double millis = best / 1e6;
+            if (parallelism == 1) {
+                single = millis;
+            }
+            System.out.printf("parallelism %2d: %8.1f ms, speedup %.2fx (%d days)%n",
+                    parallelism, millis, single / millis, result.size());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.javawebinar.topjava.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlConfig;
+import org.springframework.test.context.junit4.SpringRunner;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.repository.UserRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+@ContextConfiguration({
+        "classpath:spring/spring-app.xml",
+        "classpath:spring/spring-db.xml"
+})
+@RunWith(SpringRunner.class)
+@Sql(scripts = "classpath:db/populateDB.sql", config = @SqlConfig(encoding = "UTF-8"))
+public class AnalyticsServiceTest {
+    private static final LocalDate JAN_30 = LocalDate.of(2020, Month.JANUARY, 30);
+    private static final LocalDate JAN_31 = LocalDate.of(2020, Month.JANUARY, 31);
+
+    private static final List<DayExcess> EXCESS_BY_DAY = Arrays.asList(
+            new DayExcess(JAN_30, 1, 0),
+            new DayExcess(JAN_31, 2, 2));
+
+    private static final List<UserExcess> EXCESS_BY_USER = Arrays.asList(
+            new UserExcess(USER_ID, 2, 1),
+            new UserExcess(ADMIN_ID, 1, 1));
+
+    static {
+        SLF4JBridgeHandler.install();
+    }
+
+    @Autowired
+    private AnalyticsService service;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Test
+    public void getExcessByDay() {
+        assertThat(service.getExcessByDay(null, null)).usingRecursiveFieldByFieldElementComparator().isEqualTo(EXCESS_BY_DAY);
+        assertThat(service.getExcessByDay(JAN_31, null)).usingRecursiveFieldByFieldElementComparator()
+                .isEqualTo(EXCESS_BY_DAY.subList(1, 2));
+    }
+
+    @Test
+    public void forEachUserExcess() {
+        List<UserExcess> users = new ArrayList<>();
+        service.forEachUserExcess(JAN_30, JAN_31, users::add);
+        assertThat(users).usingRecursiveFieldByFieldElementComparator().isEqualTo(EXCESS_BY_USER);
+    }
+
+    // the set-based SQL agrees with the Java reference over the same data
+    @Test
+    public void computeExcessByDay() {
+        List<UserExcess> users = Collections.synchronizedList(new ArrayList<>());
+        List<DayExcess> days = new ForkJoinExcessCalculator(userRepository, mealRepository).computeExcessByDay(null, null, new ForkJoinPool(2), users::add);
+        assertThat(days).usingRecursiveFieldByFieldElementComparator().isEqualTo(EXCESS_BY_DAY);
+        users.sort(Comparator.comparingInt(UserExcess::getUserId));
+        assertThat(users).usingRecursiveFieldByFieldElementComparator().isEqualTo(EXCESS_BY_USER);
+    }
+}
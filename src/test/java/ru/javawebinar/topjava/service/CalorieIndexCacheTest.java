@@ -0,0 +1,131 @@
+package ru.javawebinar.topjava.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryMealRepository;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CalorieIndexCacheTest {
+    private static final int USER_ID = 1;
+    private static final LocalDate JAN_30 = LocalDate.of(2020, Month.JANUARY, 30);
+    private static final LocalDate JAN_31 = LocalDate.of(2020, Month.JANUARY, 31);
+
+    private final CountingRepository repository = new CountingRepository();
+    private Meal breakfast;
+    private Meal lunch;
+    private Meal dinner;
+
+    @Before
+    public void setUp() {
+        breakfast = repository.save(new Meal(null, JAN_30.atTime(10, 0), "Завтрак", 500), USER_ID);
+        lunch = repository.save(new Meal(null, JAN_30.atTime(13, 0), "Обед", 1000), USER_ID);
+        dinner = repository.save(new Meal(null, JAN_31.atTime(20, 0), "Ужин", 700), USER_ID);
+    }
+
+    @Test
+    public void followsWritesWithoutRebuild() {
+        MealService service = new MealService(repository);
+        assertThat(service.getCaloriesTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(2200);
+
+        Meal created = service.create(new Meal(null, JAN_31.atTime(23, 0), "Поздний ужин", 390), USER_ID);
+        service.update(new Meal(created.getId(), JAN_30.atTime(23, 0), "Поздний ужин", 400), USER_ID);
+        service.delete(breakfast.getId(), USER_ID);
+        assertThat(service.getCaloriesTotal(JAN_30, JAN_30, USER_ID).getCalories()).isEqualTo(1400);
+        service.delete(Arrays.asList(lunch.getId(), breakfast.getId()), USER_ID);
+        assertThat(service.getCaloriesTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(1100);
+        service.deleteBetweenInclusive(JAN_31, null, USER_ID);
+        assertThat(service.getCaloriesTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(400);
+        assertThat(repository.getAllCalls.get()).isEqualTo(1);
+        assertThat(repository.getCalls.get()).isZero();
+    }
+
+    @Test
+    public void buildDuringWriteNotInstalled() {
+        CalorieIndexCache cache = new CalorieIndexCache(repository, 10);
+        cache.begin(USER_ID);
+        Meal created = repository.save(new Meal(null, JAN_31.atTime(23, 0), "Поздний ужин", 390), USER_ID);
+        // the build reads the new meal before its completion
+        assertThat(cache.getTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(2590);
+        cache.created(created, USER_ID);
+        assertThat(cache.getTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(2590);
+        assertThat(cache.getTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(2590);
+        assertThat(repository.getAllCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void updateWithoutFormerDropsIndex() {
+        CalorieIndexCache cache = new CalorieIndexCache(repository, 10);
+        cache.getTotal(JAN_30, JAN_31, USER_ID);
+        // another write of the user in flight: the former meal is not asked for
+        cache.begin(USER_ID);
+        assertThat(cache.begin(USER_ID)).isFalse();
+        Meal updated = repository.save(new Meal(dinner.getId(), dinner.getDateTime(), "Ужин", 100), USER_ID);
+        cache.updated(null, updated, USER_ID);
+        cache.aborted(USER_ID);
+        assertThat(cache.getTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(1600);
+        assertThat(repository.getAllCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void otherUsersWritesDoNotBlockInstall() {
+        CalorieIndexCache cache = new CalorieIndexCache(repository, 10);
+        cache.begin(USER_ID + 256);
+        cache.getTotal(JAN_30, JAN_31, USER_ID);
+        assertThat(cache.begin(USER_ID)).isTrue();
+        cache.aborted(USER_ID);
+        assertThat(cache.getTotal(JAN_30, JAN_31, USER_ID).getCalories()).isEqualTo(2200);
+        assertThat(repository.getAllCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void writesInFlightNotEvicted() {
+        CalorieIndexCache cache = new CalorieIndexCache(repository, 1);
+        cache.begin(USER_ID + 1);
+        cache.getTotal(JAN_30, JAN_31, USER_ID);
+        assertThat(cache.size()).isEqualTo(2);
+        cache.aborted(USER_ID + 1);
+        cache.getTotal(JAN_30, JAN_31, USER_ID + 2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void evictsOne() {
+        CalorieIndexCache cache = new CalorieIndexCache(repository, 2);
+        cache.getTotal(JAN_30, JAN_31, USER_ID);
+        cache.getTotal(JAN_30, JAN_31, USER_ID + 1);
+        cache.getTotal(JAN_30, JAN_31, USER_ID + 2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    private static class CountingRepository extends InMemoryMealRepository {
+        final AtomicInteger getAllCalls = new AtomicInteger();
+        final AtomicInteger getCalls = new AtomicInteger();
+
+        @Override
+        public Meal get(int id, int userId) {
+            getCalls.incrementAndGet();
+            return super.get(id, userId);
+        }
+
+        @Override
+        public List<Meal> get(Collection<Integer> ids, int userId) {
+            getCalls.incrementAndGet();
+            return super.get(ids, userId);
+        }
+
+        @Override
+        public List<Meal> getAll(int userId) {
+            getAllCalls.incrementAndGet();
+            return super.getAll(userId);
+        }
+    }
+}
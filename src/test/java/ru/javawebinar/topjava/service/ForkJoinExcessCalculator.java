@@ -0,0 +1,124 @@
+package ru.javawebinar.topjava.service;
+
+import org.springframework.lang.Nullable;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.repository.UserRepository;
+import ru.javawebinar.topjava.to.DayExcess;
+import ru.javawebinar.topjava.to.UserExcess;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfDayOrMin;
+import static ru.javawebinar.topjava.util.DateTimeUtil.atStartOfNextDayOrMax;
+
+/**
+ * {@link AnalyticsService} statistics computed in Java over any {@link MealRepository}, one range read per user:
+ * the reference the set-based SQL is checked against, and the fork-join scaling of the benchmark.
+ */
+public class ForkJoinExcessCalculator {
+    // users per fork-join leaf: small enough to balance users with long and short histories
+    static final int USERS_PER_TASK = 16;
+
+    private final UserRepository userRepository;
+
+    private final MealRepository mealRepository;
+
+    public ForkJoinExcessCalculator(UserRepository userRepository, MealRepository mealRepository) {
+        this.userRepository = userRepository;
+        this.mealRepository = mealRepository;
+    }
+
+    /**
+     * Users are partitioned across the {@code pool},
+     * every user is passed to {@code partial} (concurrently, from the pool threads) as soon as it is computed.
+     */
+    public List<DayExcess> computeExcessByDay(@Nullable LocalDate startDate, @Nullable LocalDate endDate,
+                                              ForkJoinPool pool, Consumer<UserExcess> partial) {
+        List<User> users = userRepository.getAll();
+        ExcessTask task = new ExcessTask(users, 0, users.size(),
+                atStartOfDayOrMin(startDate), atStartOfNextDayOrMax(endDate), partial);
+        Map<LocalDate, int[]> byDay = new TreeMap<>(pool.invoke(task));
+        List<DayExcess> result = new ArrayList<>(byDay.size());
+        byDay.forEach((date, counts) -> result.add(new DayExcess(date, counts[0], counts[1])));
+        return result;
+    }
+
+    // date -> [users, excessUsers]
+    private class ExcessTask extends RecursiveTask<Map<LocalDate, int[]>> {
+        private final List<User> users;
+        private final int from;
+        private final int to;
+        private final LocalDateTime startDateTime;
+        private final LocalDateTime endDateTime;
+        private final Consumer<UserExcess> partial;
+
+        ExcessTask(List<User> users, int from, int to, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                   Consumer<UserExcess> partial) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+            this.startDateTime = startDateTime;
+            this.endDateTime = endDateTime;
+            this.partial = partial;
+        }
+
+        @Override
+        protected Map<LocalDate, int[]> compute() {
+            if (to - from <= USERS_PER_TASK) {
+                Map<LocalDate, int[]> byDay = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    addUser(users.get(i), byDay);
+                }
+                return byDay;
+            }
+            int middle = (from + to) >>> 1;
+            ExcessTask right = new ExcessTask(users, middle, to, startDateTime, endDateTime, partial);
+            right.fork();
+            Map<LocalDate, int[]> left = new ExcessTask(users, from, middle, startDateTime, endDateTime, partial).compute();
+            return merge(left, right.join());
+        }
+
+        private void addUser(User user, Map<LocalDate, int[]> byDay) {
+            Map<LocalDate, Integer> caloriesByDay = new HashMap<>();
+            for (Meal meal : mealRepository.getBetweenHalfOpen(startDateTime, endDateTime, user.getId())) {
+                caloriesByDay.merge(meal.getDate(), meal.getCalories(), Integer::sum);
+            }
+            if (caloriesByDay.isEmpty()) {
+                return;
+            }
+            int excessDays = 0;
+            for (Map.Entry<LocalDate, Integer> day : caloriesByDay.entrySet()) {
+                boolean excess = day.getValue() > user.getCaloriesPerDay();
+                int[] counts = byDay.computeIfAbsent(day.getKey(), date -> new int[2]);
+                counts[0]++;
+                if (excess) {
+                    counts[1]++;
+                    excessDays++;
+                }
+            }
+            partial.accept(new UserExcess(user.getId(), caloriesByDay.size(), excessDays));
+        }
+    }
+
+    private static Map<LocalDate, int[]> merge(Map<LocalDate, int[]> left, Map<LocalDate, int[]> right) {
+        Map<LocalDate, int[]> into = left.size() >= right.size() ? left : right;
+        Map<LocalDate, int[]> from = into == left ? right : left;
+        from.forEach((date, counts) -> into.merge(date, counts, (a, b) -> {
+            a[0] += b[0];
+            a[1] += b[1];
+            return a;
+        }));
+        return into;
+    }
+}
@@ -0,0 +1,246 @@
+package ru.javawebinar.topjava.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlConfig;
+import org.springframework.test.context.junit4.SpringRunner;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.jdbc.MealArchiver;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.to.MealChanges;
+import ru.javawebinar.topjava.util.exception.NotFoundException;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThrows;
+import static ru.javawebinar.topjava.MealTestData.*;
+import static ru.javawebinar.topjava.UserTestData.ADMIN_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+@ContextConfiguration({
+        "classpath:spring/spring-app.xml",
+        "classpath:spring/spring-db.xml"
+})
+@RunWith(SpringRunner.class)
+@Sql(scripts = "classpath:db/populateDB.sql", config = @SqlConfig(encoding = "UTF-8"))
+public class MealServiceTest {
+
+    static {
+        SLF4JBridgeHandler.install();
+    }
+
+    @Autowired
+    private MealService service;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void delete() {
+        service.delete(MEAL1_ID, USER_ID);
+        assertThrows(NotFoundException.class, () -> service.get(MEAL1_ID, USER_ID));
+    }
+
+    @Test
+    public void deleteNotFound() {
+        assertThrows(NotFoundException.class, () -> service.delete(NOT_FOUND, USER_ID));
+    }
+
+    @Test
+    public void deleteNotOwn() {
+        assertThrows(NotFoundException.class, () -> service.delete(MEAL1_ID, ADMIN_ID));
+    }
+
+    @Test
+    public void deleteByIds() {
+        assertEquals(2, service.delete(Arrays.asList(MEAL1_ID, MEAL1_ID + 1, ADMIN_MEAL_ID, NOT_FOUND), USER_ID));
+        assertMatch(service.getAll(USER_ID), meal7, meal6, meal5, meal4, meal3);
+        assertMatch(service.get(ADMIN_MEAL_ID, ADMIN_ID), adminMeal1);
+    }
+
+    @Test
+    public void deleteBetweenInclusive() {
+        assertEquals(3, service.deleteBetweenInclusive(
+                LocalDate.of(2020, Month.JANUARY, 30), LocalDate.of(2020, Month.JANUARY, 30), USER_ID));
+        assertMatch(service.getAll(USER_ID), meal7, meal6, meal5, meal4);
+        assertEquals(0, service.deleteBetweenInclusive(
+                LocalDate.of(2020, Month.JANUARY, 30), LocalDate.of(2020, Month.JANUARY, 30), USER_ID));
+    }
+
+    @Test
+    public void getCaloriesTotal() {
+        LocalDate jan30 = LocalDate.of(2020, Month.JANUARY, 30);
+        LocalDate jan31 = LocalDate.of(2020, Month.JANUARY, 31);
+        CaloriesTotal total = service.getCaloriesTotal(jan30, jan31, USER_ID);
+        assertEquals(4110, total.getCalories());
+        assertEquals(7, total.getMeals());
+        assertEquals(2055, total.getAveragePerDay(), 0);
+
+        // the cached index follows the writes
+        service.create(new Meal(null, jan31.atTime(23, 0), "Поздний ужин", 390), USER_ID);
+        assertEquals(4500, service.getCaloriesTotal(jan30, jan31, USER_ID).getCalories());
+        service.delete(MEAL1_ID, USER_ID);
+        assertEquals(4000, service.getCaloriesTotal(jan31, 7, USER_ID).getCalories());
+        service.update(new Meal(MEAL1_ID + 6, meal7.getDateTime(), meal7.getDescription(), 110), USER_ID);
+        assertEquals(3600, service.getCaloriesTotal(jan30, jan31, USER_ID).getCalories());
+        service.deleteBetweenInclusive(jan30, jan30, USER_ID);
+        assertEquals(2000, service.getCaloriesTotal(jan30, jan31, USER_ID).getCalories());
+        assertEquals(0, service.getCaloriesTotal(jan31.plusDays(1), 1, USER_ID).getMeals());
+    }
+
+    @Test
+    public void getByIds() {
+        assertMatch(service.get(Arrays.asList(MEAL1_ID, MEAL1_ID + 6, ADMIN_MEAL_ID), USER_ID), meal7, meal1);
+        assertMatch(service.get(Collections.emptyList(), USER_ID));
+    }
+
+    @Test
+    public void create() {
+        Meal created = service.create(getNew(), USER_ID);
+        int newId = created.getId();
+        Meal newMeal = getNew();
+        newMeal.setId(newId);
+        assertMatch(created, newMeal);
+        assertMatch(service.get(newId, USER_ID), newMeal);
+    }
+
+    @Test
+    public void duplicateDateTimeCreate() {
+        assertThrows(DataAccessException.class, () ->
+                service.create(new Meal(null, meal1.getDateTime(), "duplicate", 100), USER_ID));
+    }
+
+    @Test
+    public void get() {
+        Meal actual = service.get(ADMIN_MEAL_ID, ADMIN_ID);
+        assertMatch(actual, adminMeal1);
+    }
+
+    @Test
+    public void getNotFound() {
+        assertThrows(NotFoundException.class, () -> service.get(NOT_FOUND, USER_ID));
+    }
+
+    @Test
+    public void getNotOwn() {
+        assertThrows(NotFoundException.class, () -> service.get(MEAL1_ID, ADMIN_ID));
+    }
+
+    @Test
+    public void update() {
+        Meal updated = getUpdated();
+        service.update(updated, USER_ID);
+        assertMatch(service.get(MEAL1_ID, USER_ID), getUpdated());
+    }
+
+    @Test
+    public void updateNotOwn() {
+        assertThrows(NotFoundException.class, () -> service.update(meal1, ADMIN_ID));
+        assertMatch(service.get(MEAL1_ID, USER_ID), meal1);
+    }
+
+    @Test
+    public void getAll() {
+        assertMatch(service.getAll(USER_ID), meals);
+    }
+
+    @Test
+    public void archived() {
+        assertEquals(9, new MealArchiver(jdbcTemplate, 0, 0, 4, 0, 0).archive());
+        assertMatch(service.getAll(USER_ID), meals);
+        assertMatch(service.getBetweenInclusive(
+                LocalDate.of(2020, Month.JANUARY, 30), LocalDate.of(2020, Month.JANUARY, 30), USER_ID), meal3, meal2, meal1);
+        assertMatch(service.search("ужин", null, null, 0, 10, USER_ID), meal7, meal3);
+
+        service.update(getUpdated(), USER_ID);
+        assertMatch(service.get(MEAL1_ID, USER_ID), getUpdated());
+        service.delete(MEAL1_ID + 1, USER_ID);
+        assertThrows(NotFoundException.class, () -> service.get(MEAL1_ID + 1, USER_ID));
+        assertEquals(6, service.getAll(USER_ID).size());
+    }
+
+    @Test
+    public void archivedDuplicateDateTime() {
+        new MealArchiver(jdbcTemplate, 0, 0, 4, 0, 0).archive();
+        assertThrows(DataAccessException.class, () ->
+                service.create(new Meal(null, meal1.getDateTime(), "duplicate", 100), USER_ID));
+        // updated archived meal moves back to meals, the hot one would clash there
+        Meal hot = service.create(new Meal(null, meal1.getDateTime().plusMinutes(1), "hot", 100), USER_ID);
+        assertThrows(DataAccessException.class, () ->
+                service.update(new Meal(hot.getId(), meal2.getDateTime(), "hot", 100), USER_ID));
+        assertThrows(DataAccessException.class, () ->
+                service.update(new Meal(MEAL1_ID, hot.getDateTime(), "archived", 100), USER_ID));
+        assertEquals(meals.size() + 1, service.getAll(USER_ID).size());
+    }
+
+    @Test
+    public void getChangedSince() {
+        MealChanges initial = service.getChangedSince(0, USER_ID);
+        assertMatch(initial.getChanged(), meal1, meal2, meal3, meal4, meal5, meal6, meal7);
+
+        service.update(getUpdated(), USER_ID);
+        service.delete(MEAL1_ID + 1, USER_ID);
+        service.delete(ADMIN_MEAL_ID, ADMIN_ID);
+        MealChanges delta = service.getChangedSince(initial.getVersion(), USER_ID);
+        assertMatch(delta.getChanged(), getUpdated());
+        assertEquals(Collections.singletonList(MEAL1_ID + 1), delta.getDeleted());
+        assertFalse(delta.isReset());
+    }
+
+    @Test
+    public void getChangedSinceCompacted() {
+        MealChanges initial = service.getChangedSince(0, USER_ID);
+        service.delete(MEAL1_ID, USER_ID);
+        new MealArchiver(jdbcTemplate, 0, -1, 4, 0, 0).compactTombstones();
+        MealChanges changes = service.getChangedSince(initial.getVersion(), USER_ID);
+        assertTrue(changes.isReset());
+        assertMatch(changes.getChanged(), meal2, meal3, meal4, meal5, meal6, meal7);
+    }
+
+    @Test
+    public void getBetweenInclusive() {
+        assertMatch(service.getBetweenInclusive(
+                LocalDate.of(2020, Month.JANUARY, 30),
+                LocalDate.of(2020, Month.JANUARY, 30), USER_ID),
+                meal3, meal2, meal1);
+    }
+
+    @Test
+    public void getBetweenWithNullDates() {
+        assertMatch(service.getBetweenInclusive(null, null, USER_ID), meals);
+    }
+
+    @Test
+    public void search() {
+        assertMatch(service.search("завтрак", null, null, 0, 10, USER_ID), meal5, meal1);
+        assertMatch(service.search("ужин", LocalDate.of(2020, Month.JANUARY, 31), null, 0, 10, USER_ID), meal7);
+        assertMatch(service.search("ужин", null, null, 0, 10, ADMIN_ID), adminMeal2);
+    }
+
+    @Test
+    public void searchPaged() {
+        assertMatch(service.search("е", null, null, 1, 2, USER_ID), meal4, meal2);
+    }
+
+    @Test
+    public void searchEscapesWildcards() {
+        assertMatch(service.search("%", null, null, 0, 10, USER_ID));
+    }
+
+    @Test
+    public void searchEmpty() {
+        assertThrows(IllegalArgumentException.class, () -> service.search(" ", null, null, 0, 10, USER_ID));
+    }
+}
@@ -0,0 +1,147 @@
+package ru.javawebinar.topjava.service;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.javawebinar.topjava.MealTestData;
+import ru.javawebinar.topjava.UserTestData;
+import ru.javawebinar.topjava.repository.jdbc.JdbcMealRepository;
+import ru.javawebinar.topjava.repository.jdbc.JdbcUserRepository;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static ru.javawebinar.topjava.MealTestData.MEAL1_ID;
+import static ru.javawebinar.topjava.UserTestData.USER_ID;
+
+/**
+ * Connections, statements and commits per operation: repository calls (auto-commit, as before service transactions)
+ * vs. transactional service calls. Needs the database of postgres.properties, populateDB.sql is run before every operation.
+ */
+public class ServiceRoundTripsBenchmark {
+
+    private static final Counters counters = new Counters();
+
+    public static void main(String[] args) {
+        try (ConfigurableApplicationContext context =
+                     new ClassPathXmlApplicationContext("spring/spring-app.xml", "spring/spring-db.xml")) {
+            LazyConnectionDataSourceProxy dataSource = context.getBean(LazyConnectionDataSourceProxy.class);
+            dataSource.setTargetDataSource(counting(dataSource.getTargetDataSource()));
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                    false, false, "UTF-8", new ClassPathResource("db/populateDB.sql"));
+
+            JdbcUserRepository userRepository = context.getBean(JdbcUserRepository.class);
+            JdbcMealRepository mealRepository = context.getBean(JdbcMealRepository.class);
+            UserService userService = context.getBean(UserService.class);
+            MealService mealService = context.getBean(MealService.class);
+
+            System.out.printf("%-16s %28s   %28s%n", "", "repository (auto-commit)", "service (transactional)");
+            System.out.printf("%-16s %9s %9s %8s   %9s %9s %8s%n", "operation",
+                    "connects", "stmts", "commits", "connects", "stmts", "commits");
+            measure("user create", dataSource, populator,
+                    () -> userRepository.save(UserTestData.getNew()), () -> userService.create(UserTestData.getNew()));
+            measure("user update", dataSource, populator,
+                    () -> userRepository.save(UserTestData.getUpdated()), () -> userService.update(UserTestData.getUpdated()));
+            measure("user get", dataSource, populator,
+                    () -> userRepository.get(USER_ID), () -> userService.get(USER_ID));
+            measure("user getAll", dataSource, populator,
+                    userRepository::getAll, userService::getAll);
+            measure("meal get", dataSource, populator,
+                    () -> mealRepository.get(MEAL1_ID, USER_ID), () -> mealService.get(MEAL1_ID, USER_ID));
+            measure("meal getAll", dataSource, populator,
+                    () -> mealRepository.getAll(USER_ID), () -> mealService.getAll(USER_ID));
+            measure("meal create", dataSource, populator,
+                    () -> mealRepository.save(MealTestData.getNew(), USER_ID), () -> mealService.create(MealTestData.getNew(), USER_ID));
+            measure("meal update", dataSource, populator,
+                    () -> mealRepository.save(MealTestData.getUpdated(), USER_ID), () -> mealService.update(MealTestData.getUpdated(), USER_ID));
+            measure("meal sync", dataSource, populator,
+                    () -> mealRepository.getChangedSince(0, USER_ID), () -> mealService.getChangedSince(0, USER_ID));
+        }
+    }
+
+    private static void measure(String operation, DataSource dataSource, ResourceDatabasePopulator populator,
+                                Runnable before, Runnable after) {
+        populator.execute(dataSource);
+        counters.reset();
+        before.run();
+        String beforeCounts = counters.toString();
+        populator.execute(dataSource);
+        counters.reset();
+        after.run();
+        System.out.printf("%-16s %s   %s%n", operation, beforeCounts, counters);
+    }
+
+    private static DataSource counting(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(ServiceRoundTripsBenchmark.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (result instanceof Connection) {
+                        counters.connections++;
+                        return countingConnection((Connection) result);
+                    }
+                    return result;
+                });
+    }
+
+    private static Connection countingConnection(Connection target) {
+        boolean[] autoCommit = {true};
+        return (Connection) Proxy.newProxyInstance(ServiceRoundTripsBenchmark.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setAutoCommit":
+                            autoCommit[0] = (Boolean) args[0];
+                            break;
+                        case "commit":
+                            counters.commits++;
+                            break;
+                    }
+                    Object result = invoke(target, method, args);
+                    if (result instanceof Statement && method.getReturnType().isInterface()) {
+                        return countingStatement(result, method.getReturnType(), autoCommit);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object countingStatement(Object target, Class<?> type, boolean[] autoCommit) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                counters.statements++;
+                if (autoCommit[0]) {
+                    counters.commits++;
+                }
+            }
+            return invoke(target, method, args);
+        };
+        return Proxy.newProxyInstance(ServiceRoundTripsBenchmark.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class Counters {
+        int connections;
+        int statements;
+        int commits;
+
+        void reset() {
+            connections = statements = commits = 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%9d %9d %8d", connections, statements, commits);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import ru.javawebinar.topjava.util.exception.NotFoundException;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 import static ru.javawebinar.topjava.UserTestData.*;
 
@@ -44,6 +45,7 @@ public class UserServiceTest {
         newUser.setId(newId);
         assertMatch(created, newUser);
         assertMatch(service.get(newId), newUser);
+        assertEquals(newUser.getRoles(), service.get(newId).getRoles());
     }
 
     @Test
@@ -67,6 +69,7 @@ public class UserServiceTest {
     public void get() {
         User user = service.get(USER_ID);
         assertMatch(user, UserTestData.user);
+        assertEquals(UserTestData.user.getRoles(), user.getRoles());
     }
 
     @Test
@@ -85,6 +88,7 @@ public class UserServiceTest {
         User updated = getUpdated();
         service.update(updated);
         assertMatch(service.get(USER_ID), getUpdated());
+        assertEquals(getUpdated().getRoles(), service.get(USER_ID).getRoles());
     }
 
     @Test
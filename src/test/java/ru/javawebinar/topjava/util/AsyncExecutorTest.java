@@ -0,0 +1,88 @@
+package ru.javawebinar.topjava.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ru.javawebinar.topjava.util.exception.NotFoundException;
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.javawebinar.topjava.util.AsyncExecutor.await;
+
+public class AsyncExecutorTest {
+    private final AsyncExecutor executor = new AsyncExecutor("test", 1, 1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void supply() {
+        assertThat(await(executor.supply(() -> Thread.currentThread().getName()))).startsWith("test-");
+        Assert.assertThrows(NotFoundException.class, () -> await(executor.supply(() -> {
+            throw new NotFoundException("not found");
+        })));
+    }
+
+    @Test
+    public void deadlineInterruptsCall() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Boolean> future = AsyncExecutor.withDeadline(executor.supply(() -> {
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return false;
+            }
+        }), 50);
+        Assert.assertThrows(ServiceUnavailableException.class, () -> await(future));
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void cancelledWhileQueuedIsSkipped() throws InterruptedException {
+        CompletableFuture<Boolean> running = executor.supply(this::awaitRelease);
+        AtomicBoolean called = new AtomicBoolean();
+        CompletableFuture<Boolean> queued = executor.supply(() -> called.getAndSet(true));
+        queued.cancel(true);
+        release.countDown();
+        assertThat(await(running)).isTrue();
+        // the pool has one thread: a call submitted now runs after the skipped one
+        await(executor.supply(() -> true));
+        assertThat(called.get()).isFalse();
+    }
+
+    @Test
+    public void queueFull() {
+        executor.supply(this::awaitRelease);
+        executor.supply(this::awaitRelease);
+        Assert.assertThrows(ServiceUnavailableException.class, () -> await(executor.supply(() -> true)));
+    }
+
+    @Test
+    public void failedPartCancelsOthers() {
+        CompletableFuture<Boolean> slow = executor.supply(this::awaitRelease);
+        CompletableFuture<Boolean> failed = AsyncExecutor.callerRuns(() -> {
+            throw new NotFoundException("not found");
+        });
+        CompletableFuture<Boolean> composite = AsyncExecutor.failFast(slow.thenCombine(failed, Boolean::logicalAnd), slow, failed);
+        Assert.assertThrows(NotFoundException.class, () -> await(composite));
+        assertThat(slow.isCancelled()).isTrue();
+    }
+
+    private boolean awaitRelease() {
+        try {
+            return release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.javawebinar.topjava.util;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.javawebinar.topjava.MealTestData.*;
+
+public class CalorieIndexTest {
+    private static final LocalDate JAN_30 = LocalDate.of(2020, 1, 30);
+    private static final LocalDate JAN_31 = LocalDate.of(2020, 1, 31);
+
+    @Test
+    public void of() {
+        CalorieIndex index = CalorieIndex.of(meals);
+        assertTotal(index.getTotal(JAN_30, JAN_30), 2000, 3);
+        assertTotal(index.getTotal(JAN_31, JAN_31), 2110, 4);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 4110, 7);
+        assertTotal(index.getTotal(JAN_31.plusDays(1), LocalDate.MAX), 0, 0);
+        assertTotal(index.getTotal(JAN_31, JAN_30), 0, 0);
+        assertTotal(CalorieIndex.of(Collections.emptyList()).getTotal(JAN_30, JAN_31), 0, 0);
+    }
+
+    @Test
+    public void addAndRemove() {
+        CalorieIndex index = CalorieIndex.of(Arrays.asList(meal1, meal7));
+        index.add(JAN_31, 700, 1);
+        index.add(meal1.getDate(), meal1.getCalories(), -1);
+        assertTotal(index.getTotal(JAN_30, JAN_31), 1210, 2);
+        assertTotal(index.getTotal(JAN_30, JAN_30), 0, 0);
+    }
+
+    @Test
+    public void removeDays() {
+        CalorieIndex index = CalorieIndex.of(meals);
+        index.removeDays(JAN_31, JAN_31);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 2000, 3);
+        index.removeDays(JAN_31.plusYears(1), null);
+        assertTotal(index.getTotal(JAN_30, JAN_30), 2000, 3);
+        index.removeDays(null, JAN_30);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 0, 0);
+        index.add(JAN_31, 700, 1);
+        assertTotal(index.getTotal(JAN_30, JAN_31), 700, 1);
+    }
+
+    @Test
+    public void growsByDays() {
+        CalorieIndex index = new CalorieIndex();
+        index.add(JAN_30, 500, 1);
+        assertThat(index.getCapacity()).isEqualTo(16);
+        index.add(JAN_30.plusYears(1), 600, 1);
+        index.add(JAN_30.minusYears(3), 700, 1);
+        assertThat(index.getCapacity()).isEqualTo(16);
+        for (int i = 1; i <= 20; i++) {
+            index.add(JAN_30.minusDays(i), 10, 1);
+        }
+        assertThat(index.getCapacity()).isEqualTo(32);
+        assertTotal(index.getTotal(JAN_30.minusYears(3), JAN_30.minusYears(3)), 700, 1);
+        assertTotal(index.getTotal(JAN_30, JAN_30.plusYears(1)), 1100, 2);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 2000, 23);
+    }
+
+    @Test
+    public void extremeDates() {
+        LocalDate first = LocalDate.of(1, 1, 1);
+        Meal ancient = new Meal(first.atTime(10, 0), "", 100);
+        Meal future = new Meal(LocalDate.MAX.atTime(10, 0), "", 300);
+        CalorieIndex index = CalorieIndex.of(Arrays.asList(ancient, meal1, future));
+        assertThat(index.getCapacity()).isEqualTo(16);
+        index.add(LocalDate.MIN, 50, 1);
+        assertThat(index.getCapacity()).isEqualTo(16);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 950, 4);
+        assertTotal(index.getTotal(first, JAN_30), 600, 2);
+        assertTotal(index.getTotal(LocalDate.MAX, LocalDate.MAX), 300, 1);
+        index.removeDays(JAN_31, null);
+        assertTotal(index.getTotal(LocalDate.MIN, LocalDate.MAX), 650, 3);
+    }
+
+    @Test
+    public void sameAsSum() {
+        Random random = new Random(7);
+        List<Meal> meals = new ArrayList<>();
+        CalorieIndex index = new CalorieIndex();
+        for (int i = 0; i < 5_000; i++) {
+            Meal meal = new Meal(JAN_30.plusDays(random.nextInt(4000) - 2000).atTime(10, 0), "", random.nextInt(2000));
+            meals.add(meal);
+            index.add(meal.getDate(), meal.getCalories(), 1);
+        }
+        CalorieIndex built = CalorieIndex.of(meals);
+        for (int i = 0; i < 1_000; i++) {
+            LocalDate start = JAN_30.plusDays(random.nextInt(5000) - 2500);
+            LocalDate end = start.plusDays(random.nextInt(400));
+            long calories = meals.stream().filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end))
+                    .mapToLong(Meal::getCalories).sum();
+            long count = meals.stream().filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end)).count();
+            assertTotal(index.getTotal(start, end), calories, (int) count);
+            assertTotal(built.getTotal(start, end), calories, (int) count);
+        }
+    }
+
+    private static void assertTotal(CaloriesTotal total, long calories, int meals) {
+        assertThat(total.getCalories()).isEqualTo(calories);
+        assertThat(total.getMeals()).isEqualTo(meals);
+    }
+}
@@ -0,0 +1,88 @@
+package ru.javawebinar.topjava.util;
+
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ConcurrencyLimiter} in front of a simulated database serving {@code capacity} queries at a time (others queue):
+ * queries take 5 ms, 40 ms in the middle (slow) phase. Clients call in a loop with 5 ms think time.
+ * Without the limit (fixed at 1000) every accepted query waits in the database queue; with it, latency stays near
+ * the service time and the excess is shed fast.
+ * <p>
+ * Usage: {@code ConcurrencyLimiterBenchmark [clients=32] [capacity=4] [phaseSeconds=3]}
+ */
+public class ConcurrencyLimiterBenchmark {
+    private static final long[] PHASE_QUERY_MILLIS = {5, 40, 5};
+    private static final String[] PHASE_NAMES = {"normal", "slow", "recovered"};
+
+    private static volatile long queryMillis;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int phaseSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        System.out.printf("%d clients, database capacity %d%n", clients, capacity);
+        System.out.printf("%-9s %-10s %9s %9s %9s %9s %6s%n", "limit", "phase", "queries/s", "p50 ms", "p99 ms", "rejected", "limit");
+        run("fixed", new ConcurrencyLimiter(1000, 1000, 1000, 2.0, 5, 10), clients, capacity, phaseSeconds);
+        run("adaptive", new ConcurrencyLimiter(20, 2, 100, 2.0, 5, 10), clients, capacity, phaseSeconds);
+    }
+
+    private static void run(String name, ConcurrencyLimiter limiter, int clients, int capacity, int phaseSeconds) throws Exception {
+        Semaphore database = new Semaphore(capacity, true);
+        LogHistogram latency = new LogHistogram();
+        LongAdder rejected = new LongAdder();
+        queryMillis = PHASE_QUERY_MILLIS[0];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        long start = System.nanoTime();
+                        try {
+                            long limiterStart = limiter.acquire();
+                            try {
+                                database.acquire();
+                                try {
+                                    Thread.sleep(queryMillis);
+                                } finally {
+                                    database.release();
+                                }
+                            } finally {
+                                limiter.release(limiterStart);
+                            }
+                            latency.record(System.nanoTime() - start);
+                        } catch (ServiceUnavailableException e) {
+                            rejected.increment();
+                        }
+                        Thread.sleep(5);
+                    }
+                } catch (InterruptedException e) {
+                    // stop
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (int phase = 0; phase < PHASE_QUERY_MILLIS.length; phase++) {
+            queryMillis = PHASE_QUERY_MILLIS[phase];
+            // first second of a phase is the transition
+            Thread.sleep(1000);
+            latency.reset();
+            rejected.reset();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(phaseSeconds - 1));
+            System.out.printf("%-9s %-10s %9d %9.1f %9.1f %9d %6d%n", name, PHASE_NAMES[phase],
+                    latency.getCount() / (phaseSeconds - 1), latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+                    rejected.sum() / (phaseSeconds - 1), limiter.getLimit());
+        }
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
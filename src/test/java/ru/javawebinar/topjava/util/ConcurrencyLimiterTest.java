@@ -0,0 +1,104 @@
+package ru.javawebinar.topjava.util;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.util.exception.ServiceUnavailableException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void rejectOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2.0, 1000, 10);
+        long first = limiter.acquire();
+        limiter.acquire();
+        assertThrows(ServiceUnavailableException.class, limiter::acquire);
+        assertEquals(1, limiter.getRejected());
+        assertEquals(2, limiter.getInFlight());
+        limiter.release(first);
+        limiter.acquire();
+        assertEquals(3, limiter.getAccepted());
+    }
+
+    @Test
+    public void waitForRelease() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10, 2.0, 1000, 10_000);
+        long start = limiter.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> waiting = executor.submit(limiter::acquire);
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+            limiter.release(start);
+            waiting.get(5, TimeUnit.SECONDS);
+            assertEquals(0, limiter.getRejected());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void decreaseOnSlowCalls() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 2.0, 1, 10);
+        for (int i = 0; i < 3; i++) {
+            limiter.release(limiter.acquire());
+        }
+        assertEquals(10, limiter.getLimit());
+        // 10 * 0.9^3 = 7.29
+        for (int i = 0; i < 3; i++) {
+            long start = limiter.acquire();
+            Thread.sleep(20);
+            limiter.release(start);
+        }
+        assertEquals(3, limiter.getSlow());
+        assertEquals(7, limiter.getLimit());
+        for (int i = 0; i < 30; i++) {
+            long start = limiter.acquire();
+            Thread.sleep(20);
+            limiter.release(start);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void increaseWhenFullyUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 3, 2.0, 1000, 10);
+        // only calls completing at the limit raise it: 2 -> 2.5 -> 2.9 -> 3 (capped)
+        for (int i = 0; i < 10; i++) {
+            long first = limiter.acquire();
+            long second = limiter.acquire();
+            limiter.release(first);
+            limiter.release(second);
+        }
+        assertEquals(3, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limiter.release(limiter.acquire());
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void replacedRegistrationSurvivesUnregister() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("ru.javawebinar.topjava:type=ConcurrencyLimiter,name=\"test\"");
+        ConcurrencyLimiter old = new ConcurrencyLimiter(1, 1, 10, 2.0, 1000, 10);
+        ConcurrencyLimiter current = new ConcurrencyLimiter(7, 1, 10, 2.0, 1000, 10);
+        old.setName("test");
+        current.setName("test");
+        old.register();
+        current.register();
+        // closing the replaced one (e.g. an older context) keeps the current registration
+        old.unregister();
+        assertEquals(7, server.getAttribute(name, "Limit"));
+        current.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+}
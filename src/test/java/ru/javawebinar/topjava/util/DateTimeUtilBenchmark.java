@@ -0,0 +1,87 @@
+package ru.javawebinar.topjava.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Throughput of the {@link DateTimeUtil} codec vs the java.time parser and formatter it replaced,
+ * over distinct minute-resolution values (format cache misses) and over a repeated page of them (format cache hits).
+ * <p>
+ * Usage: {@code DateTimeUtilBenchmark [values=100_000] [seconds=2]}
+ */
+public class DateTimeUtilBenchmark {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // results are summed into it, so that the JIT can't drop the calls
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long nanos = (args.length > 1 ? Long.parseLong(args[1]) : 2) * 1_000_000_000L;
+
+        LocalDateTime[] values = new LocalDateTime[count];
+        String[] iso = new String[count];
+        String[] formatted = new String[count];
+        String[] dates = new String[count];
+        String[] times = new String[count];
+        LocalDateTime start = LocalDateTime.of(2015, 1, 1, 8, 0);
+        for (int i = 0; i < count; i++) {
+            values[i] = start.plusMinutes(317L * i);
+            iso[i] = values[i].toString();
+            formatted[i] = values[i].format(FORMATTER);
+            dates[i] = values[i].toLocalDate().toString();
+            times[i] = values[i].toLocalTime().toString();
+        }
+
+        for (int round = 0; round < 2; round++) {
+            // the first round is a warm-up
+            boolean print = round > 0;
+            compare(print, "format", nanos, count,
+                    i -> values[i].format(FORMATTER).length(),
+                    i -> DateTimeUtil.toString(values[i]).length());
+            // a page of 500 rows rendered again and again: cache hits
+            compare(print, "format, repeated page", nanos, count,
+                    i -> values[i % 500].format(FORMATTER).length(),
+                    i -> DateTimeUtil.toString(values[i % 500]).length());
+            compare(print, "parse dateTime", nanos, count,
+                    i -> LocalDateTime.parse(iso[i]).getMinute(),
+                    i -> DateTimeUtil.parseLocalDateTime(iso[i]).getMinute());
+            compare(print, "parse yyyy-MM-dd HH:mm", nanos, count,
+                    i -> LocalDateTime.parse(formatted[i], FORMATTER).getMinute(),
+                    i -> DateTimeUtil.parseLocalDateTime(formatted[i]).getMinute());
+            compare(print, "parse date", nanos, count,
+                    i -> LocalDate.parse(dates[i]).getDayOfMonth(),
+                    i -> DateTimeUtil.parseLocalDate(dates[i]).getDayOfMonth());
+            compare(print, "parse time", nanos, count,
+                    i -> LocalTime.parse(times[i]).getMinute(),
+                    i -> DateTimeUtil.parseLocalTime(times[i]).getMinute());
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void compare(boolean print, String name, long nanos, int count, IntUnaryOperator javaTime, IntUnaryOperator codec) {
+        double before = opsPerSecond(javaTime, nanos, count);
+        double after = opsPerSecond(codec, nanos, count);
+        if (print) {
+            System.out.printf("%-24s java.time %,12.0f ops/s, DateTimeUtil %,12.0f ops/s, x%.1f%n", name, before, after, after / before);
+        }
+    }
+
+    private static double opsPerSecond(IntUnaryOperator call, long nanos, int count) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < count; i++) {
+                sink += call.applyAsInt(i);
+            }
+            ops += count;
+        } while ((elapsed = System.nanoTime() - start) < nanos);
+        return ops * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.javawebinar.topjava.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DateTimeUtilTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Test
+    public void sameAsJavaTime() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            LocalDateTime ldt = LocalDateTime.of(1 + random.nextInt(9999), 1, 1, 0, 0)
+                    .plusDays(random.nextInt(366)).plusMinutes(random.nextInt(1440));
+            String text = ldt.format(FORMATTER);
+            assertThat(DateTimeUtil.toString(ldt)).isEqualTo(text);
+            // again, from the cache
+            assertThat(DateTimeUtil.toString(ldt)).isEqualTo(text);
+            assertThat(DateTimeUtil.parseLocalDateTime(text)).isEqualTo(ldt);
+            assertThat(DateTimeUtil.parseLocalDateTime(ldt.toString())).isEqualTo(LocalDateTime.parse(ldt.toString()));
+            assertThat(DateTimeUtil.parseLocalDate(ldt.toLocalDate().toString())).isEqualTo(ldt.toLocalDate());
+            assertThat(DateTimeUtil.parseLocalTime(ldt.toLocalTime().toString())).isEqualTo(ldt.toLocalTime());
+        }
+    }
+
+    @Test
+    public void otherShapes() {
+        assertThat(DateTimeUtil.toString(LocalDateTime.of(2020, 1, 30, 10, 0, 59))).isEqualTo("2020-01-30 10:00");
+        assertThat(DateTimeUtil.toString(LocalDateTime.of(0, 1, 30, 10, 0)))
+                .isEqualTo(LocalDateTime.of(0, 1, 30, 10, 0).format(FORMATTER));
+        assertThat(DateTimeUtil.toString(null)).isEmpty();
+        assertThat(DateTimeUtil.parseLocalDateTime("2020-01-30T10:00:30")).isEqualTo(LocalDateTime.of(2020, 1, 30, 10, 0, 30));
+        assertThat(DateTimeUtil.parseLocalTime("10:00:30")).isEqualTo(LocalTime.of(10, 0, 30));
+        assertThat(DateTimeUtil.parseLocalDate("2020-02-29")).isEqualTo(LocalDate.of(2020, 2, 29));
+        assertThat(DateTimeUtil.parseLocalDate("")).isNull();
+        assertThat(DateTimeUtil.parseLocalTime(null)).isNull();
+    }
+
+    @Test
+    public void invalid() {
+        for (String date : new String[]{"2019-02-29", "2020-13-01", "2020-01-32", "2020-1-30", "2020/01/30", "２０２０-01-30"}) {
+            Assert.assertThrows(DateTimeParseException.class, () -> DateTimeUtil.parseLocalDate(date));
+        }
+        for (String time : new String[]{"24:00", "10:60", "1:00", "10-00"}) {
+            Assert.assertThrows(DateTimeParseException.class, () -> DateTimeUtil.parseLocalTime(time));
+        }
+        for (String dateTime : new String[]{"2020-01-30X10:00", "2020-01-30T24:00", "2020-02-30 10:00", "2020-01-30"}) {
+            Assert.assertThrows(DateTimeParseException.class, () -> DateTimeUtil.parseLocalDateTime(dateTime));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.javawebinar.topjava.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SingleFlightTest {
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void concurrentCallsCoalesced() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                return computations.incrementAndGet();
+            }));
+            started.await();
+            Future<Integer> follower1 = executor.submit(() -> singleFlight.execute("key", computations::incrementAndGet));
+            Future<Integer> follower2 = executor.submit(() -> singleFlight.execute("key", computations::incrementAndGet));
+            while (singleFlight.getCoalesced() < 2) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            assertEquals(1, (int) leader.get());
+            assertEquals(1, (int) follower1.get());
+            assertEquals(1, (int) follower2.get());
+            assertEquals(1, computations.get());
+            assertEquals(3, singleFlight.getCalls());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidatedNotJoined() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> stale = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                return 1;
+            }));
+            started.await();
+            singleFlight.invalidate("key"::equals);
+            assertEquals(2, (int) singleFlight.execute("key", () -> 2));
+            release.countDown();
+            assertEquals(1, (int) stale.get());
+            assertEquals(0, singleFlight.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failurePropagated() {
+        singleFlight.execute("key", () -> {
+            throw new IllegalStateException();
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ru.javawebinar.topjava.web;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class GzipFilterTest {
+    private static final int MIN_SIZE = 64;
+
+    private final GzipFilter filter = new GzipFilter();
+
+    @Before
+    public void setUp() {
+        MockFilterConfig config = new MockFilterConfig();
+        config.addInitParameter("minSize", String.valueOf(MIN_SIZE));
+        filter.init(config);
+    }
+
+    @Test
+    public void small() throws Exception {
+        byte[] body = bytes(MIN_SIZE / 2);
+        MockHttpServletResponse response = filter((req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(body);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentLength()).isEqualTo(body.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void large() throws Exception {
+        byte[] body = bytes(MIN_SIZE * 10);
+        MockHttpServletResponse response = filter((req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(body);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getHeader("Content-Length")).isNull();
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+    }
+
+    @Test
+    public void largeNotCompressible() throws Exception {
+        byte[] body = bytes(MIN_SIZE * 10);
+        MockHttpServletResponse response = filter((req, res) -> {
+            res.setContentType("image/png");
+            res.getOutputStream().write(body);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void writer() throws Exception {
+        String text = new String(bytes(MIN_SIZE * 10), StandardCharsets.UTF_8) + "Завтрак";
+        MockHttpServletResponse response = filter((req, res) -> {
+            res.setContentType("text/plain");
+            res.setCharacterEncoding("UTF-8");
+            res.getWriter().write(text);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(new String(gunzip(response.getContentAsByteArray()), StandardCharsets.UTF_8)).isEqualTo(text);
+    }
+
+    @Test
+    public void earlyFlush() throws Exception {
+        byte[] first = bytes(MIN_SIZE / 4);
+        byte[] rest = bytes(MIN_SIZE * 2);
+        MockHttpServletResponse response = filter((req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(first);
+            res.flushBuffer();
+            res.getOutputStream().write(rest);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getHeader("Content-Length")).isNull();
+        assertThat(response.getContentAsByteArray()).hasSize(first.length + rest.length);
+    }
+
+    @Test
+    public void sendError() throws Exception {
+        MockHttpServletResponse response = filter((req, res) -> ((javax.servlet.http.HttpServletResponse) res).sendError(404, "Not found"));
+        assertThat(response.getStatus()).isEqualTo(404);
+        assertThat(response.getErrorMessage()).isEqualTo("Not found");
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+    }
+
+    @Test
+    public void notAccepted() throws Exception {
+        byte[] body = bytes(MIN_SIZE * 10);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/meals");
+        MockHttpServletResponse response = new Response();
+        filter.doFilter(request, response, (req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(body);
+        });
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void writeListenerAfterWrite() throws Exception {
+        filter((req, res) -> {
+            res.getOutputStream().write(1);
+            assertThrows(IllegalStateException.class, () -> res.getOutputStream().setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+            }));
+        });
+    }
+
+    private MockHttpServletResponse filter(FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/meals");
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        MockHttpServletResponse response = new Response();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    // the mock parses the content type with spring-web MediaType, not on this classpath
+    private static class Response extends MockHttpServletResponse {
+        private String contentType;
+
+        @Override
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    // compressible ASCII
+    private static byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int read; (read = in.read(chunk)) > 0; ) {
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.javawebinar.topjava.web;
+
+import ru.javawebinar.topjava.to.MealTo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Render time and bytes of a meals.jsp table: uncached rows (as the former {@code <c:forEach>}) vs {@link MealRowCache}.
+ * <p>
+ * Usage: {@code MealRowCacheBenchmark [rows=10_000]}
+ */
+public class MealRowCacheBenchmark {
+    private static final String[] DESCRIPTIONS = {"Завтрак", "Обед", "Ужин"};
+    private static final int ITERATIONS = 200;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        List<MealTo> meals = new ArrayList<>(rows);
+        LocalDateTime start = LocalDateTime.of(2015, Month.JANUARY, 1, 8, 0);
+        for (int i = 0; i < rows; i++) {
+            meals.add(new MealTo(100_000 + i, start.plusHours(5L * i), DESCRIPTIONS[i % 3], 300 + i % 700, i % 7 == 0));
+        }
+
+        MealRowCache uncached = new MealRowCache(0);
+        MealRowCache cached = new MealRowCache(100_000);
+        for (int i = 0; i < ITERATIONS; i++) {
+            render(uncached, meals);
+            render(cached, meals);
+        }
+        System.out.printf("uncached render: %,d us/page%n", time(uncached, meals) / 1000);
+        System.out.printf("cached render:   %,d us/page%n", time(cached, meals) / 1000);
+
+        byte[] page = render(cached, meals).toByteArray();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(page);
+        }
+        System.out.printf("table bytes:     %,d plain, %,d gzip%n", page.length, compressed.size());
+    }
+
+    private static long time(MealRowCache cache, List<MealTo> meals) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            render(cache, meals);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static ByteArrayOutputStream render(MealRowCache cache, List<MealTo> meals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 << 20);
+        // like the JSP writer: buffered chars over the response byte stream
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8), 32 << 10)) {
+            cache.writeRows(meals, out);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.javawebinar.topjava.web;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.to.MealTo;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static ru.javawebinar.topjava.MealTestData.meal1;
+
+public class MealRowCacheTest {
+    private final MealRowCache cache = new MealRowCache(10);
+
+    @Test
+    public void render() throws IOException {
+        StringWriter out = new StringWriter();
+        cache.writeRows(Arrays.asList(to("<b>Завтрак</b> & \"кофе\"", false)), out);
+        assertEquals("<tr data-mealExcess=\"false\">\n" +
+                "    <td>2020-01-30 10:00</td>\n" +
+                "    <td>&lt;b&gt;Завтрак&lt;/b&gt; &amp; &#34;кофе&#34;</td>\n" +
+                "    <td>500</td>\n" +
+                "    <td><a href=\"meals?action=update&id=100002\">Update</a></td>\n" +
+                "    <td><a href=\"meals?action=delete&id=100002\">Delete</a></td>\n" +
+                "</tr>\n", out.toString());
+    }
+
+    @Test
+    public void cachedWhileVersionUnchanged() {
+        String row = cache.getRow(to("Завтрак", false));
+        assertSame(row, cache.getRow(to("Завтрак", false)));
+        String excessRow = cache.getRow(to("Завтрак", true));
+        assertNotSame(row, excessRow);
+        assertTrue(excessRow.contains("data-mealExcess=\"true\""));
+        assertNotSame(excessRow, cache.getRow(to("Поздний завтрак", true)));
+    }
+
+    private static MealTo to(String description, boolean excess) {
+        return new MealTo(meal1.getId(), meal1.getDateTime(), description, meal1.getCalories(), excess);
+    }
+}
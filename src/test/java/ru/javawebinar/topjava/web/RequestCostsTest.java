@@ -0,0 +1,77 @@
+package ru.javawebinar.topjava.web;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class RequestCostsTest {
+    private final RequestCosts requestCosts = new RequestCosts("testServlet", Long.MAX_VALUE);
+
+    @After
+    public void unregister() {
+        requestCosts.unregister();
+    }
+
+    @Test
+    public void record() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/meals");
+        for (int i = 0; i < 3; i++) {
+            long allocatedBytes = requestCosts.allocatedBytes();
+            long cpuTime = requestCosts.cpuTime();
+            long[] allocated = new long[128 * 1024];
+            assertEquals(0, allocated[allocated.length - 1]);
+            requestCosts.record("GET filter", allocatedBytes, cpuTime, request);
+        }
+        requestCosts.record("GET all", requestCosts.allocatedBytes(), requestCosts.cpuTime(), request);
+
+        List<RequestCosts.ActionCosts> actions = requestCosts.getActions();
+        assertEquals(2, actions.size());
+        assertEquals("GET all", actions.get(0).getAction());
+        RequestCosts.ActionCosts filter = actions.get(1);
+        assertEquals("GET filter", filter.getAction());
+        assertEquals(3, filter.getRequests());
+        assertThat(filter.getAllocatedBytesMean()).isGreaterThanOrEqualTo(1024 * 1024);
+        assertThat(filter.getAllocatedBytesP99()).isGreaterThanOrEqualTo(1024 * 1024);
+        assertThat(actions.get(0).getAllocatedBytesMax()).isLessThan(1024 * 1024);
+
+        requestCosts.reset();
+        assertEquals(0, requestCosts.getActions().get(1).getRequests());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        requestCosts.register();
+        requestCosts.record("GET all", requestCosts.allocatedBytes(), requestCosts.cpuTime(), new MockHttpServletRequest());
+        ObjectName name = new ObjectName("ru.javawebinar.topjava:type=RequestCosts,servlet=\"testServlet\"");
+        CompositeData[] actions = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Actions");
+        assertEquals(1, actions.length);
+        assertEquals("GET all", actions[0].get("action"));
+        assertEquals(1L, actions[0].get("requests"));
+    }
+
+    @Test
+    public void boundedActions() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/meals");
+        request.setParameter("action", "no-such-action");
+        assertEquals("GET all", MealServlet.getAction(request));
+        request.setMethod("POST");
+        assertEquals("POST create", MealServlet.getAction(request));
+        request.setMethod("PROPFIND");
+        assertEquals(RequestCosts.OTHER, MealServlet.getAction(request));
+
+        for (int i = 0; i < RequestCosts.MAX_ACTIONS + 10; i++) {
+            requestCosts.record("GET " + i, requestCosts.allocatedBytes(), requestCosts.cpuTime(), request);
+        }
+        List<RequestCosts.ActionCosts> actions = requestCosts.getActions();
+        assertEquals(RequestCosts.MAX_ACTIONS + 1, actions.size());
+        assertEquals(10, actions.stream().filter(a -> a.getAction().equals(RequestCosts.OTHER)).findFirst().get().getRequests());
+    }
+}
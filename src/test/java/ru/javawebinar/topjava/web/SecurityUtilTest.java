@@ -0,0 +1,58 @@
+package ru.javawebinar.topjava.web;
+
+import org.junit.After;
+import org.junit.Test;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.service.UserChangedEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static ru.javawebinar.topjava.UserTestData.*;
+import static ru.javawebinar.topjava.util.MealsUtil.DEFAULT_CALORIES_PER_DAY;
+
+public class SecurityUtilTest {
+    private final AuthorizedUserRefresher refresher = new AuthorizedUserRefresher();
+
+    @After
+    public void tearDown() {
+        SecurityUtil.clear();
+        SecurityUtil.evict(USER_ID);
+    }
+
+    @Test
+    public void defaultWithoutLogin() {
+        assertEquals(USER_ID, SecurityUtil.authUserId());
+        assertEquals(DEFAULT_CALORIES_PER_DAY, SecurityUtil.authUserCaloriesPerDay());
+    }
+
+    @Test
+    public void refreshedOnUpdate() {
+        AuthorizedUser session = SecurityUtil.login(getUpdated());
+        SecurityUtil.set(session);
+        assertEquals(330, SecurityUtil.authUserCaloriesPerDay());
+
+        User updated = getUpdated();
+        updated.setCaloriesPerDay(1800);
+        refresher.onUserChanged(new UserChangedEvent(USER_ID, updated));
+        assertEquals(1800, SecurityUtil.authUserCaloriesPerDay());
+        assertEquals(1800, session.getCaloriesPerDay());
+    }
+
+    @Test
+    public void revokedOnDelete() {
+        AuthorizedUser session = SecurityUtil.login(user);
+        refresher.onUserChanged(new UserChangedEvent(USER_ID, null));
+        // the session still holds the context, it is not bound any more
+        assertNull(SecurityUtil.set(session));
+        assertNull(SecurityUtil.set(new AuthorizedUser(USER_ID, 100)));
+        assertEquals(DEFAULT_CALORIES_PER_DAY, SecurityUtil.authUserCaloriesPerDay());
+    }
+
+    @Test
+    public void deserializedSessionSharesContext() {
+        AuthorizedUser shared = SecurityUtil.login(user);
+        assertSame(shared, SecurityUtil.set(new AuthorizedUser(USER_ID, 100)));
+        assertEquals(user.getCaloriesPerDay(), SecurityUtil.authUserCaloriesPerDay());
+    }
+}
@@ -0,0 +1,62 @@
+package ru.javawebinar.topjava.web.json;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalDate;
+import static ru.javawebinar.topjava.util.DateTimeUtil.parseLocalTime;
+
+/**
+ * Request parameters the JSON servlets cannot parse are answered with 400, not 500
+ */
+public class AbstractJsonServletTest {
+    private final AbstractJsonServlet servlet = new AbstractJsonServlet() {
+        // the parameters of MealJsonServlet and of the AdminUserJsonServlet reports
+        @Override
+        protected void writeGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            parseLocalDate(request.getParameter("startDate"));
+            parseLocalTime(request.getParameter("startTime"));
+            getPathId(request);
+            response.getWriter().write("[]");
+        }
+    };
+
+    @Test
+    public void valid() throws Exception {
+        assertThat(get(null, "startDate", "2020-01-30", "startTime", "10:00").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void badDate() throws Exception {
+        MockHttpServletResponse response = get(null, "startDate", "2020-13-01");
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(response.getErrorMessage()).contains("2020-13-01");
+    }
+
+    @Test
+    public void badTime() throws Exception {
+        assertThat(get(null, "startTime", "25:00").getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    public void badId() throws Exception {
+        assertThat(get("/abc").getStatus()).isEqualTo(400);
+    }
+
+    private MockHttpServletResponse get(String pathInfo, String... parameters) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/profile/meals");
+        request.setPathInfo(pathInfo);
+        for (int i = 0; i < parameters.length; i += 2) {
+            request.addParameter(parameters[i], parameters[i + 1]);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        servlet.service(request, response);
+        return response;
+    }
+}
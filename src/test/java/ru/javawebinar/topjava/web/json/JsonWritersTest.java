@@ -0,0 +1,64 @@
+package ru.javawebinar.topjava.web.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Test;
+import ru.javawebinar.topjava.to.CaloriesTotal;
+import ru.javawebinar.topjava.to.MealChanges;
+import ru.javawebinar.topjava.to.MealTo;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static ru.javawebinar.topjava.MealTestData.meal1;
+import static ru.javawebinar.topjava.UserTestData.admin;
+
+public class JsonWritersTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void writeMealTo() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            MealJsonServlet.writeMealTo(json, new MealTo(meal1.getId(), meal1.getDateTime(), "Завтрак \"дома\"", 500, true));
+        }
+        assertEquals("{\"id\":100002,\"dateTime\":\"2020-01-30T10:00\",\"description\":\"Завтрак \\\"дома\\\"\"," +
+                "\"calories\":500,\"excess\":true}", out.toString());
+    }
+
+    @Test
+    public void writeChanges() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            MealJsonServlet.writeChanges(json, new MealChanges(Collections.singletonList(meal1), Arrays.asList(7, 8), 42, false));
+        }
+        assertEquals("{\"version\":42,\"reset\":false,\"changed\":[{\"id\":100002,\"dateTime\":\"2020-01-30T10:00\"," +
+                "\"description\":\"Завтрак\",\"calories\":500}],\"deleted\":[7,8]}", out.toString());
+    }
+
+    @Test
+    public void writeCaloriesTotal() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            MealJsonServlet.writeCaloriesTotal(json, new CaloriesTotal(LocalDate.of(2020, 1, 25), LocalDate.of(2020, 1, 31), 6110, 9));
+        }
+        assertEquals("{\"startDate\":\"2020-01-25\",\"endDate\":\"2020-01-31\",\"calories\":6110,\"meals\":9," +
+                "\"averagePerDay\":872.8571428571429}", out.toString());
+    }
+
+    @Test
+    public void writeUserWithoutPassword() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            AdminUserJsonServlet.writeUser(json, admin);
+        }
+        String expectedStart = "{\"id\":100001,\"name\":\"Admin\",\"email\":\"admin@gmail.com\",\"enabled\":true,\"registered\":\"";
+        assertEquals(expectedStart, out.toString().substring(0, expectedStart.length()));
+        assertEquals("\",\"roles\":[\"ADMIN\"],\"caloriesPerDay\":2000}",
+                out.toString().substring(out.toString().indexOf("Z\"") + 1));
+    }
+}
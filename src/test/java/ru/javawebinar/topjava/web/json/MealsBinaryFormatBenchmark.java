@@ -0,0 +1,155 @@
+package ru.javawebinar.topjava.web.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import ru.javawebinar.topjava.dataset.DatasetGenerator;
+import ru.javawebinar.topjava.dataset.DatasetGenerator.SyntheticUser;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.to.MealTo;
+import ru.javawebinar.topjava.util.MealsUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size (plain and gzip) and encode/decode time of a meal listing in {@link MealsBinaryFormat} vs the JSON
+ * of {@link MealJsonServlet}, decoded by a streaming Jackson parser. The listing is the last {@code days}
+ * of a synthetic user with a long history, ORDERED dateTime desc as served.
+ * <p>
+ * Usage: {@code MealsBinaryFormatBenchmark [days=365] [iterations=2000]}
+ */
+public class MealsBinaryFormatBenchmark {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public static void main(String[] args) throws IOException {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 365;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        List<MealTo> meals = listing(days);
+        byte[] json = json(meals);
+        byte[] binary = binary(meals);
+        System.out.printf("%d meals of %d days%n", meals.size(), days);
+        System.out.printf("json   %,9d bytes, gzip %,8d bytes%n", json.length, gzip(json).length);
+        System.out.printf("binary %,9d bytes, gzip %,8d bytes%n", binary.length, gzip(binary).length);
+
+        for (int round = 0; round < 2; round++) {
+            // the first round is a warm-up
+            long jsonEncode = time(iterations, () -> json(meals).length);
+            long binaryEncode = time(iterations, () -> binary(meals).length);
+            long jsonDecode = time(iterations, () -> parseJson(new ByteArrayInputStream(json)).size());
+            long binaryDecode = time(iterations, () -> MealsBinaryFormat.read(new ByteArrayInputStream(binary)).size());
+            if (round > 0) {
+                System.out.printf("encode: json %,7d us, binary %,7d us%n", jsonEncode / 1000, binaryEncode / 1000);
+                System.out.printf("decode: json %,7d us, binary %,7d us%n", jsonDecode / 1000, binaryDecode / 1000);
+            }
+        }
+    }
+
+    private static List<MealTo> listing(int days) {
+        DatasetGenerator generator = new DatasetGenerator(1, 200_000);
+        SyntheticUser user = Collections.max(generator.getUsers(), Comparator.comparingInt(u -> u.meals));
+        LocalDateTime from = DatasetGenerator.LAST_DAY.minusDays(days - 1).atStartOfDay();
+        List<Meal> meals = new ArrayList<>();
+        generator.forEachMeal(user, (dateTime, description, calories) -> {
+            if (!dateTime.isBefore(from)) {
+                meals.add(new Meal(100_000 + meals.size(), dateTime, description, calories));
+            }
+        });
+        Collections.reverse(meals);
+        return MealsUtil.getTos(meals, user.caloriesPerDay);
+    }
+
+    private static byte[] json(List<MealTo> meals) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            for (MealTo meal : meals) {
+                MealJsonServlet.writeMealTo(json, meal);
+            }
+            json.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] binary(List<MealTo> meals) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MealsBinaryFormat.write(meals, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<MealTo> parseJson(InputStream in) throws IOException {
+        List<MealTo> meals = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int id = 0;
+                LocalDateTime dateTime = null;
+                String description = null;
+                int calories = 0;
+                boolean excess = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "id":
+                            id = parser.getIntValue();
+                            break;
+                        case "dateTime":
+                            dateTime = LocalDateTime.parse(parser.getText());
+                            break;
+                        case "description":
+                            description = parser.getText();
+                            break;
+                        case "calories":
+                            calories = parser.getIntValue();
+                            break;
+                        case "excess":
+                            excess = parser.getBooleanValue();
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                meals.add(new MealTo(id, dateTime, description, calories, excess));
+            }
+        }
+        return meals;
+    }
+
+    private static long time(int iterations, IOCall call) throws IOException {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += call.run();
+        }
+        long nanos = (System.nanoTime() - start) / iterations;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return nanos;
+    }
+
+    @FunctionalInterface
+    private interface IOCall {
+        int run() throws IOException;
+    }
+}
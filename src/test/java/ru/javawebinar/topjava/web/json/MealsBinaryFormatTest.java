@@ -0,0 +1,74 @@
+package ru.javawebinar.topjava.web.json;
+
+import org.junit.Test;
+import ru.javawebinar.topjava.to.MealTo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+
+public class MealsBinaryFormatTest {
+
+    @Test
+    public void write() throws IOException {
+        List<MealTo> meals = Arrays.asList(
+                new MealTo(100008, LocalDateTime.of(2020, 1, 31, 20, 0), "Ужин", 510, true),
+                new MealTo(100007, LocalDateTime.of(2020, 1, 31, 13, 0), "Обед", 1000, true),
+                new MealTo(100003, LocalDateTime.of(2020, 1, 30, 20, 0), "Ужин", 500, false));
+        byte[] bytes = toBytes(meals);
+        assertArrayEquals(new byte[]{
+                        1, 0, 3,
+                        // dictionary
+                        2, 8, (byte) 0xD0, (byte) 0xA3, (byte) 0xD0, (byte) 0xB6, (byte) 0xD0, (byte) 0xB8, (byte) 0xD0, (byte) 0xBD,
+                        8, (byte) 0xD0, (byte) 0x9E, (byte) 0xD0, (byte) 0xB1, (byte) 0xD0, (byte) 0xB5, (byte) 0xD0, (byte) 0xB4,
+                        // epoch minutes 26341680, then -420, -1020
+                        (byte) 0xE0, (byte) 0xC4, (byte) 0x8F, 25, (byte) 0xC7, 6, (byte) 0xF7, 15,
+                        // ids 100008, then -1, -4
+                        (byte) 0xD0, (byte) 0x9A, 12, 1, 7,
+                        // calories
+                        (byte) 0xFC, 7, (byte) 0xD0, 15, (byte) 0xE8, 7,
+                        // description indexes
+                        0, 1, 0,
+                        // excess
+                        0b011},
+                bytes);
+        assertThat(MealsBinaryFormat.read(new ByteArrayInputStream(bytes))).usingRecursiveFieldByFieldElementComparator().isEqualTo(meals);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(1);
+        List<MealTo> meals = new ArrayList<>();
+        LocalDateTime dateTime = LocalDateTime.of(2020, 12, 31, 21, 0);
+        for (int i = 0; i < 10_000; i++) {
+            dateTime = dateTime.minusMinutes(random.nextInt(600));
+            meals.add(new MealTo(100_000 + random.nextInt(1_000_000), dateTime, "Еда " + random.nextInt(50),
+                    random.nextInt(3000) - 10, random.nextBoolean()));
+        }
+        assertRoundTrip(meals);
+        // seconds are kept when present
+        meals.set(5, new MealTo(7, meals.get(5).getDateTime().plusSeconds(59), "", Integer.MIN_VALUE, true));
+        assertRoundTrip(meals);
+        assertRoundTrip(Collections.emptyList());
+    }
+
+    private static void assertRoundTrip(List<MealTo> meals) throws IOException {
+        assertThat(MealsBinaryFormat.read(new ByteArrayInputStream(toBytes(meals))))
+                .usingRecursiveFieldByFieldElementComparator().isEqualTo(meals);
+    }
+
+    private static byte[] toBytes(List<MealTo> meals) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MealsBinaryFormat.write(meals, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,191 @@
+package ru.javawebinar.topjava.web.load;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.mock.web.*;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.service.MealService;
+import ru.javawebinar.topjava.to.MealTo;
+import ru.javawebinar.topjava.web.AuthorizedUserFilter;
+import ru.javawebinar.topjava.web.MealServlet;
+import ru.javawebinar.topjava.web.UserServlet;
+import ru.javawebinar.topjava.web.user.AdminRestController;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * MealServlet and UserServlet (with AuthorizedUserFilter) served in-process through spring-test mocks:
+ * the servlets, controllers, services and the database run for real, JSP forwards are only recorded.
+ * The database of postgres.properties is reset by populateDB.sql and seeded with the simulated users.
+ */
+class InProcessApp implements AutoCloseable {
+    static final String CONTEXT_PATH = "/topjava";
+
+    enum Action {
+        ALL, FILTER, CREATE, UPDATE, DELETE, USERS, LOGIN;
+
+        final String key = name().toLowerCase();
+
+        static Action of(String key) {
+            return valueOf(key.toUpperCase());
+        }
+    }
+
+    private final MockServletContext servletContext = new MockServletContext();
+    private final MealServlet mealServlet = new MealServlet();
+    private final UserServlet userServlet = new UserServlet();
+    private final AuthorizedUserFilter authorizedUserFilter = new AuthorizedUserFilter();
+    private final LocalDate firstDay;
+    private final LocalDate lastDay = LocalDate.now();
+    private final List<SimulatedUser> users = new ArrayList<>();
+
+    InProcessApp(int userCount, int mealsPerUser) throws ServletException, IOException {
+        int days = Math.max(1, mealsPerUser / 3);
+        firstDay = lastDay.minusDays(days - 1);
+        try (ConfigurableApplicationContext context =
+                     new ClassPathXmlApplicationContext("spring/spring-app.xml", "spring/spring-db.xml")) {
+            new ResourceDatabasePopulator(false, false, "UTF-8", new ClassPathResource("db/populateDB.sql"))
+                    .execute(context.getBean(DataSource.class));
+            AdminRestController adminController = context.getBean(AdminRestController.class);
+            MealService mealService = context.getBean(MealService.class);
+            for (int i = 0; i < userCount; i++) {
+                User user = adminController.create(new User(null, "Load" + i, "load" + i + "@mail.ru", "password",
+                        2000, true, new Date(), Collections.singleton(Role.USER)));
+                SimulatedUser simulated = new SimulatedUser(user.getId());
+                for (int m = 0; m < mealsPerUser; m++) {
+                    LocalDateTime dateTime = firstDay.plusDays(m / 3 % days).atTime(8 + m % 3 * 5, 0);
+                    simulated.mealIds.add(mealService.create(new Meal(dateTime, "Meal " + m, 300 + m * 37 % 700), user.getId()).getId());
+                }
+                users.add(simulated);
+            }
+        }
+        mealServlet.init(new MockServletConfig(servletContext, "mealServlet"));
+        userServlet.init(new MockServletConfig(servletContext, "userServlet"));
+        for (SimulatedUser user : users) {
+            execute(Action.LOGIN, user, 0, 0);
+        }
+    }
+
+    List<SimulatedUser> getUsers() {
+        return users;
+    }
+
+    /**
+     * Serves the action for the user, returns the served action and the HTTP status.
+     * UPDATE and DELETE of a user with no known meals are served as CREATE (see {@link SimulatedUser#mealIds}).
+     * The parameters come from the seed of the request; a created or updated meal is put at minute {@code request}
+     * after the seeded days, so it never clashes on (user_id, date_time) with the seeded meals or another request.
+     */
+    Result execute(Action action, SimulatedUser user, long request, long seed) throws ServletException, IOException {
+        Random random = new Random(seed);
+        Integer mealId = action == Action.DELETE ? user.mealIds.pollFirst() :
+                action == Action.UPDATE ? user.mealIds.peekLast() : null;
+        if ((action == Action.DELETE || action == Action.UPDATE) && mealId == null) {
+            action = Action.CREATE;
+        }
+        MockHttpServletRequest httpRequest;
+        Servlet servlet = mealServlet;
+        switch (action) {
+            case ALL:
+                httpRequest = request("GET", "/meals", user);
+                break;
+            case FILTER:
+                LocalDate start = firstDay.plusDays(random.nextInt(firstDay.until(lastDay).getDays() + 1));
+                httpRequest = request("GET", "/meals", user);
+                httpRequest.addParameter("action", "filter");
+                httpRequest.addParameter("startDate", start.toString());
+                httpRequest.addParameter("endDate", start.plusDays(random.nextInt(7)).toString());
+                httpRequest.addParameter("startTime", "07:00");
+                httpRequest.addParameter("endTime", "20:00");
+                break;
+            case DELETE:
+                httpRequest = request("GET", "/meals", user);
+                httpRequest.addParameter("action", "delete");
+                httpRequest.addParameter("id", mealId.toString());
+                break;
+            case CREATE:
+            case UPDATE:
+                httpRequest = request("POST", "/meals", user);
+                if (mealId != null) {
+                    httpRequest.addParameter("id", mealId.toString());
+                }
+                httpRequest.addParameter("dateTime", lastDay.plusDays(1).atStartOfDay().plusMinutes(request).toString());
+                httpRequest.addParameter("description", "Load meal");
+                httpRequest.addParameter("calories", Integer.toString(100 + random.nextInt(1000)));
+                break;
+            case USERS:
+                httpRequest = request("GET", "/users", user);
+                servlet = userServlet;
+                break;
+            case LOGIN:
+                httpRequest = request("POST", "/users", user);
+                httpRequest.addParameter("userId", Integer.toString(user.id));
+                servlet = userServlet;
+                break;
+            default:
+                throw new IllegalArgumentException(action.toString());
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new MockFilterChain(servlet, authorizedUserFilter).doFilter(httpRequest, response);
+        if (action == Action.ALL) {
+            @SuppressWarnings("unchecked")
+            List<MealTo> meals = (List<MealTo>) httpRequest.getAttribute("meals");
+            if (meals != null) {
+                user.refresh(meals);
+            }
+        }
+        return new Result(action, response.getStatus());
+    }
+
+    private MockHttpServletRequest request(String method, String servletPath, SimulatedUser user) {
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, method, CONTEXT_PATH + servletPath);
+        request.setContextPath(CONTEXT_PATH);
+        request.setServletPath(servletPath);
+        request.setSession(user.session);
+        return request;
+    }
+
+    @Override
+    public void close() {
+        mealServlet.destroy();
+        userServlet.destroy();
+    }
+
+    static class Result {
+        final Action action;
+        final int status;
+
+        Result(Action action, int status) {
+            this.action = action;
+            this.status = status;
+        }
+    }
+
+    static class SimulatedUser {
+        final int id;
+        final MockHttpSession session = new MockHttpSession();
+
+        // ids known from the seed and the last "all" page, deletes take them from the head
+        final Deque<Integer> mealIds = new ConcurrentLinkedDeque<>();
+
+        SimulatedUser(int id) {
+            this.id = id;
+        }
+
+        void refresh(List<MealTo> meals) {
+            mealIds.clear();
+            meals.forEach(meal -> mealIds.add(meal.getId()));
+        }
+    }
+}
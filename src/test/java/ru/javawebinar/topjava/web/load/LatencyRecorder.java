@@ -0,0 +1,52 @@
+package ru.javawebinar.topjava.web.load;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of one action, kept exactly for the percentiles (the arrays are sized for the whole run).
+ * Read after the workers are terminated.
+ */
+class LatencyRecorder {
+    private final long[] latencies;
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder errors = new LongAdder();
+
+    LatencyRecorder(int capacity) {
+        this.latencies = new long[capacity];
+    }
+
+    void record(long latencyNanos, boolean error) {
+        int i = count.getAndIncrement();
+        if (i < latencies.length) {
+            latencies[i] = latencyNanos;
+        }
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    int getCount() {
+        return count.get();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long[] sorted() {
+        long[] sorted = Arrays.copyOf(latencies, Math.min(count.get(), latencies.length));
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // nearest rank
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,197 @@
+package ru.javawebinar.topjava.web.load;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import ru.javawebinar.topjava.web.load.InProcessApp.Action;
+import ru.javawebinar.topjava.web.load.InProcessApp.SimulatedUser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load of MealServlet/UserServlet actions served in-process (see {@link InProcessApp}).
+ * <p>
+ * Requests are issued at fixed intended times ({@code rate} per second) regardless of how many are still
+ * in flight, and latency is measured from the intended time: when the app (or the worker pool) falls behind,
+ * queueing counts into latency instead of silently lowering the offered load (no coordinated omission).
+ * Action, user and parameters of every request come from a seeded random, so runs offer the same load;
+ * which known meal an update or delete takes still depends on the interleaving of the workers.
+ * <p>
+ * Usage: {@code ServletLoadBenchmark [key=value...]}, defaults:
+ * {@code rate=200 duration=30 warmup=5 users=50 meals=30 threads=64 seed=42 out=target/load-summary.json
+ * mix=all=40,filter=25,create=10,update=10,delete=5,users=5,login=5}
+ * <p>
+ * Writes a JSON summary: per action count, errors (HTTP status >= 400 or exception), throughput and
+ * p50/p99/p999/max latency in milliseconds, over the measured (post warm-up) interval.
+ */
+public class ServletLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "200");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("users", "50");
+        options.put("meals", "30");
+        options.put("threads", "64");
+        options.put("seed", "42");
+        options.put("out", "target/load-summary.json");
+        options.put("mix", "all=40,filter=25,create=10,update=10,delete=5,users=5,login=5");
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (!options.containsKey(keyValue[0]) || keyValue.length < 2) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", options: " + options.keySet());
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+        double rate = Double.parseDouble(options.get("rate"));
+        int duration = Integer.parseInt(options.get("duration"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        Mix mix = new Mix(options.get("mix"));
+
+        try (InProcessApp app = new InProcessApp(Integer.parseInt(options.get("users")), Integer.parseInt(options.get("meals")))) {
+            Map<Action, LatencyRecorder> recorders = new EnumMap<>(Action.class);
+            for (Action action : Action.values()) {
+                recorders.put(action, new LatencyRecorder((int) Math.ceil(rate * duration) + 1));
+            }
+            int threads = Integer.parseInt(options.get("threads"));
+            ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            long late = run(app, mix, new Random(Long.parseLong(options.get("seed"))), rate, warmup, duration, workers, recorders);
+
+            File out = new File(options.get("out"));
+            writeSummary(out, options, duration, late, recorders);
+            System.out.println(new String(Files.readAllBytes(out.toPath()), "UTF-8"));
+        }
+    }
+
+    // returns the number of requests dispatched more than 1 ms after their intended time (dispatcher overload)
+    private static long run(InProcessApp app, Mix mix, Random random, double rate, int warmup, int duration,
+                            ExecutorService workers, Map<Action, LatencyRecorder> recorders) throws InterruptedException {
+        List<SimulatedUser> users = app.getUsers();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(duration);
+        long late = 0;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended - end >= 0) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) - intended < 0) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (now - intended > TimeUnit.MILLISECONDS.toNanos(1)) {
+                late++;
+            }
+            Action action = mix.next(random);
+            SimulatedUser user = users.get(random.nextInt(users.size()));
+            long request = i;
+            long seed = random.nextLong();
+            boolean measured = intended - measureStart >= 0;
+            workers.execute(() -> {
+                Action served = action;
+                boolean error;
+                try {
+                    InProcessApp.Result result = app.execute(action, user, request, seed);
+                    served = result.action;
+                    error = result.status >= 400;
+                } catch (Exception e) {
+                    error = true;
+                }
+                if (measured) {
+                    recorders.get(served).record(System.nanoTime() - intended, error);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        return late;
+    }
+
+    private static void writeSummary(File out, Map<String, String> options, int duration, long late,
+                                     Map<Action, LatencyRecorder> recorders) throws IOException {
+        File dir = out.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        long total = 0;
+        try (OutputStream stream = Files.newOutputStream(out.toPath());
+             JsonGenerator json = new JsonFactory().createGenerator(stream, JsonEncoding.UTF8).useDefaultPrettyPrinter()) {
+            json.writeStartObject();
+            json.writeObjectFieldStart("options");
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                json.writeStringField(option.getKey(), option.getValue());
+            }
+            json.writeEndObject();
+            json.writeObjectFieldStart("actions");
+            for (Map.Entry<Action, LatencyRecorder> entry : recorders.entrySet()) {
+                LatencyRecorder recorder = entry.getValue();
+                if (recorder.getCount() == 0) {
+                    continue;
+                }
+                total += recorder.getCount();
+                long[] sorted = recorder.sorted();
+                json.writeObjectFieldStart(entry.getKey().key);
+                json.writeNumberField("count", recorder.getCount());
+                json.writeNumberField("errors", recorder.getErrors());
+                json.writeNumberField("throughput", (double) recorder.getCount() / duration);
+                json.writeNumberField("p50Ms", millis(LatencyRecorder.percentile(sorted, 50)));
+                json.writeNumberField("p99Ms", millis(LatencyRecorder.percentile(sorted, 99)));
+                json.writeNumberField("p999Ms", millis(LatencyRecorder.percentile(sorted, 99.9)));
+                json.writeNumberField("maxMs", millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+            json.writeNumberField("throughput", (double) total / duration);
+            json.writeNumberField("lateDispatches", late);
+            json.writeEndObject();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    // weighted choice of actions: "all=40,filter=25,..."
+    static class Mix {
+        private final Action[] actions;
+        private final int[] cumulativeWeights;
+
+        Mix(String mix) {
+            String[] parts = mix.split(",");
+            actions = new Action[parts.length];
+            cumulativeWeights = new int[parts.length];
+            int total = 0;
+            for (int i = 0; i < parts.length; i++) {
+                String[] actionWeight = parts[i].trim().split("=");
+                actions[i] = Action.of(actionWeight[0]);
+                total += Integer.parseInt(actionWeight[1]);
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        Action next(Random random) {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; ; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return actions[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.javawebinar.topjava.web.meal;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.repository.MealRepository;
+import ru.javawebinar.topjava.service.MealService;
+import ru.javawebinar.topjava.to.MealChanges;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.javawebinar.topjava.MealTestData.MEAL1_ID;
+import static ru.javawebinar.topjava.MealTestData.meal1;
+
+/**
+ * get/update/delete success paths through MealRestController, MealService and ValidationUtil allocate nothing
+ * with INFO logging off. The repository is a stub returning a preallocated meal, so only these layers are measured.
+ */
+public class MealRestControllerAllocationTest {
+    private static final int WARMUP_CALLS = 200_000;
+    private static final int MEASURED_CALLS = 100_000;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Meal meal = new Meal(MEAL1_ID, meal1.getDateTime(), meal1.getDescription(), meal1.getCalories());
+    private final MealRestController controller = new MealRestController(new MealService(new StubMealRepository(meal)));
+    private final Logger controllerLog = (Logger) LoggerFactory.getLogger(MealRestController.class);
+    private Level level;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        level = controllerLog.getLevel();
+        controllerLog.setLevel(Level.WARN);
+    }
+
+    @After
+    public void tearDown() {
+        controllerLog.setLevel(level);
+    }
+
+    @Test
+    public void get() {
+        assertThat(allocatedBytesPerCall(() -> controller.get(MEAL1_ID))).isZero();
+    }
+
+    @Test
+    public void update() {
+        assertThat(allocatedBytesPerCall(() -> controller.update(meal, MEAL1_ID))).isZero();
+    }
+
+    @Test
+    public void delete() {
+        assertThat(allocatedBytesPerCall(() -> controller.delete(MEAL1_ID))).isZero();
+    }
+
+    private static long allocatedBytesPerCall(Runnable call) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        // the counter read itself allocates on some JDKs
+        long overhead = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        long after = threads.getThreadAllocatedBytes(threadId);
+        return Math.max(0, after - before - overhead) / MEASURED_CALLS;
+    }
+
+    private static class StubMealRepository implements MealRepository {
+        private final Meal meal;
+
+        StubMealRepository(Meal meal) {
+            this.meal = meal;
+        }
+
+        @Override
+        public Meal save(Meal meal, int userId) {
+            return meal;
+        }
+
+        @Override
+        public Meal replace(Meal meal, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete(int id, int userId) {
+            return id == meal.getId();
+        }
+
+        @Override
+        public Meal remove(int id, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(Collection<Integer> ids, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Meal> remove(Collection<Integer> ids, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int deleteBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Meal get(int id, int userId) {
+            return id == meal.getId() ? meal : null;
+        }
+
+        @Override
+        public List<Meal> get(Collection<Integer> ids, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Meal> getAll(int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Meal> search(String text, LocalDateTime startDateTime, LocalDateTime endDateTime, int offset, int limit, int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MealChanges getChangedSince(long version, int userId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.javawebinar.topjava.web.meal;
+
+import org.junit.After;
+import org.junit.Test;
+import ru.javawebinar.topjava.model.Meal;
+import ru.javawebinar.topjava.model.Role;
+import ru.javawebinar.topjava.model.User;
+import ru.javawebinar.topjava.repository.inmemory.InMemoryMealRepository;
+import ru.javawebinar.topjava.service.MealService;
+import ru.javawebinar.topjava.to.MealTo;
+import ru.javawebinar.topjava.web.AuthorizedUser;
+import ru.javawebinar.topjava.web.SecurityUtil;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Coalesced reads and day sums of MealRestController
+ */
+public class MealRestControllerReadsTest {
+    private static final int USER_ID = 7;
+
+    private final CountDownLatch reading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    // the first getAll waits for release
+    private final InMemoryMealRepository repository = new InMemoryMealRepository() {
+        @Override
+        public List<Meal> getAll(int userId) {
+            if (reading.getCount() > 0) {
+                reading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getAll(userId);
+        }
+
+        @Override
+        public List<Meal> getBetweenHalfOpen(LocalDateTime startDateTime, LocalDateTime endDateTime, int userId) {
+            rangeReads.incrementAndGet();
+            return super.getBetweenHalfOpen(startDateTime, endDateTime, userId);
+        }
+    };
+
+    private final AtomicInteger rangeReads = new AtomicInteger();
+
+    private final MealRestController controller = new MealRestController(new MealService(repository));
+
+    @After
+    public void tearDown() {
+        SecurityUtil.clear();
+    }
+
+    @Test
+    public void normChangeNotJoined() throws Exception {
+        repository.save(new Meal(null, LocalDateTime.of(2020, Month.JANUARY, 30, 10, 0), "Завтрак", 2500), USER_ID);
+        SecurityUtil.set(new AuthorizedUser(USER_ID, 2000));
+        AuthorizedUser authUser = SecurityUtil.get();
+        CompletableFuture<List<MealTo>> leader = CompletableFuture.supplyAsync(() -> {
+            SecurityUtil.set(authUser);
+            try {
+                return controller.getAll();
+            } finally {
+                SecurityUtil.clear();
+            }
+        });
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        SecurityUtil.refresh(new User(USER_ID, "User", "user@yandex.ru", "password", 3000, true, new Date(),
+                Collections.singleton(Role.USER)));
+        List<MealTo> after = controller.getAll();
+        release.countDown();
+
+        assertThat(after.get(0).isExcess()).isFalse();
+        assertThat(leader.get(5, TimeUnit.SECONDS).get(0).isExcess()).isTrue();
+        assertThat(controller.getCoalescedReadCalls()).isZero();
+    }
+
+    @Test
+    public void searchSumsFoundDaysOnly() {
+        release.countDown();
+        // not USER_ID: its norm is changed by normChangeNotJoined
+        int userId = USER_ID + 1;
+        repository.save(new Meal(null, LocalDateTime.of(2020, Month.JANUARY, 30, 10, 0), "Завтрак", 500), userId);
+        repository.save(new Meal(null, LocalDateTime.of(2020, Month.JANUARY, 30, 13, 0), "Обед", 1600), userId);
+        repository.save(new Meal(null, LocalDateTime.of(2020, Month.JANUARY, 31, 10, 0), "Завтрак", 500), userId);
+        repository.save(new Meal(null, LocalDateTime.of(2020, Month.FEBRUARY, 1, 10, 0), "Завтрак", 300), userId);
+        SecurityUtil.set(new AuthorizedUser(userId, 2000));
+
+        List<MealTo> found = controller.search("Завтрак", null, null, 0, 10);
+        assertThat(found).extracting(MealTo::isExcess).containsExactly(false, false, true);
+        assertThat(rangeReads.get()).isZero();
+    }
+}